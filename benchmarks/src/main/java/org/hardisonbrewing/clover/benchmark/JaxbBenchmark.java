@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover.benchmark;
+
+import generated.Coverage;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.hardisonbrewing.clover.CoverageReader;
+import org.hardisonbrewing.clover.CoverageSnapshot;
+import org.hardisonbrewing.clover.CoverageSnapshotWriter;
+import org.hardisonbrewing.jaxb.JAXB;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading and writing whole reports: the DOM style unmarshal through the
+ * namespace filter, the streaming reader used by the reduction, the binary
+ * snapshot which replaces it on later runs, and marshal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class JaxbBenchmark {
+
+    @Param({ "1000", "10000", "100000", "1000000" })
+    private int lines;
+
+    private byte[] xml;
+    private File file;
+    private File snapshotFile;
+    private Coverage coverage;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+
+        xml = SyntheticReport.xml( lines );
+        coverage = JAXB.unmarshal( xml, Coverage.class );
+
+        file = File.createTempFile( "clover-", ".xml" );
+        FileUtils.fileWrite( file.getPath(), "UTF-8", new String( xml, "UTF-8" ) );
+
+        snapshotFile = new File( file.getPath() + ".snapshot" );
+        CoverageSnapshotWriter snapshotWriter = new CoverageSnapshotWriter( snapshotFile, file, new NullHandler() );
+        new CoverageReader( snapshotWriter ).read( file );
+        snapshotWriter.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+
+        file.delete();
+        snapshotFile.delete();
+    }
+
+    @Benchmark
+    public Coverage unmarshal() throws Exception {
+
+        return JAXB.unmarshal( xml, Coverage.class );
+    }
+
+    @Benchmark
+    public void marshal() throws Exception {
+
+        JAXB.marshal( new NullOutputStream(), coverage );
+    }
+
+    @Benchmark
+    public void read( Blackhole blackhole ) throws Exception {
+
+        new CoverageReader( new ConsumingHandler( blackhole ) ).read( file );
+    }
+
+    @Benchmark
+    public void readSnapshot( Blackhole blackhole ) throws Exception {
+
+        CoverageSnapshot.open( snapshotFile, file ).read( new ConsumingHandler( blackhole ) );
+    }
+
+    private static final class ConsumingHandler implements CoverageReader.Handler {
+
+        private final Blackhole blackhole;
+
+        public ConsumingHandler(Blackhole blackhole) {
+
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void startProject( Coverage coverage ) {
+
+            blackhole.consume( coverage );
+        }
+
+        @Override
+        public boolean accept( String path ) {
+
+            return true;
+        }
+
+        @Override
+        public void file( String packageName, generated.File file ) {
+
+            blackhole.consume( file );
+        }
+
+        @Override
+        public void endPackage( String packageName ) {
+
+            blackhole.consume( packageName );
+        }
+    }
+
+    private static final class NullHandler implements CoverageReader.Handler {
+
+        @Override
+        public void startProject( Coverage coverage ) {
+
+            // discard
+        }
+
+        @Override
+        public boolean accept( String path ) {
+
+            return true;
+        }
+
+        @Override
+        public void file( String packageName, generated.File file ) {
+
+            // discard
+        }
+
+        @Override
+        public void endPackage( String packageName ) {
+
+            // discard
+        }
+    }
+
+    private static final class NullOutputStream extends OutputStream {
+
+        @Override
+        public void write( int b ) {
+
+            // discard
+        }
+
+        @Override
+        public void write( byte[] b, int off, int len ) {
+
+            // discard
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.hardisonbrewing.clover.BlameOutputParser;
+import org.hardisonbrewing.clover.InfoStreamConsumer;
+import org.hardisonbrewing.clover.RevisionColumn;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing <code>svn blame</code> and <code>svn info</code> output, without
+ * the process around it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ProcessOutputBenchmark {
+
+    @Param({ "1000", "10000", "100000", "1000000" })
+    private int lines;
+
+    private byte[] blame;
+    private List<String> info;
+    private RevisionColumn revisions;
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        blame = SyntheticReport.blame( lines );
+        info = SyntheticReport.info();
+        revisions = new RevisionColumn();
+    }
+
+    @Benchmark
+    public RevisionColumn blame() throws Exception {
+
+        revisions.clear();
+        new BlameOutputParser( revisions ).parse( new ByteArrayInputStream( blame ) );
+        return revisions;
+    }
+
+    @Benchmark
+    public Properties info() throws Exception {
+
+        Properties properties = new Properties();
+        consume( new InfoStreamConsumer( properties ), info );
+        return properties;
+    }
+
+    private static void consume( StreamConsumer streamConsumer, List<String> output ) throws Exception {
+
+        for (String line : output) {
+            streamConsumer.consumeLine( line );
+        }
+    }
+}
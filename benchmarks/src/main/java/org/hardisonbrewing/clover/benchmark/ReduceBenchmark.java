@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover.benchmark;
+
+import generated.ProjectMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hardisonbrewing.clover.FileReducer;
+import org.hardisonbrewing.clover.MetricsAccumulator;
+import org.hardisonbrewing.clover.RevisionColumn;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Filtering report lines against a blamed revision column, and totalling the
+ * metrics of the reduced files into package and project metrics.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ReduceBenchmark {
+
+    @Param({ "1000", "10000", "100000", "1000000" })
+    private int lines;
+
+    private List<generated.File> files;
+    private List<generated.File> filesReduced;
+    private RevisionColumn revisions;
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        files = SyntheticReport.files( lines );
+        revisions = SyntheticReport.revisions();
+
+        // keep every line so the rollup sees complete files
+        filesReduced = new ArrayList<generated.File>( files.size() );
+        for (generated.File file : files) {
+            filesReduced.add( FileReducer.reduce( file, revisions, 0 ) );
+        }
+    }
+
+    @Benchmark
+    public void reduce( Blackhole blackhole ) {
+
+        long cutoffRevision = SyntheticReport.HEAD_REVISION / 2;
+        for (generated.File file : files) {
+            blackhole.consume( FileReducer.reduce( file, revisions, cutoffRevision ) );
+        }
+    }
+
+    @Benchmark
+    public ProjectMetrics rollup( Blackhole blackhole ) {
+
+        MetricsAccumulator projectAccumulator = new MetricsAccumulator();
+        MetricsAccumulator packageAccumulator = null;
+
+        for (int i = 0; i < filesReduced.size(); i++) {
+            if ( i % SyntheticReport.FILES_PER_PACKAGE == 0 ) {
+                if ( packageAccumulator != null ) {
+                    blackhole.consume( packageAccumulator.toPackageMetrics() );
+                    projectAccumulator.addPackage( packageAccumulator );
+                }
+                packageAccumulator = new MetricsAccumulator();
+            }
+            packageAccumulator.addFile( filesReduced.get( i ).getMetrics() );
+        }
+
+        blackhole.consume( packageAccumulator.toPackageMetrics() );
+        projectAccumulator.addPackage( packageAccumulator );
+        return projectAccumulator.toProjectMetrics();
+    }
+}
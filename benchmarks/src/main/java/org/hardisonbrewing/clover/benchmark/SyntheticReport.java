@@ -0,0 +1,258 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover.benchmark;
+
+import generated.ClassMetrics;
+import generated.Construct;
+import generated.Line;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.hardisonbrewing.clover.RevisionColumn;
+
+/**
+ * Generates clover reports and blame output of a given size. The same seed
+ * always produces the same data so runs can be compared.
+ */
+public final class SyntheticReport {
+
+    public static final int LINES_PER_FILE = 250;
+    public static final int FILES_PER_PACKAGE = 20;
+
+    /**
+     * The revisions are spread between 1 and this, so a cutoff of half of it
+     * keeps roughly half of the lines.
+     */
+    public static final long HEAD_REVISION = 10000;
+
+    private static final long SEED = 20130101L;
+
+    private SyntheticReport() {
+
+        // do nothing
+    }
+
+    public static int fileCount( int lineCount ) {
+
+        return Math.max( 1, lineCount / LINES_PER_FILE );
+    }
+
+    /**
+     * Every second source line has a report entry, a method every 10 entries
+     * and a conditional every 4.
+     */
+    public static Construct type( int index ) {
+
+        if ( index % 10 == 0 ) {
+            return Construct.METHOD;
+        }
+        if ( index % 4 == 0 ) {
+            return Construct.COND;
+        }
+        return Construct.STMT;
+    }
+
+    public static int lineNumber( int index ) {
+
+        return ( index * 2 ) + 1;
+    }
+
+    /**
+     * @return The report as clover.xml.
+     */
+    public static byte[] xml( int lineCount ) {
+
+        Random random = new Random( SEED );
+        int fileCount = fileCount( lineCount );
+
+        StringBuilder xml = new StringBuilder( lineCount * 80 );
+        xml.append( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" );
+        xml.append( "<coverage generated=\"1356998400\" clover=\"3.1.10\">\n" );
+        xml.append( "<project timestamp=\"1356998400\" name=\"synthetic\">\n" );
+        metrics( xml, "", 0 );
+
+        for (int file = 0; file < fileCount; file++) {
+
+            if ( file % FILES_PER_PACKAGE == 0 ) {
+                if ( file > 0 ) {
+                    xml.append( "</package>\n" );
+                }
+                xml.append( "<package name=\"pkg" ).append( file / FILES_PER_PACKAGE ).append( "\">\n" );
+                metrics( xml, " files=\"0\"", 0 );
+            }
+
+            xml.append( "<file name=\"File" ).append( file ).append( ".java\" path=\"" ).append( path( file ) ).append( "\">\n" );
+            metrics( xml, " classes=\"1\" loc=\"0\" ncloc=\"0\"", 0 );
+            xml.append( "<class name=\"File" ).append( file ).append( "\">\n" );
+            metrics( xml, "", 0 );
+            xml.append( "</class>\n" );
+
+            for (int index = 0; index < LINES_PER_FILE; index++) {
+                xml.append( "<line num=\"" ).append( lineNumber( index ) ).append( "\"" );
+                switch (type( index )) {
+                    case METHOD:
+                        xml.append( " count=\"" ).append( random.nextInt( 3 ) ).append( "\" type=\"method\" signature=\"method" ).append( index ).append( "() : void\" complexity=\"1\" visibility=\"public\"" );
+                        break;
+                    case COND:
+                        xml.append( " truecount=\"" ).append( random.nextInt( 3 ) ).append( "\" falsecount=\"" ).append( random.nextInt( 3 ) ).append( "\" type=\"cond\"" );
+                        break;
+                    default:
+                        xml.append( " count=\"" ).append( random.nextInt( 3 ) ).append( "\" type=\"stmt\"" );
+                        break;
+                }
+                xml.append( "/>\n" );
+            }
+
+            xml.append( "</file>\n" );
+        }
+
+        xml.append( "</package>\n" );
+        xml.append( "</project>\n" );
+        xml.append( "</coverage>\n" );
+
+        return xml.toString().getBytes();
+    }
+
+    private static void metrics( StringBuilder xml, String extra, int value ) {
+
+        xml.append( "<metrics complexity=\"" ).append( value ).append( "\" elements=\"" ).append( value ).append( "\" coveredelements=\"" ).append( value );
+        xml.append( "\" conditionals=\"" ).append( value ).append( "\" coveredconditionals=\"" ).append( value ).append( "\" statements=\"" ).append( value );
+        xml.append( "\" coveredstatements=\"" ).append( value ).append( "\" coveredmethods=\"" ).append( value ).append( "\" methods=\"" ).append( value ).append( "\"" );
+        xml.append( extra ).append( "/>\n" );
+    }
+
+    private static String path( int file ) {
+
+        return "/synthetic/src/pkg" + ( file / FILES_PER_PACKAGE ) + "/File" + file + ".java";
+    }
+
+    /**
+     * @return The report files, each split into two classes. Only the method
+     * counts of the classes are filled in.
+     */
+    public static List<generated.File> files( int lineCount ) {
+
+        Random random = new Random( SEED );
+        int fileCount = fileCount( lineCount );
+
+        List<generated.File> files = new ArrayList<generated.File>( fileCount );
+
+        for (int file = 0; file < fileCount; file++) {
+
+            generated.File _file = new generated.File();
+            _file.setName( "File" + file + ".java" );
+            _file.setPath( path( file ) );
+
+            int methods = ( LINES_PER_FILE + 9 ) / 10;
+            _file.getClazz().add( _class( "File" + file, ( methods + 1 ) / 2 ) );
+            _file.getClazz().add( _class( "File" + file + "Helper", methods / 2 ) );
+
+            List<Line> lines = _file.getLine();
+            for (int index = 0; index < LINES_PER_FILE; index++) {
+                Line line = new Line();
+                line.setNum( lineNumber( index ) );
+                line.setType( type( index ) );
+                if ( line.getType() == Construct.COND ) {
+                    line.setTruecount( random.nextInt( 3 ) );
+                    line.setFalsecount( random.nextInt( 3 ) );
+                }
+                else {
+                    line.setCount( random.nextInt( 3 ) );
+                }
+                lines.add( line );
+            }
+
+            files.add( _file );
+        }
+
+        return files;
+    }
+
+    private static generated.Class _class( String name, int methods ) {
+
+        ClassMetrics classMetrics = new ClassMetrics();
+        classMetrics.setMethods( methods );
+
+        generated.Class _class = new generated.Class();
+        _class.setName( name );
+        _class.setMetrics( classMetrics );
+        return _class;
+    }
+
+    /**
+     * @return The revision of every source line of a single file.
+     */
+    public static RevisionColumn revisions() {
+
+        Random random = new Random( SEED );
+        RevisionColumn revisions = new RevisionColumn();
+        for (int i = 0; i < sourceLineCount(); i++) {
+            revisions.add( 1 + random.nextInt( (int) HEAD_REVISION ) );
+        }
+        return revisions;
+    }
+
+    /**
+     * @return The <code>svn blame</code> output of a file with the given
+     * number of source lines, with every 100th line modified locally.
+     */
+    public static byte[] blame( int lineCount ) {
+
+        Random random = new Random( SEED );
+        StringBuilder blame = new StringBuilder( lineCount * 40 );
+        for (int i = 0; i < lineCount; i++) {
+            long revision = 1 + random.nextInt( (int) HEAD_REVISION );
+            if ( i % 100 == 99 ) {
+                blame.append( String.format( "%6s %10s         statement%d();\n", "-", "-", i ) );
+            }
+            else {
+                blame.append( String.format( "%6d %10s         statement%d();\n", revision, "developer", i ) );
+            }
+        }
+        return blame.toString().getBytes();
+    }
+
+    /**
+     * @return The <code>svn info</code> output of a file.
+     */
+    public static List<String> info() {
+
+        List<String> info = new ArrayList<String>();
+        info.add( "Path: src/main/java/File.java" );
+        info.add( "Name: File.java" );
+        info.add( "Working Copy Root Path: /synthetic" );
+        info.add( "URL: https://svn.example.com/repo/trunk/src/main/java/File.java" );
+        info.add( "Relative URL: ^/trunk/src/main/java/File.java" );
+        info.add( "Repository Root: https://svn.example.com/repo" );
+        info.add( "Repository UUID: 00000000-0000-0000-0000-000000000000" );
+        info.add( "Revision: " + HEAD_REVISION );
+        info.add( "Node Kind: file" );
+        info.add( "Schedule: normal" );
+        info.add( "Last Changed Author: developer" );
+        info.add( "Last Changed Rev: " + ( HEAD_REVISION - 1 ) );
+        info.add( "Last Changed Date: 2013-01-01 00:00:00 +0000 (Tue, 01 Jan 2013)" );
+        info.add( "" );
+        return info;
+    }
+
+    public static int sourceLineCount() {
+
+        return lineNumber( LINES_PER_FILE );
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Persistent cache of blame results. Each entry holds the revision column of a
+ * single file and is keyed by the repository path plus the Last Changed Rev of
+ * that file, so an entry stays valid for as long as the file is not committed
+ * to again.
+ * <p>
+ * Entries are written to a temporary file and renamed into place, so readers
+ * in other threads or processes only ever see complete entries. The least
+ * recently used entries are evicted once the cache grows past its maximum
+ * size.
+ * <p>
+ * Entry format: magic, version, repository path, Last Changed Rev, line count
+ * and then each line's revision as a zig-zag varint delta from the previous
+ * line, so runs of lines from the same commit cost a single byte each.
+ */
+public final class BlameCache {
+
+    private static final int MAGIC = 0x43524243; // CRBC
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".blame";
+    private static final long STALE_TEMP_AGE = 24 * 60 * 60 * 1000L;
+
+    private final File directory;
+    private final long maximumSize;
+
+    /**
+     * Entry sizes by file name, in least recently used order.
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>( 16, 0.75f, true );
+    private long size;
+
+    public BlameCache(File directory, long maximumSize) {
+
+        this.directory = directory;
+        this.maximumSize = maximumSize;
+
+        directory.mkdirs();
+
+        File[] files = directory.listFiles();
+        if ( files == null ) {
+            return;
+        }
+
+        Arrays.sort( files, new LastModifiedComparator() );
+
+        for (File file : files) {
+            String name = file.getName();
+            if ( name.endsWith( EXTENSION ) ) {
+                long length = file.length();
+                entries.put( name, length );
+                size += length;
+            }
+            else if ( file.lastModified() < System.currentTimeMillis() - STALE_TEMP_AGE ) {
+                // left behind by an interrupted put
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if a valid entry was found and loaded into the column.
+     */
+    public boolean get( String path, long lastChangedRevision, RevisionColumn revisions ) {
+
+        String name = name( path );
+        File file = new File( directory, name );
+
+        InputStream inputStream = null;
+
+        try {
+
+            inputStream = new BufferedInputStream( new FileInputStream( file ) );
+            DataInputStream dataInputStream = new DataInputStream( inputStream );
+
+            if ( dataInputStream.readInt() != MAGIC || dataInputStream.readByte() != VERSION ) {
+                return false;
+            }
+
+            if ( !path.equals( dataInputStream.readUTF() ) || dataInputStream.readLong() != lastChangedRevision ) {
+                return false;
+            }
+
+            revisions.clear();
+
+            int count = (int) readVarLong( dataInputStream );
+            long revision = 0;
+            for (int i = 0; i < count; i++) {
+                revision += unzigzag( readVarLong( dataInputStream ) );
+                revisions.add( revision );
+            }
+        }
+        catch (IOException e) {
+            // missing or damaged entry
+            return false;
+        }
+        finally {
+            IOUtil.close( inputStream );
+        }
+
+        synchronized (this) {
+            entries.get( name );
+        }
+        file.setLastModified( System.currentTimeMillis() );
+        return true;
+    }
+
+    public void put( String path, long lastChangedRevision, RevisionColumn revisions ) throws IOException {
+
+        String name = name( path );
+        File file = new File( directory, name );
+        File temp = File.createTempFile( name, ".tmp", directory );
+
+        OutputStream outputStream = null;
+
+        try {
+
+            outputStream = new BufferedOutputStream( new FileOutputStream( temp ) );
+            DataOutputStream dataOutputStream = new DataOutputStream( outputStream );
+
+            dataOutputStream.writeInt( MAGIC );
+            dataOutputStream.writeByte( VERSION );
+            dataOutputStream.writeUTF( path );
+            dataOutputStream.writeLong( lastChangedRevision );
+
+            int count = revisions.size();
+            writeVarLong( dataOutputStream, count );
+            long previous = 0;
+            for (int i = 1; i <= count; i++) {
+                long revision = revisions.get( i );
+                writeVarLong( dataOutputStream, zigzag( revision - previous ) );
+                previous = revision;
+            }
+
+            dataOutputStream.flush();
+        }
+        finally {
+            IOUtil.close( outputStream );
+        }
+
+        synchronized (this) {
+
+            if ( !temp.renameTo( file ) ) {
+                // some platforms will not rename over an existing file
+                file.delete();
+                if ( !temp.renameTo( file ) ) {
+                    temp.delete();
+                    return;
+                }
+            }
+
+            Long previous = entries.put( name, file.length() );
+            size += file.length() - ( previous == null ? 0 : previous.longValue() );
+
+            evict();
+        }
+    }
+
+    private void evict() {
+
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > maximumSize && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            new File( directory, entry.getKey() ).delete();
+            size -= entry.getValue();
+            iterator.remove();
+        }
+    }
+
+    private static String name( String path ) {
+
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance( "SHA-1" );
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException( e );
+        }
+
+        byte[] digest;
+        try {
+            digest = messageDigest.digest( path.getBytes( "UTF-8" ) );
+        }
+        catch (IOException e) {
+            throw new IllegalStateException( e );
+        }
+
+        StringBuffer stringBuffer = new StringBuffer( digest.length * 2 + EXTENSION.length() );
+        for (byte b : digest) {
+            stringBuffer.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) );
+            stringBuffer.append( Character.forDigit( b & 0xF, 16 ) );
+        }
+        stringBuffer.append( EXTENSION );
+        return stringBuffer.toString();
+    }
+
+    private static long zigzag( long value ) {
+
+        return ( value << 1 ) ^ ( value >> 63 );
+    }
+
+    private static long unzigzag( long value ) {
+
+        return ( value >>> 1 ) ^ -( value & 1 );
+    }
+
+    private static void writeVarLong( DataOutputStream dataOutputStream, long value ) throws IOException {
+
+        while (( value & ~0x7FL ) != 0) {
+            dataOutputStream.writeByte( (int) ( ( value & 0x7F ) | 0x80 ) );
+            value >>>= 7;
+        }
+        dataOutputStream.writeByte( (int) value );
+    }
+
+    private static long readVarLong( DataInputStream dataInputStream ) throws IOException {
+
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = dataInputStream.readUnsignedByte();
+            value |= (long) ( b & 0x7F ) << shift;
+            if ( ( b & 0x80 ) == 0 ) {
+                return value;
+            }
+        }
+        throw new EOFException( "Malformed varint" );
+    }
+
+    private static class LastModifiedComparator implements Comparator<File> {
+
+        @Override
+        public int compare( File file1, File file2 ) {
+
+            long lastModified1 = file1.lastModified();
+            long lastModified2 = file2.lastModified();
+            return lastModified1 < lastModified2 ? -1 : ( lastModified1 == lastModified2 ? 0 : 1 );
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Remembers how long each file took to blame so later runs can estimate the
+ * cost of a file before blaming it. Files without history are estimated from
+ * their line count, scaled by the average time per line of those with history.
+ */
+public final class BlameHistory {
+
+    private static final int MAGIC = 0x43524248; // CRBH
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private double millisPerLine = 1;
+
+    public BlameHistory(File file) {
+
+        this.file = file;
+    }
+
+    public void load() {
+
+        if ( !file.exists() ) {
+            return;
+        }
+
+        InputStream inputStream = null;
+
+        try {
+
+            inputStream = new BufferedInputStream( new FileInputStream( file ) );
+            DataInputStream dataInputStream = new DataInputStream( inputStream );
+
+            if ( dataInputStream.readInt() != MAGIC || dataInputStream.readByte() != VERSION ) {
+                return;
+            }
+
+            long totalLines = 0;
+            long totalMillis = 0;
+
+            int count = dataInputStream.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = dataInputStream.readUTF();
+                Entry entry = new Entry( dataInputStream.readInt(), dataInputStream.readInt() );
+                entries.put( path, entry );
+                totalLines += entry.lines;
+                totalMillis += entry.millis;
+            }
+
+            if ( totalLines > 0 && totalMillis > 0 ) {
+                millisPerLine = totalMillis / (double) totalLines;
+            }
+        }
+        catch (IOException e) {
+            // start over without history
+            entries.clear();
+        }
+        finally {
+            IOUtil.close( inputStream );
+        }
+    }
+
+    public void save() throws IOException {
+
+        File temp = new File( file.getPath() + ".tmp" );
+        OutputStream outputStream = null;
+
+        try {
+
+            outputStream = new BufferedOutputStream( new FileOutputStream( temp ) );
+            DataOutputStream dataOutputStream = new DataOutputStream( outputStream );
+
+            dataOutputStream.writeInt( MAGIC );
+            dataOutputStream.writeByte( VERSION );
+            dataOutputStream.writeInt( entries.size() );
+
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                dataOutputStream.writeUTF( entry.getKey() );
+                dataOutputStream.writeInt( entry.getValue().lines );
+                dataOutputStream.writeInt( entry.getValue().millis );
+            }
+
+            dataOutputStream.flush();
+        }
+        finally {
+            IOUtil.close( outputStream );
+        }
+
+        file.delete();
+        temp.renameTo( file );
+    }
+
+    /**
+     * @return The estimated blame time in milliseconds.
+     */
+    public long estimate( String path, int lines ) {
+
+        Entry entry = entries.get( path );
+        if ( entry != null ) {
+            return entry.millis;
+        }
+        return (long) Math.ceil( lines * millisPerLine );
+    }
+
+    public void record( String path, int lines, long millis ) {
+
+        entries.put( path, new Entry( lines, (int) Math.min( Integer.MAX_VALUE, millis ) ) );
+    }
+
+    private static final class Entry {
+
+        private final int lines;
+        private final int millis;
+
+        public Entry(int lines, int millis) {
+
+            this.lines = lines;
+            this.millis = millis;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Parses <code>svn blame</code> output straight from the process into a
+ * revision column. Each line starts with the revision, right aligned, or
+ * <code>-</code> for a line modified in the working copy. Only the bytes of
+ * the revision are looked at and nothing is allocated per line.
+ * <p>
+ * Lines end with <code>\n</code>, <code>\r\n</code> or a lone
+ * <code>\r</code>, the same line endings <code>svn</code> splits the file on.
+ */
+public final class BlameOutputParser implements ProcessExecutor.OutputParser {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int LEADING = 0;
+    private static final int REVISION = 1;
+    private static final int REST = 2;
+
+    private static final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+
+        @Override
+        protected byte[] initialValue() {
+
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    private final RevisionColumn revisions;
+
+    public BlameOutputParser(RevisionColumn revisions) {
+
+        this.revisions = revisions;
+    }
+
+    @Override
+    public void parse( InputStream inputStream ) throws IOException {
+
+        byte[] buffer = buffers.get();
+
+        int state = LEADING;
+        boolean lineStarted = false;
+        boolean carriageReturn = false;
+        long revision = 0;
+
+        int read;
+        while (( read = inputStream.read( buffer ) ) != -1) {
+            for (int i = 0; i < read; i++) {
+
+                byte b = buffer[i];
+
+                // the \n of a \r\n, which the \r already ended
+                if ( b == '\n' && carriageReturn ) {
+                    carriageReturn = false;
+                    continue;
+                }
+                carriageReturn = b == '\r';
+
+                if ( b == '\n' || b == '\r' ) {
+                    if ( state == LEADING ) {
+                        unparseable();
+                    }
+                    revisions.add( revision );
+                    state = LEADING;
+                    lineStarted = false;
+                    revision = 0;
+                    continue;
+                }
+
+                lineStarted = true;
+
+                switch (state) {
+                    case LEADING:
+                        if ( b == ' ' || b == '\t' ) {
+                            break;
+                        }
+                        if ( b == '-' ) {
+                            revision = RevisionColumn.LOCAL_MODIFICATION;
+                            state = REST;
+                        }
+                        else if ( b >= '0' && b <= '9' ) {
+                            revision = b - '0';
+                            state = REVISION;
+                        }
+                        else {
+                            unparseable();
+                        }
+                        break;
+                    case REVISION:
+                        if ( b >= '0' && b <= '9' ) {
+                            revision = ( revision * 10 ) + ( b - '0' );
+                        }
+                        else {
+                            state = REST;
+                        }
+                        break;
+                }
+            }
+        }
+
+        // the last line may not end with a line break
+        if ( lineStarted ) {
+            if ( state == LEADING ) {
+                unparseable();
+            }
+            revisions.add( revision );
+        }
+    }
+
+    private void unparseable() {
+
+        throw new IllegalStateException( "Unable to parse blame output at line " + ( revisions.size() + 1 ) );
+    }
+}
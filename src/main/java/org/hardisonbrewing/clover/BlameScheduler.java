@@ -0,0 +1,339 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Runs one task per report file on a fixed pool of blame threads. Submitting
+ * blocks once the configured number of files are queued or running, which
+ * keeps the report parser from running ahead of the blame threads.
+ * <p>
+ * Queued files run most expensive first so a large file found late in the
+ * report does not finish long after everything else. Costs are compared by
+ * order of magnitude, and within the same magnitude files take turns by
+ * group (package), so one directory does not hog the server.
+ * <p>
+ * Failed files are logged and counted. Once more than
+ * <code>maxFailures</code> have failed the scheduler cancels itself: queued
+ * files are dropped, running threads are interrupted and their child
+ * processes are killed.
+ */
+public final class BlameScheduler {
+
+    private final Log log;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore permits;
+    private final int threadCount;
+    private final int maxFailures;
+
+    private final AtomicInteger failures = new AtomicInteger();
+    private final ConcurrentLinkedQueue<String> failedNames = new ConcurrentLinkedQueue<String>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicLong queueWaitNanos = new AtomicLong();
+    private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+    private long submitWaitNanos;
+    private final Map<String, Integer> groupTurns = new HashMap<String, Integer>();
+
+    private long startNanos;
+    private long endNanos;
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private volatile Exception failure;
+
+    /**
+     * @param maxFailures The number of files allowed to fail before the run is
+     * cancelled, or -1 to allow any number.
+     */
+    public BlameScheduler(Log log, int threadCount, int maxInFlight, int maxFailures) {
+
+        this.log = log;
+        this.threadCount = threadCount;
+        this.maxFailures = maxFailures;
+
+        permits = new Semaphore( maxInFlight );
+
+        ThreadFactory threadFactory = new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread( Runnable runnable ) {
+
+                Thread thread = new Thread( runnable, "reductor-blame-" + count.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        };
+
+        executor = new ThreadPoolExecutor( threadCount, threadCount, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>( maxInFlight ), threadFactory );
+    }
+
+    /**
+     * @param group The group the file belongs to, files of different groups
+     * with a similar cost take turns.
+     * @param cost The estimated cost of the file, in any unit as long as it
+     * is the same for every file.
+     * @throws CancellationException If the scheduler has been cancelled.
+     */
+    public <V> Future<V> submit( String name, String group, long cost, Callable<V> callable ) throws InterruptedException {
+
+        long waitStart = System.nanoTime();
+        permits.acquire();
+        submitWaitNanos += System.nanoTime() - waitStart;
+
+        if ( cancelled.get() ) {
+            permits.release();
+            throw new CancellationException();
+        }
+
+        if ( startNanos == 0 ) {
+            startNanos = System.nanoTime();
+        }
+
+        FileTask<V> fileTask = new FileTask<V>( name, magnitude( cost ), turn( group ), callable );
+
+        try {
+            executor.execute( fileTask );
+        }
+        catch (RejectedExecutionException e) {
+            permits.release();
+            throw new CancellationException();
+        }
+
+        return fileTask;
+    }
+
+    /**
+     * Drops the queued files, interrupts the running ones and kills their
+     * child processes.
+     */
+    public void cancel() {
+
+        // a failing file and the parser can both cancel, only one releases
+        if ( !cancelled.compareAndSet( false, true ) ) {
+            return;
+        }
+
+        executor.shutdownNow();
+        ProcessExecutor.destroyAll();
+
+        // wake up a parser blocked in submit
+        permits.release( Integer.MAX_VALUE / 2 );
+    }
+
+    public boolean isCancelled() {
+
+        return cancelled.get();
+    }
+
+    /**
+     * Waits for every submitted file to finish.
+     * 
+     * @throws MojoFailureException If more than <code>maxFailures</code> files failed.
+     */
+    public void awaitCompletion() throws Exception {
+
+        executor.shutdown();
+
+        try {
+            while (!executor.awaitTermination( 1, TimeUnit.SECONDS )) {
+                // keep waiting
+            }
+        }
+        catch (InterruptedException e) {
+            cancel();
+            throw e;
+        }
+
+        endNanos = System.nanoTime();
+
+        if ( failure != null ) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return The fraction of the available thread time spent running files,
+     * between 0 and 1. Only valid after {@link #awaitCompletion()}.
+     */
+    public double getUtilization() {
+
+        long wallNanos = endNanos - startNanos;
+        if ( startNanos == 0 || wallNanos <= 0 ) {
+            return 0;
+        }
+        return busyNanos.get() / ( (double) wallNanos * threadCount );
+    }
+
+    public int getFailureCount() {
+
+        return failures.get();
+    }
+
+    /**
+     * @return The names of the failed files, sorted.
+     */
+    public List<String> getFailedNames() {
+
+        List<String> names = new ArrayList<String>( failedNames );
+        Collections.sort( names );
+        return names;
+    }
+
+    /**
+     * @return The total time files spent queued before a thread picked them up.
+     */
+    public long getQueueWaitNanos() {
+
+        return queueWaitNanos.get();
+    }
+
+    public long getMaxQueueWaitNanos() {
+
+        return maxQueueWaitNanos.get();
+    }
+
+    /**
+     * @return The total time the submitting thread was blocked waiting for a
+     * queued file to finish.
+     */
+    public long getSubmitWaitNanos() {
+
+        return submitWaitNanos;
+    }
+
+    private static int magnitude( long cost ) {
+
+        return 64 - Long.numberOfLeadingZeros( Math.max( 0, cost ) );
+    }
+
+    private int turn( String group ) {
+
+        synchronized (groupTurns) {
+            Integer turn = groupTurns.get( group );
+            turn = turn == null ? 0 : turn + 1;
+            groupTurns.put( group, turn );
+            return turn;
+        }
+    }
+
+    private void failed( String name, Throwable throwable ) {
+
+        failedNames.add( name );
+        int count = failures.incrementAndGet();
+        log.error( "Unable to inspect file: " + name, throwable );
+
+        if ( maxFailures >= 0 && count > maxFailures && failure == null ) {
+            failure = new MojoFailureException( count + " files failed, more than the " + maxFailures + " allowed" );
+            cancel();
+        }
+    }
+
+    private final class FileTask<V> extends FutureTask<V> implements Comparable<FileTask<?>> {
+
+        private final String name;
+        private final int magnitude;
+        private final int turn;
+        private final long order;
+        private final long queuedNanos = System.nanoTime();
+
+        public FileTask(String name, int magnitude, int turn, Callable<V> callable) {
+
+            super( callable );
+            this.name = name;
+            this.magnitude = magnitude;
+            this.turn = turn;
+            order = sequence.getAndIncrement();
+        }
+
+        @Override
+        public void run() {
+
+            long start = System.nanoTime();
+
+            long queueWait = start - queuedNanos;
+            queueWaitNanos.addAndGet( queueWait );
+            long max;
+            while (( max = maxQueueWaitNanos.get() ) < queueWait && !maxQueueWaitNanos.compareAndSet( max, queueWait )) {
+                // retry
+            }
+
+            try {
+                super.run();
+            }
+            finally {
+                busyNanos.addAndGet( System.nanoTime() - start );
+            }
+        }
+
+        @Override
+        public int compareTo( FileTask<?> other ) {
+
+            if ( magnitude != other.magnitude ) {
+                return magnitude > other.magnitude ? -1 : 1;
+            }
+            if ( turn != other.turn ) {
+                return turn < other.turn ? -1 : 1;
+            }
+            return order < other.order ? -1 : ( order == other.order ? 0 : 1 );
+        }
+
+        @Override
+        protected void done() {
+
+            permits.release();
+
+            if ( isCancelled() || cancelled.get() ) {
+                return;
+            }
+
+            try {
+                get();
+            }
+            catch (ExecutionException e) {
+                failed( name, e.getCause() );
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
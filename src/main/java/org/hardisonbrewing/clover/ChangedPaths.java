@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Maps the repository paths reported by a log of the working copy to the
+ * canonical local paths used to look up files from the coverage report.
+ * <p>
+ * A directory added by a copy or a move is listed on its own, without the
+ * files under it. Such paths end with a separator and cover every file below
+ * them, see {@link #contains(Set, String)}.
+ */
+public final class ChangedPaths {
+
+    private ChangedPaths() {
+
+        // do nothing
+    }
+
+    /**
+     * @param action The action of the log entry, e.g. <code>A</code>.
+     * @param kind The node kind, or null if the server did not report it.
+     * @param copyFromPath The path the entry was copied from, or null.
+     * @return True if the entry stands for every file under it: a directory
+     * added or replaced, or a copy of unknown kind, as old servers leave the
+     * kind out.
+     */
+    public static boolean isTreeChange( String action, String kind, String copyFromPath ) {
+
+        if ( "file".equals( kind ) ) {
+            return false;
+        }
+        if ( copyFromPath != null ) {
+            return true;
+        }
+        return "dir".equals( kind ) && ( "A".equals( action ) || "R".equals( action ) );
+    }
+
+    /**
+     * @return The repository path marked as covering every file under it.
+     */
+    public static String tree( String repositoryPath ) {
+
+        return repositoryPath.endsWith( "/" ) ? repositoryPath : repositoryPath + "/";
+    }
+
+    /**
+     * @return True if the file is one of the changed paths or lies under a
+     * changed directory.
+     */
+    public static boolean contains( Set<String> localPaths, String localPath ) {
+
+        if ( localPaths.contains( localPath ) ) {
+            return true;
+        }
+
+        int index = localPath.length();
+        while (( index = localPath.lastIndexOf( File.separatorChar, index - 1 ) ) > 0) {
+            if ( localPaths.contains( localPath.substring( 0, index + 1 ) ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param workingCopyPath The path of the working copy relative to the repository root, e.g. <code>/trunk</code>.
+     * @param repositoryPaths The changed paths relative to the repository root,
+     * ending with <code>/</code> for a {@link #tree(String)}.
+     */
+    public static Set<String> toLocalPaths( File workingCopy, String workingCopyPath, Set<String> repositoryPaths ) throws IOException {
+
+        String localRoot = workingCopy.getCanonicalPath();
+        String prefix = workingCopyPath;
+        if ( prefix.endsWith( "/" ) ) {
+            prefix = prefix.substring( 0, prefix.length() - 1 );
+        }
+
+        Set<String> localPaths = new HashSet<String>();
+
+        for (String repositoryPath : repositoryPaths) {
+            if ( repositoryPath.endsWith( "/" ) && ( prefix + "/" ).startsWith( repositoryPath ) ) {
+                // the working copy itself was copied or replaced
+                localPaths.add( localRoot + File.separator );
+            }
+            else if ( repositoryPath.length() > prefix.length() && repositoryPath.startsWith( prefix ) && repositoryPath.charAt( prefix.length() ) == '/' ) {
+                String relativePath = repositoryPath.substring( prefix.length() );
+                localPaths.add( localRoot + relativePath.replace( '/', File.separatorChar ) );
+            }
+        }
+
+        return localPaths;
+    }
+
+    /**
+     * Decodes the percent escapes used in repository URLs, so paths from info
+     * match those reported by log and stored in wc.db. URLDecoder also turns
+     * '+' into a space, which URLs from svn do not intend.
+     */
+    public static String decode( String path ) throws IOException {
+
+        if ( path.indexOf( '%' ) == -1 ) {
+            return path;
+        }
+        return URLDecoder.decode( path.replace( "+", "%2B" ), "UTF-8" );
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+/**
+ * Holds back every caller while the server is failing. The outcomes of the
+ * most recent calls are kept in a sliding window, and once the share of
+ * failures in a full window reaches the threshold the breaker opens: callers
+ * wait out the cooldown, then a single trial call is let through. If the
+ * trial succeeds the breaker closes and everyone continues, otherwise it
+ * opens again.
+ * <p>
+ * Callers wrap each call in {@link #acquire()} and exactly one of
+ * {@link #success()}, {@link #failure()} or {@link #release()}.
+ */
+public final class CircuitBreaker {
+
+    private final boolean[] window;
+    private final int threshold;
+    private final long cooldown;
+
+    private int index;
+    private int count;
+    private int failures;
+
+    private long openUntil;
+    private boolean trial;
+    private int openCount;
+
+    /**
+     * @param windowSize The number of recent calls considered.
+     * @param threshold The percentage of failures which opens the breaker.
+     * @param cooldown Milliseconds to hold callers back once opened.
+     */
+    public CircuitBreaker(int windowSize, int threshold, long cooldown) {
+
+        window = new boolean[windowSize];
+        this.threshold = threshold;
+        this.cooldown = cooldown;
+    }
+
+    /**
+     * Waits until the breaker lets a call through.
+     */
+    public synchronized void acquire() throws InterruptedException {
+
+        while (openUntil != 0) {
+
+            long wait = openUntil - System.currentTimeMillis();
+            if ( wait > 0 ) {
+                wait( wait );
+            }
+            else if ( !trial ) {
+                trial = true;
+                return;
+            }
+            else {
+                // wait for the trial call to finish
+                wait();
+            }
+        }
+    }
+
+    public synchronized void success() {
+
+        if ( trial ) {
+            trial = false;
+            openUntil = 0;
+            notifyAll();
+            return;
+        }
+
+        add( false );
+    }
+
+    /**
+     * @return True if this failure opened the breaker.
+     */
+    public synchronized boolean failure() {
+
+        if ( trial ) {
+            trial = false;
+            open();
+            return true;
+        }
+
+        add( true );
+
+        if ( openUntil == 0 && count == window.length && failures * 100 >= threshold * count ) {
+            open();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gives up a call without an outcome, e.g. when it was interrupted.
+     */
+    public synchronized void release() {
+
+        if ( trial ) {
+            trial = false;
+            notifyAll();
+        }
+    }
+
+    public synchronized boolean isOpen() {
+
+        return openUntil != 0;
+    }
+
+    /**
+     * @return The number of times the breaker has opened.
+     */
+    public synchronized int getOpenCount() {
+
+        return openCount;
+    }
+
+    private void add( boolean failed ) {
+
+        if ( count == window.length ) {
+            if ( window[index] ) {
+                failures--;
+            }
+        }
+        else {
+            count++;
+        }
+
+        window[index] = failed;
+        if ( failed ) {
+            failures++;
+        }
+        index = ( index + 1 ) % window.length;
+    }
+
+    private void open() {
+
+        openUntil = System.currentTimeMillis() + cooldown;
+        openCount++;
+
+        // start over, the calls before the cooldown say nothing about after it
+        index = 0;
+        count = 0;
+        failures = 0;
+
+        notifyAll();
+    }
+}
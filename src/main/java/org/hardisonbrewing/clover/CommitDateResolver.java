@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves git commit timestamps through a single long-lived
+ * <code>git cat-file --batch</code> process, caching each answer, rather than
+ * starting a process per lookup.
+ */
+public final class CommitDateResolver {
+
+    private final Map<String, Long> dates = new ConcurrentHashMap<String, Long>();
+
+    private final Process process;
+    private final OutputStream outputStream;
+    private final DataInputStream inputStream;
+
+    public CommitDateResolver(File workingCopy) throws IOException {
+
+        ProcessBuilder processBuilder = new ProcessBuilder( "git", "cat-file", "--batch" );
+        processBuilder.directory( workingCopy );
+        process = ProcessExecutor.start( processBuilder );
+
+        outputStream = process.getOutputStream();
+        inputStream = new DataInputStream( new BufferedInputStream( process.getInputStream() ) );
+    }
+
+    /**
+     * Records a timestamp which is already known, such as one reported in the
+     * headers of <code>git blame</code>.
+     */
+    public void put( String sha, long date ) {
+
+        dates.put( sha, date );
+    }
+
+    /**
+     * @return The committer timestamp, in seconds.
+     */
+    public long get( String sha ) throws IOException {
+
+        Long date = dates.get( sha );
+        if ( date != null ) {
+            return date;
+        }
+
+        synchronized (this) {
+
+            date = dates.get( sha );
+            if ( date != null ) {
+                return date;
+            }
+
+            outputStream.write( ( sha + "\n" ).getBytes( "US-ASCII" ) );
+            outputStream.flush();
+
+            // <sha> <type> <size> or <sha> missing
+            String header = readLine( inputStream );
+            String[] tokens = header.split( " " );
+            if ( tokens.length != 3 ) {
+                throw new IOException( "Unable to resolve commit: " + header );
+            }
+
+            byte[] object = new byte[Integer.parseInt( tokens[2] )];
+            inputStream.readFully( object );
+            inputStream.readByte(); // trailing LF
+
+            if ( !"commit".equals( tokens[1] ) ) {
+                throw new IOException( "Not a commit: " + header );
+            }
+
+            long committerTime = committerTime( new String( object, "UTF-8" ) );
+            dates.put( sha, committerTime );
+            return committerTime;
+        }
+    }
+
+    private long committerTime( String commit ) throws IOException {
+
+        int start = 0;
+        if ( !commit.startsWith( "committer " ) ) {
+            start = commit.indexOf( "\ncommitter " );
+            if ( start == -1 ) {
+                throw new IOException( "Commit has no committer" );
+            }
+            start++;
+        }
+
+        int end = commit.indexOf( '\n', start );
+        String committer = commit.substring( start, end == -1 ? commit.length() : end );
+
+        // committer Name <email> <timestamp> <timezone>
+        String[] tokens = committer.split( " " );
+        return Long.parseLong( tokens[tokens.length - 2] );
+    }
+
+    private static String readLine( InputStream inputStream ) throws IOException {
+
+        ByteArrayOutputStream line = new ByteArrayOutputStream( 64 );
+        int b;
+        while (( b = inputStream.read() ) != '\n') {
+            if ( b == -1 ) {
+                throw new IOException( "Unexpected end of git cat-file output" );
+            }
+            line.write( b );
+        }
+        return line.toString( "UTF-8" );
+    }
+
+    public synchronized void close() {
+
+        try {
+            outputStream.close();
+        }
+        catch (IOException e) {
+            // do nothing
+        }
+        ProcessExecutor.destroy( process );
+    }
+}
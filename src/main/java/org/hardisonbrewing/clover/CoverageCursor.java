@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import generated.Coverage;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.StringUtils;
+import org.hardisonbrewing.jaxb.JAXB;
+
+/**
+ * Steps through a Clover report one <code>&lt;file&gt;</code> element at a
+ * time on request, so several reports can be read side by side. The path and
+ * package of the current file are known before it is built, and a file which
+ * is not wanted can be skipped without unmarshalling it. As with
+ * {@link CoverageReader}, metrics and the <code>&lt;testproject&gt;</code>
+ * element are skipped.
+ */
+public final class CoverageCursor {
+
+    private final File file;
+
+    private InputStream inputStream;
+    private XMLStreamReader reader;
+    private Unmarshaller unmarshaller;
+    private int event;
+
+    private Coverage coverage;
+    private String packageName;
+    private String path;
+
+    private CoverageCursor(File file) {
+
+        this.file = file;
+    }
+
+    /**
+     * Opens the report on its first file, if it has one.
+     */
+    public static CoverageCursor open( File file ) throws Exception {
+
+        CoverageCursor coverageCursor = new CoverageCursor( file );
+
+        try {
+            coverageCursor.inputStream = JAXB.openInputStream( file );
+            coverageCursor.reader = JAXB.createXMLStreamReader( coverageCursor.inputStream );
+            coverageCursor.unmarshaller = JAXB.getUnmarshaller();
+            coverageCursor.event = coverageCursor.reader.getEventType();
+            coverageCursor.advance();
+        }
+        catch (Exception e) {
+            coverageCursor.close();
+            throw e;
+        }
+
+        return coverageCursor;
+    }
+
+    /**
+     * @return The packages with files, in the order the report lists them,
+     * read without building any of the files. A package is listed again if it
+     * comes back after another package.
+     */
+    public static List<String> readPackageNames( File file ) throws Exception {
+
+        List<String> packageNames = new ArrayList<String>();
+
+        CoverageCursor coverageCursor = open( file );
+        try {
+            while (coverageCursor.hasFile()) {
+                String packageName = coverageCursor.getPackageName();
+                if ( packageNames.isEmpty() || !StringUtils.equals( packageNames.get( packageNames.size() - 1 ), packageName ) ) {
+                    packageNames.add( packageName );
+                }
+                coverageCursor.skipFile();
+            }
+        }
+        finally {
+            coverageCursor.close();
+        }
+
+        return packageNames;
+    }
+
+    public File getFile() {
+
+        return file;
+    }
+
+    /**
+     * @return The report attributes, with the project once the cursor has
+     * passed its start tag, or null if there is no <code>&lt;coverage&gt;</code>
+     * element.
+     */
+    public Coverage getCoverage() {
+
+        return coverage;
+    }
+
+    /**
+     * @return False once every file has been read or skipped.
+     */
+    public boolean hasFile() {
+
+        return path != null;
+    }
+
+    public String getPackageName() {
+
+        return packageName;
+    }
+
+    public String getPath() {
+
+        return path;
+    }
+
+    /**
+     * Builds the current file and moves on to the next.
+     */
+    public generated.File readFile() throws Exception {
+
+        generated.File file = unmarshaller.unmarshal( reader, generated.File.class ).getValue();
+        // the unmarshaller leaves the reader on the event following </file>
+        event = reader.getEventType();
+        advance();
+        return file;
+    }
+
+    /**
+     * Moves on to the next file without building the current one.
+     */
+    public void skipFile() throws Exception {
+
+        CoverageReader.skipElement( reader );
+        event = reader.next();
+        advance();
+    }
+
+    /**
+     * Reads up to the start tag of the next file, leaving the path null if
+     * there is none.
+     */
+    private void advance() throws Exception {
+
+        path = null;
+
+        while (event != XMLStreamConstants.END_DOCUMENT) {
+
+            if ( event == XMLStreamConstants.START_ELEMENT ) {
+
+                String localName = reader.getLocalName();
+
+                if ( CoverageReader.FILE.equals( localName ) ) {
+                    path = reader.getAttributeValue( null, "path" );
+                    return;
+                }
+                else if ( CoverageReader.PACKAGE.equals( localName ) ) {
+                    packageName = reader.getAttributeValue( null, "name" );
+                }
+                else if ( CoverageReader.PROJECT.equals( localName ) ) {
+                    if ( coverage == null ) {
+                        coverage = new Coverage();
+                    }
+                    coverage.setProject( CoverageReader.readProject( reader ) );
+                }
+                else if ( CoverageReader.COVERAGE.equals( localName ) ) {
+                    coverage = CoverageReader.readCoverage( reader );
+                }
+                else if ( CoverageReader.TEST_PROJECT.equals( localName ) || CoverageReader.METRICS.equals( localName ) ) {
+                    CoverageReader.skipElement( reader );
+                }
+            }
+            else if ( event == XMLStreamConstants.END_ELEMENT ) {
+
+                if ( CoverageReader.PACKAGE.equals( reader.getLocalName() ) ) {
+                    packageName = null;
+                }
+            }
+
+            event = reader.next();
+        }
+    }
+
+    public void close() {
+
+        if ( reader != null ) {
+            try {
+                reader.close();
+            }
+            catch (XMLStreamException e) {
+                // do nothing
+            }
+        }
+        IOUtil.close( inputStream );
+    }
+}
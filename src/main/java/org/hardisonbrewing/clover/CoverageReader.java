@@ -0,0 +1,217 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import generated.Coverage;
+import generated.Project;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Collection;
+
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.hardisonbrewing.jaxb.JAXB;
+
+/**
+ * Reads a Clover report one <code>&lt;file&gt;</code> element at a time so the
+ * full <code>Coverage</code> tree never has to be held in memory. Project and
+ * package level metrics are skipped since the reductor recalculates them, as is
+ * the <code>&lt;testproject&gt;</code> element.
+ */
+public final class CoverageReader {
+
+    static final String COVERAGE = "coverage";
+    static final String PROJECT = "project";
+    static final String TEST_PROJECT = "testproject";
+    static final String PACKAGE = "package";
+    static final String FILE = "file";
+    static final String METRICS = "metrics";
+
+    private final Handler handler;
+
+    public CoverageReader(Handler handler) {
+
+        this.handler = handler;
+    }
+
+    public void read( File file ) throws Exception {
+
+        InputStream inputStream = null;
+        XMLStreamReader reader = null;
+        try {
+            inputStream = JAXB.openInputStream( file );
+            reader = JAXB.createXMLStreamReader( inputStream );
+            read( reader );
+        }
+        finally {
+            if ( reader != null ) {
+                reader.close();
+            }
+            IOUtil.close( inputStream );
+        }
+    }
+
+    private void read( XMLStreamReader reader ) throws Exception {
+
+        Unmarshaller unmarshaller = JAXB.getUnmarshaller();
+
+        Coverage coverage = null;
+        String packageName = null;
+
+        int event = reader.getEventType();
+
+        while (event != XMLStreamConstants.END_DOCUMENT) {
+
+            if ( event == XMLStreamConstants.START_ELEMENT ) {
+
+                String localName = reader.getLocalName();
+
+                if ( FILE.equals( localName ) ) {
+                    if ( handler.accept( reader.getAttributeValue( null, "path" ) ) ) {
+                        generated.File file = unmarshaller.unmarshal( reader, generated.File.class ).getValue();
+                        handler.file( packageName, file );
+                        // the unmarshaller leaves the reader on the event following </file>
+                        event = reader.getEventType();
+                        continue;
+                    }
+                    skipElement( reader );
+                }
+                else if ( PACKAGE.equals( localName ) ) {
+                    packageName = reader.getAttributeValue( null, "name" );
+                }
+                else if ( PROJECT.equals( localName ) ) {
+                    if ( coverage == null ) {
+                        coverage = new Coverage();
+                    }
+                    coverage.setProject( readProject( reader ) );
+                    handler.startProject( coverage );
+                }
+                else if ( COVERAGE.equals( localName ) ) {
+                    coverage = readCoverage( reader );
+                }
+                else if ( TEST_PROJECT.equals( localName ) || METRICS.equals( localName ) ) {
+                    skipElement( reader );
+                }
+            }
+            else if ( event == XMLStreamConstants.END_ELEMENT ) {
+
+                if ( PACKAGE.equals( reader.getLocalName() ) ) {
+                    handler.endPackage( packageName );
+                    packageName = null;
+                }
+            }
+
+            event = reader.next();
+        }
+    }
+
+    /**
+     * Adds the path of every file listed by the report, without unmarshalling
+     * any of them.
+     */
+    public static void readPaths( File file, Collection<String> paths ) throws Exception {
+
+        InputStream inputStream = null;
+        XMLStreamReader reader = null;
+        try {
+            inputStream = JAXB.openInputStream( file );
+            reader = JAXB.createXMLStreamReader( inputStream );
+            while (reader.hasNext()) {
+                if ( reader.next() != XMLStreamConstants.START_ELEMENT ) {
+                    continue;
+                }
+                String localName = reader.getLocalName();
+                if ( FILE.equals( localName ) ) {
+                    paths.add( reader.getAttributeValue( null, "path" ) );
+                    skipElement( reader );
+                }
+                else if ( TEST_PROJECT.equals( localName ) ) {
+                    skipElement( reader );
+                }
+            }
+        }
+        finally {
+            if ( reader != null ) {
+                reader.close();
+            }
+            IOUtil.close( inputStream );
+        }
+    }
+
+    /**
+     * @return The attributes of the <code>&lt;coverage&gt;</code> start tag
+     * the reader is on.
+     */
+    static Coverage readCoverage( XMLStreamReader reader ) {
+
+        Coverage coverage = new Coverage();
+        coverage.setClover( reader.getAttributeValue( null, "clover" ) );
+        coverage.setGenerated( _int( reader.getAttributeValue( null, "generated" ) ) );
+        return coverage;
+    }
+
+    /**
+     * @return The attributes of the <code>&lt;project&gt;</code> start tag
+     * the reader is on.
+     */
+    static Project readProject( XMLStreamReader reader ) {
+
+        Project project = new Project();
+        project.setName( reader.getAttributeValue( null, "name" ) );
+        project.setTimestamp( _int( reader.getAttributeValue( null, "timestamp" ) ) );
+        return project;
+    }
+
+    static void skipElement( XMLStreamReader reader ) throws XMLStreamException {
+
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if ( event == XMLStreamConstants.START_ELEMENT ) {
+                depth++;
+            }
+            else if ( event == XMLStreamConstants.END_ELEMENT ) {
+                depth--;
+            }
+        }
+    }
+
+    private static int _int( String value ) {
+
+        return value == null ? 0 : Integer.parseInt( value.trim() );
+    }
+
+    public interface Handler {
+
+        public void startProject( Coverage coverage ) throws Exception;
+
+        /**
+         * @return False to skip the file, which is then neither built nor
+         * passed to {@link #file(String, generated.File)}.
+         */
+        public boolean accept( String path ) throws Exception;
+
+        public void file( String packageName, generated.File file ) throws Exception;
+
+        public void endPackage( String packageName ) throws Exception;
+    }
+}
@@ -0,0 +1,337 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import generated.ClassMetrics;
+import generated.Construct;
+import generated.Coverage;
+import generated.Line;
+import generated.Project;
+import generated.Visibility;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * Columnar binary copy of a Clover report, read through a memory mapped
+ * buffer so that reloading a report costs neither an XML parse nor the heap
+ * to hold it. Written by {@link CoverageSnapshotWriter} and only valid while
+ * the report it was taken from keeps the same length, modification time and
+ * {@link #fingerprint(File)}.
+ * <p>
+ * Format: a header with the report's identity, the coverage attributes and
+ * the table sizes, then a file table, a class table, one column per line
+ * attribute and a string table. Only the method count of each class is kept
+ * since every other metric is recalculated by the reduction.
+ */
+public final class CoverageSnapshot {
+
+    static final int MAGIC = 0x43524353; // CRCS
+    static final byte VERSION = 2;
+
+    /**
+     * Stands in for a missing attribute in the int columns.
+     */
+    static final int NULL = Integer.MIN_VALUE;
+
+    static final int HEADER_SIZE = 66;
+    static final int FILE_COLUMNS = 7;
+    static final int CLASS_COLUMNS = 2;
+
+    /**
+     * Bytes read from each end of the report for its fingerprint.
+     */
+    private static final int FINGERPRINT_BLOCK = 8192;
+
+    private static final Construct[] CONSTRUCTS = Construct.values();
+    private static final Visibility[] VISIBILITIES = Visibility.values();
+
+    private final ByteBuffer buffer;
+
+    private final int clover;
+    private final int generated;
+    private final boolean hasProject;
+    private final int projectName;
+    private final int timestamp;
+
+    private final int fileCount;
+
+    private final int files;
+    private final int classes;
+    private final int nums;
+    private final int types;
+    private final int complexities;
+    private final int counts;
+    private final int truecounts;
+    private final int falsecounts;
+    private final int signatures;
+    private final int visibilities;
+    private final int testDurations;
+    private final int testSuccesses;
+    private final int stringOffsets;
+    private final int stringBytes;
+
+    private byte[] scratch = new byte[256];
+
+    private CoverageSnapshot(ByteBuffer buffer) {
+
+        this.buffer = buffer;
+
+        // identity already checked by open
+        buffer.position( 4 + 1 + 8 + 8 + 8 );
+
+        clover = buffer.getInt();
+        generated = buffer.getInt();
+        hasProject = buffer.get() != 0;
+        projectName = buffer.getInt();
+        timestamp = buffer.getInt();
+
+        fileCount = buffer.getInt();
+        int classCount = buffer.getInt();
+        int lineCount = buffer.getInt();
+        int stringCount = buffer.getInt();
+        buffer.getInt(); // string bytes
+
+        files = HEADER_SIZE;
+        classes = files + ( fileCount * FILE_COLUMNS * 4 );
+        nums = classes + ( classCount * CLASS_COLUMNS * 4 );
+        types = nums + ( lineCount * 4 );
+        complexities = types + lineCount;
+        counts = complexities + ( lineCount * 4 );
+        truecounts = counts + ( lineCount * 4 );
+        falsecounts = truecounts + ( lineCount * 4 );
+        signatures = falsecounts + ( lineCount * 4 );
+        visibilities = signatures + ( lineCount * 4 );
+        testDurations = visibilities + lineCount;
+        testSuccesses = testDurations + ( lineCount * 4 );
+        stringOffsets = testSuccesses + lineCount;
+        stringBytes = stringOffsets + ( ( stringCount + 1 ) * 4 );
+    }
+
+    /**
+     * @return The snapshot, or null if there is none or it was taken from a
+     * different version of the report.
+     */
+    public static CoverageSnapshot open( File file, File source ) throws IOException {
+
+        if ( !file.exists() ) {
+            return null;
+        }
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile( file, "r" );
+
+        try {
+
+            FileChannel channel = randomAccessFile.getChannel();
+            long size = channel.size();
+            if ( size < HEADER_SIZE || size > Integer.MAX_VALUE ) {
+                return null;
+            }
+
+            // the mapping stays valid once the channel is closed
+            MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, size );
+
+            if ( buffer.getInt() != MAGIC || buffer.get() != VERSION ) {
+                return null;
+            }
+            if ( buffer.getLong() != source.length() || buffer.getLong() != source.lastModified() ) {
+                return null;
+            }
+            if ( buffer.getLong() != fingerprint( source ) ) {
+                return null;
+            }
+
+            return new CoverageSnapshot( buffer );
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * @return A checksum of the head and tail of the report, which hold the
+     * time it was generated and the project metrics. Catches a report
+     * rewritten with the same length within the file system's timestamp
+     * resolution without reading all of it.
+     */
+    static long fingerprint( File source ) throws IOException {
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile( source, "r" );
+
+        try {
+
+            long length = randomAccessFile.length();
+            byte[] block = new byte[(int) Math.min( length, FINGERPRINT_BLOCK )];
+
+            CRC32 crc32 = new CRC32();
+            randomAccessFile.readFully( block );
+            crc32.update( block );
+            if ( length > block.length ) {
+                randomAccessFile.seek( Math.max( block.length, length - block.length ) );
+                int tail = (int) ( length - randomAccessFile.getFilePointer() );
+                randomAccessFile.readFully( block, 0, tail );
+                crc32.update( block, 0, tail );
+            }
+            return crc32.getValue();
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
+
+    public int getFileCount() {
+
+        return fileCount;
+    }
+
+    /**
+     * Hands the report to the handler in the same order as
+     * {@link CoverageReader}, building each file from the columns as it goes.
+     */
+    public void read( CoverageReader.Handler handler ) throws Exception {
+
+        if ( hasProject ) {
+            Project project = new Project();
+            project.setName( string( projectName ) );
+            project.setTimestamp( timestamp );
+
+            Coverage coverage = new Coverage();
+            coverage.setClover( string( clover ) );
+            coverage.setGenerated( generated );
+            coverage.setProject( project );
+            handler.startProject( coverage );
+        }
+
+        int packageIndex = NULL;
+        String packageName = null;
+
+        for (int i = 0; i < fileCount; i++) {
+
+            int row = files + ( i * FILE_COLUMNS * 4 );
+
+            int _packageIndex = buffer.getInt( row );
+            if ( i == 0 || _packageIndex != packageIndex ) {
+                // a name dropped from the writer's string table comes back under a new index
+                String _packageName = string( _packageIndex );
+                if ( i > 0 && !StringUtils.equals( _packageName, packageName ) ) {
+                    handler.endPackage( packageName );
+                }
+                packageIndex = _packageIndex;
+                packageName = _packageName;
+            }
+
+            String path = string( buffer.getInt( row + 8 ) );
+            if ( !handler.accept( path ) ) {
+                continue;
+            }
+
+            generated.File file = new generated.File();
+            file.setName( string( buffer.getInt( row + 4 ) ) );
+            file.setPath( path );
+            readLines( file.getLine(), buffer.getInt( row + 12 ), buffer.getInt( row + 16 ) );
+            readClasses( file.getClazz(), buffer.getInt( row + 20 ), buffer.getInt( row + 24 ) );
+
+            handler.file( packageName, file );
+        }
+
+        if ( fileCount > 0 ) {
+            handler.endPackage( packageName );
+        }
+    }
+
+    private void readLines( List<Line> lines, int first, int count ) throws IOException {
+
+        for (int i = first; i < first + count; i++) {
+
+            Line line = new Line();
+            line.setNum( buffer.getInt( nums + ( i * 4 ) ) );
+            line.setType( CONSTRUCTS[buffer.get( types + i )] );
+            line.setComplexity( integer( buffer.getInt( complexities + ( i * 4 ) ) ) );
+            line.setCount( integer( buffer.getInt( counts + ( i * 4 ) ) ) );
+            line.setTruecount( integer( buffer.getInt( truecounts + ( i * 4 ) ) ) );
+            line.setFalsecount( integer( buffer.getInt( falsecounts + ( i * 4 ) ) ) );
+            line.setSignature( string( buffer.getInt( signatures + ( i * 4 ) ) ) );
+
+            byte visibility = buffer.get( visibilities + i );
+            if ( visibility >= 0 ) {
+                line.setVisibility( VISIBILITIES[visibility] );
+            }
+
+            String testDuration = string( buffer.getInt( testDurations + ( i * 4 ) ) );
+            if ( testDuration != null ) {
+                line.setTestduration( new BigDecimal( testDuration ) );
+            }
+
+            byte testSuccess = buffer.get( testSuccesses + i );
+            if ( testSuccess >= 0 ) {
+                line.setTestsuccess( testSuccess == 1 );
+            }
+
+            lines.add( line );
+        }
+    }
+
+    private void readClasses( List<generated.Class> _classes, int first, int count ) throws IOException {
+
+        for (int i = first; i < first + count; i++) {
+
+            int row = classes + ( i * CLASS_COLUMNS * 4 );
+
+            ClassMetrics classMetrics = new ClassMetrics();
+            classMetrics.setMethods( buffer.getInt( row + 4 ) );
+
+            generated.Class _class = new generated.Class();
+            _class.setName( string( buffer.getInt( row ) ) );
+            _class.setMetrics( classMetrics );
+            _classes.add( _class );
+        }
+    }
+
+    private static Integer integer( int value ) {
+
+        return value == NULL ? null : Integer.valueOf( value );
+    }
+
+    private String string( int index ) throws IOException {
+
+        if ( index < 0 ) {
+            return null;
+        }
+
+        int start = buffer.getInt( stringOffsets + ( index * 4 ) );
+        int length = buffer.getInt( stringOffsets + ( ( index + 1 ) * 4 ) ) - start;
+
+        if ( length > scratch.length ) {
+            scratch = new byte[Math.max( length, scratch.length << 1 )];
+        }
+
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.position( stringBytes + start );
+        bytes.get( scratch, 0, length );
+
+        return new String( scratch, 0, length, "UTF-8" );
+    }
+}
@@ -0,0 +1,321 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import generated.Coverage;
+import generated.Line;
+import generated.Project;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Takes a {@link CoverageSnapshot} of a report while it is being parsed,
+ * passing every event on to the wrapped handler. Each column is streamed to
+ * its own temporary file, which are joined once the report has been read, so
+ * the report is never held in memory.
+ * <p>
+ * A failure to write the snapshot does not stop the parse, it is only thrown
+ * by {@link #close()}.
+ * <p>
+ * Repeated strings, such as package names, are written once while they are
+ * among the most recently used. A string which has dropped out of the table
+ * is written again, so the table stays small however many distinct
+ * signatures and paths the report holds.
+ */
+public final class CoverageSnapshotWriter implements CoverageReader.Handler {
+
+    private static final int FILES = 0;
+    private static final int CLASSES = 1;
+    private static final int NUMS = 2;
+    private static final int TYPES = 3;
+    private static final int COMPLEXITIES = 4;
+    private static final int COUNTS = 5;
+    private static final int TRUECOUNTS = 6;
+    private static final int FALSECOUNTS = 7;
+    private static final int SIGNATURES = 8;
+    private static final int VISIBILITIES = 9;
+    private static final int TEST_DURATIONS = 10;
+    private static final int TEST_SUCCESSES = 11;
+    private static final int STRING_OFFSETS = 12;
+    private static final int STRING_BYTES = 13;
+    private static final int COLUMN_COUNT = 14;
+
+    static final int STRING_TABLE_SIZE = 4096;
+
+    private final File file;
+    private final File source;
+    private final CoverageReader.Handler handler;
+
+    private final File[] columnFiles = new File[COLUMN_COUNT];
+    private final DataOutputStream[] columns = new DataOutputStream[COLUMN_COUNT];
+    private final Map<String, Integer> strings = new LinkedHashMap<String, Integer>( 16, 0.75f, true ) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<String, Integer> eldest ) {
+
+            return size() > STRING_TABLE_SIZE;
+        }
+    };
+
+    private Coverage coverage;
+    private int fileCount;
+    private int classCount;
+    private int lineCount;
+    private int stringCount;
+    private int stringBytes;
+    private int clover = -1;
+    private int projectName = -1;
+
+    private IOException exception;
+
+    public CoverageSnapshotWriter(File file, File source, CoverageReader.Handler handler) throws IOException {
+
+        this.file = file;
+        this.source = source;
+        this.handler = handler;
+
+        try {
+            for (int i = 0; i < COLUMN_COUNT; i++) {
+                columnFiles[i] = File.createTempFile( file.getName() + "-", ".column", file.getParentFile() );
+                columns[i] = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( columnFiles[i] ) ) );
+            }
+        }
+        catch (IOException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public void startProject( Coverage coverage ) throws Exception {
+
+        this.coverage = coverage;
+
+        if ( exception == null ) {
+            try {
+                clover = string( coverage.getClover() );
+                projectName = string( coverage.getProject().getName() );
+            }
+            catch (IOException e) {
+                exception = e;
+                abort();
+            }
+        }
+
+        handler.startProject( coverage );
+    }
+
+    /**
+     * Every file goes into the snapshot, so the wrapped handler is only asked
+     * once the file is built.
+     */
+    @Override
+    public boolean accept( String path ) {
+
+        return true;
+    }
+
+    @Override
+    public void file( String packageName, generated.File file ) throws Exception {
+
+        if ( exception == null ) {
+            try {
+                write( packageName, file );
+            }
+            catch (IOException e) {
+                exception = e;
+                abort();
+            }
+        }
+
+        if ( handler.accept( file.getPath() ) ) {
+            handler.file( packageName, file );
+        }
+    }
+
+    @Override
+    public void endPackage( String packageName ) throws Exception {
+
+        handler.endPackage( packageName );
+    }
+
+    private void write( String packageName, generated.File file ) throws IOException {
+
+        List<generated.Class> classes = file.getClazz();
+        List<Line> lines = file.getLine();
+
+        DataOutputStream files = columns[FILES];
+        files.writeInt( string( packageName ) );
+        files.writeInt( string( file.getName() ) );
+        files.writeInt( string( file.getPath() ) );
+        files.writeInt( lineCount );
+        files.writeInt( lines.size() );
+        files.writeInt( classCount );
+        files.writeInt( classes.size() );
+        fileCount++;
+
+        for (generated.Class _class : classes) {
+            columns[CLASSES].writeInt( string( _class.getName() ) );
+            columns[CLASSES].writeInt( _class.getMetrics() == null ? 0 : _class.getMetrics().getMethods() );
+            classCount++;
+        }
+
+        for (Line line : lines) {
+            columns[NUMS].writeInt( line.getNum() );
+            columns[TYPES].writeByte( line.getType().ordinal() );
+            columns[COMPLEXITIES].writeInt( _int( line.getComplexity() ) );
+            columns[COUNTS].writeInt( _int( line.getCount() ) );
+            columns[TRUECOUNTS].writeInt( _int( line.getTruecount() ) );
+            columns[FALSECOUNTS].writeInt( _int( line.getFalsecount() ) );
+            columns[SIGNATURES].writeInt( string( line.getSignature() ) );
+            columns[VISIBILITIES].writeByte( line.getVisibility() == null ? -1 : line.getVisibility().ordinal() );
+            columns[TEST_DURATIONS].writeInt( string( line.getTestduration() == null ? null : line.getTestduration().toPlainString() ) );
+            columns[TEST_SUCCESSES].writeByte( line.isTestsuccess() == null ? -1 : ( line.isTestsuccess() ? 1 : 0 ) );
+            lineCount++;
+        }
+    }
+
+    /**
+     * Joins the columns into the snapshot, replacing any previous one.
+     */
+    public void close() throws IOException {
+
+        if ( exception != null ) {
+            throw exception;
+        }
+
+        try {
+            columns[STRING_OFFSETS].writeInt( stringBytes );
+            for (int i = 0; i < COLUMN_COUNT; i++) {
+                columns[i].close();
+            }
+
+            long size = CoverageSnapshot.HEADER_SIZE;
+            for (File columnFile : columnFiles) {
+                size += columnFile.length();
+            }
+            if ( size > Integer.MAX_VALUE ) {
+                throw new IOException( "Snapshot is too large to map: " + size + " bytes" );
+            }
+
+            File temp = new File( file.getPath() + ".tmp" );
+            OutputStream outputStream = null;
+
+            try {
+                outputStream = new BufferedOutputStream( new FileOutputStream( temp ) );
+                DataOutputStream dataOutputStream = new DataOutputStream( outputStream );
+                writeHeader( dataOutputStream );
+                for (File columnFile : columnFiles) {
+                    InputStream inputStream = new FileInputStream( columnFile );
+                    try {
+                        IOUtil.copy( inputStream, dataOutputStream );
+                    }
+                    finally {
+                        IOUtil.close( inputStream );
+                    }
+                }
+                dataOutputStream.flush();
+            }
+            finally {
+                IOUtil.close( outputStream );
+            }
+
+            file.delete();
+            temp.renameTo( file );
+        }
+        finally {
+            abort();
+        }
+    }
+
+    /**
+     * Drops the columns written so far without touching the snapshot.
+     */
+    public void abort() {
+
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            IOUtil.close( columns[i] );
+            if ( columnFiles[i] != null ) {
+                columnFiles[i].delete();
+            }
+        }
+    }
+
+    private void writeHeader( DataOutputStream dataOutputStream ) throws IOException {
+
+        Project project = coverage == null ? null : coverage.getProject();
+
+        dataOutputStream.writeInt( CoverageSnapshot.MAGIC );
+        dataOutputStream.writeByte( CoverageSnapshot.VERSION );
+        dataOutputStream.writeLong( source.length() );
+        dataOutputStream.writeLong( source.lastModified() );
+        dataOutputStream.writeLong( CoverageSnapshot.fingerprint( source ) );
+
+        // added to the string table by startProject
+        dataOutputStream.writeInt( clover );
+        dataOutputStream.writeInt( coverage == null ? 0 : coverage.getGenerated() );
+        dataOutputStream.writeByte( project == null ? 0 : 1 );
+        dataOutputStream.writeInt( projectName );
+        dataOutputStream.writeInt( project == null ? 0 : project.getTimestamp() );
+
+        dataOutputStream.writeInt( fileCount );
+        dataOutputStream.writeInt( classCount );
+        dataOutputStream.writeInt( lineCount );
+        dataOutputStream.writeInt( stringCount );
+        dataOutputStream.writeInt( stringBytes );
+    }
+
+    private int string( String value ) throws IOException {
+
+        if ( value == null ) {
+            return -1;
+        }
+
+        Integer index = strings.get( value );
+        if ( index != null ) {
+            return index.intValue();
+        }
+
+        byte[] bytes = value.getBytes( "UTF-8" );
+        columns[STRING_OFFSETS].writeInt( stringBytes );
+        columns[STRING_BYTES].write( bytes );
+        stringBytes += bytes.length;
+
+        index = stringCount++;
+        strings.put( value, index );
+        return index.intValue();
+    }
+
+    private static int _int( Integer integer ) {
+
+        return integer == null ? CoverageSnapshot.NULL : integer.intValue();
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses the <code>cutoffDate</code> formats accepted by the plugin. Dates
+ * without a zone are local time, the same as <code>svn -r {date}</code>. A
+ * time may end with <code>Z</code> or an offset such as <code>+01:00</code>.
+ * <p>
+ * The whole value must match, so a format only <code>svn</code> understands
+ * is rejected rather than read as a prefix.
+ * <p>
+ * Several cutoffs are given as <code>label=date,label=date</code>, and the
+ * label names the reduced report of each.
+ */
+public final class CutoffDate {
+
+    private static final String[] DATE_FORMATS = new String[] { "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd'T'HH:mm", "yyyy-MM-dd HH:mm", "yyyy-MM-dd" };
+
+    // a zone only follows a time, never a bare date
+    private static final Pattern ZONE = Pattern.compile( "(.*[T ]\\d\\d:\\d\\d(?::\\d\\d)?)(Z|[+-]\\d\\d(?::?\\d\\d)?)" );
+
+    private CutoffDate() {
+
+        // do nothing
+    }
+
+    /**
+     * @return The date in milliseconds since the epoch.
+     * @throws IllegalArgumentException If the date does not match any format.
+     */
+    public static long parse( String cutoffDate ) {
+
+        String date = cutoffDate.trim();
+        TimeZone timeZone = TimeZone.getDefault();
+
+        Matcher matcher = ZONE.matcher( date );
+        if ( matcher.matches() ) {
+            date = matcher.group( 1 );
+            timeZone = timeZone( matcher.group( 2 ) );
+        }
+
+        for (String dateFormat : DATE_FORMATS) {
+            SimpleDateFormat simpleDateFormat = new SimpleDateFormat( dateFormat );
+            simpleDateFormat.setLenient( false );
+            simpleDateFormat.setTimeZone( timeZone );
+            ParsePosition parsePosition = new ParsePosition( 0 );
+            Date parsed = simpleDateFormat.parse( date, parsePosition );
+            if ( parsed != null && parsePosition.getIndex() == date.length() ) {
+                return parsed.getTime();
+            }
+        }
+        throw new IllegalArgumentException( "Unable to parse date: " + cutoffDate );
+    }
+
+    /**
+     * Splits <code>label=date[,label=date]</code>. A single date may go
+     * without a label. Any other date without one is labelled with the date
+     * itself, with the characters not allowed in a file name replaced.
+     * 
+     * @return The unparsed dates by label, in the order given, with a null
+     * label for a single unlabelled date.
+     * @throws IllegalArgumentException If an entry is blank, a label or date
+     * is empty, or a label is used twice.
+     */
+    public static Map<String, String> parseLabelled( String cutoffDates ) {
+
+        // keep trailing empty entries so "a=date," is rejected too
+        String[] entries = cutoffDates.split( ",", -1 );
+        Map<String, String> dates = new LinkedHashMap<String, String>();
+
+        for (String entry : entries) {
+
+            String date = entry.trim();
+            String label = null;
+
+            int indexOf = date.indexOf( '=' );
+            if ( indexOf != -1 ) {
+                label = date.substring( 0, indexOf ).trim();
+                date = date.substring( indexOf + 1 ).trim();
+                if ( label.length() == 0 ) {
+                    throw new IllegalArgumentException( "Missing label: " + entry );
+                }
+            }
+            else if ( entries.length > 1 ) {
+                label = date.replaceAll( "[^A-Za-z0-9._-]", "_" );
+            }
+
+            if ( date.length() == 0 ) {
+                throw new IllegalArgumentException( "Missing date: " + entry );
+            }
+            if ( dates.containsKey( label ) ) {
+                throw new IllegalArgumentException( "Duplicate label: " + label );
+            }
+            dates.put( label, date );
+        }
+
+        return dates;
+    }
+
+    private static TimeZone timeZone( String zone ) {
+
+        if ( "Z".equals( zone ) ) {
+            return TimeZone.getTimeZone( "UTC" );
+        }
+        String hours = zone.substring( 1, 3 );
+        String minutes = zone.length() == 3 ? "00" : zone.substring( zone.length() - 2 );
+        // getTimeZone falls back to GMT for an ID it does not understand
+        if ( Integer.parseInt( hours ) > 23 || Integer.parseInt( minutes ) > 59 ) {
+            throw new IllegalArgumentException( "Unable to parse zone: " + zone );
+        }
+        return TimeZone.getTimeZone( "GMT" + zone.charAt( 0 ) + hours + ":" + minutes );
+    }
+}
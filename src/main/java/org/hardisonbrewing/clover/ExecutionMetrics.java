@@ -0,0 +1,255 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Collects where the time of a run goes and writes it as JSON for build
+ * dashboards. Every method may be called from any thread.
+ * <p>
+ * Phases which run once are wall clock times. Phases which run per file are
+ * totals across the blame threads, so they may add up to more than the run.
+ */
+public final class ExecutionMetrics {
+
+    public enum Phase {
+        CUTOFF, CHANGED_PATHS, PARSE, INFO, BLAME, REDUCE, AGGREGATE, MARSHAL
+    }
+
+    /**
+     * Bucket <code>i</code> counts the blames which took less than
+     * <code>2^i</code> milliseconds, and at least half that.
+     */
+    private static final int LATENCY_BUCKETS = 32;
+
+    private final AtomicLongArray phaseNanos = new AtomicLongArray( Phase.values().length );
+    private final AtomicLongArray phaseCounts = new AtomicLongArray( Phase.values().length );
+    private final AtomicLongArray blameLatency = new AtomicLongArray( LATENCY_BUCKETS );
+    private final AtomicLong blameCacheHits = new AtomicLong();
+    private final AtomicLong filesReused = new AtomicLong();
+
+    private final long startNanos = System.nanoTime();
+    private final long startProcessCount = ProcessExecutor.getStartedCount();
+
+    private int threadCount;
+    private double utilization;
+    private long queueWaitNanos;
+    private long maxQueueWaitNanos;
+    private long submitWaitNanos;
+    private int fileCount;
+    private int unchangedCount;
+    private int failureCount;
+    private int retryCount;
+    private int retriedCount;
+    private int timeoutCount;
+    private int circuitOpenCount;
+    private List<String> failedPaths = Collections.emptyList();
+    private List<String> retriedPaths = Collections.emptyList();
+
+    public void add( Phase phase, long nanos ) {
+
+        phaseNanos.addAndGet( phase.ordinal(), nanos );
+        phaseCounts.incrementAndGet( phase.ordinal() );
+    }
+
+    /**
+     * Adds the time of a blame which was not answered by the cache.
+     */
+    public void addBlame( long nanos ) {
+
+        add( Phase.BLAME, nanos );
+
+        long millis = TimeUnit.NANOSECONDS.toMillis( nanos );
+        int bucket = 64 - Long.numberOfLeadingZeros( millis );
+        blameLatency.incrementAndGet( Math.min( bucket, LATENCY_BUCKETS - 1 ) );
+    }
+
+    public void blameCacheHit() {
+
+        blameCacheHits.incrementAndGet();
+    }
+
+    public void fileReused() {
+
+        filesReused.incrementAndGet();
+    }
+
+    public void setScheduler( BlameScheduler scheduler, int threadCount ) {
+
+        this.threadCount = threadCount;
+        utilization = scheduler.getUtilization();
+        queueWaitNanos = scheduler.getQueueWaitNanos();
+        maxQueueWaitNanos = scheduler.getMaxQueueWaitNanos();
+        submitWaitNanos = scheduler.getSubmitWaitNanos();
+        failureCount = scheduler.getFailureCount();
+        failedPaths = scheduler.getFailedNames();
+    }
+
+    public void setRetries( RetryingVcsBackend vcsBackend, CircuitBreaker circuitBreaker ) {
+
+        retryCount = vcsBackend.getRetryCount();
+        retriedCount = vcsBackend.getRetriedPaths().size();
+        retriedPaths = new ArrayList<String>( vcsBackend.getRetriedPaths() );
+        Collections.sort( retriedPaths );
+        timeoutCount = vcsBackend.getTimeoutCount();
+        circuitOpenCount = circuitBreaker.getOpenCount();
+    }
+
+    public void setFileCounts( int fileCount, int unchangedCount ) {
+
+        this.fileCount = fileCount;
+        this.unchangedCount = unchangedCount;
+    }
+
+    public void write( File file ) throws IOException {
+
+        long wallNanos = System.nanoTime() - startNanos;
+
+        StringBuilder json = new StringBuilder();
+        json.append( "{\n" );
+        json.append( "  \"wallTimeMillis\": " ).append( millis( wallNanos ) ).append( ",\n" );
+        json.append( "  \"threads\": " ).append( threadCount ).append( ",\n" );
+        json.append( "  \"utilization\": " ).append( String.format( Locale.ROOT, "%.4f", utilization ) ).append( ",\n" );
+        json.append( "  \"subprocesses\": " ).append( ProcessExecutor.getStartedCount() - startProcessCount ).append( ",\n" );
+
+        json.append( "  \"files\": {\n" );
+        json.append( "    \"total\": " ).append( fileCount ).append( ",\n" );
+        json.append( "    \"unchanged\": " ).append( unchangedCount ).append( ",\n" );
+        json.append( "    \"reused\": " ).append( filesReused.get() ).append( ",\n" );
+        json.append( "    \"blamed\": " ).append( phaseCounts.get( Phase.BLAME.ordinal() ) ).append( ",\n" );
+        json.append( "    \"blameCacheHits\": " ).append( blameCacheHits.get() ).append( ",\n" );
+        json.append( "    \"failed\": " ).append( failureCount ).append( ",\n" );
+        json.append( "    \"failedPaths\": " );
+        appendStrings( json, failedPaths );
+        json.append( "\n" );
+        json.append( "  },\n" );
+
+        json.append( "  \"phases\": {\n" );
+        Phase[] phases = Phase.values();
+        for (int i = 0; i < phases.length; i++) {
+            json.append( "    \"" ).append( phases[i].name().toLowerCase( Locale.ROOT ) ).append( "\": { " );
+            json.append( "\"millis\": " ).append( millis( phaseNanos.get( i ) ) ).append( ", " );
+            json.append( "\"count\": " ).append( phaseCounts.get( i ) ).append( " }" );
+            json.append( i < phases.length - 1 ? ",\n" : "\n" );
+        }
+        json.append( "  },\n" );
+
+        json.append( "  \"retries\": {\n" );
+        json.append( "    \"total\": " ).append( retryCount ).append( ",\n" );
+        json.append( "    \"paths\": " ).append( retriedCount ).append( ",\n" );
+        json.append( "    \"timeouts\": " ).append( timeoutCount ).append( ",\n" );
+        json.append( "    \"circuitOpened\": " ).append( circuitOpenCount ).append( ",\n" );
+        json.append( "    \"retriedPaths\": " );
+        appendStrings( json, retriedPaths );
+        json.append( "\n" );
+        json.append( "  },\n" );
+
+        json.append( "  \"queueWait\": {\n" );
+        json.append( "    \"totalMillis\": " ).append( millis( queueWaitNanos ) ).append( ",\n" );
+        json.append( "    \"maxMillis\": " ).append( millis( maxQueueWaitNanos ) ).append( ",\n" );
+        json.append( "    \"submitWaitMillis\": " ).append( millis( submitWaitNanos ) ).append( "\n" );
+        json.append( "  },\n" );
+
+        int lastBucket = LATENCY_BUCKETS - 1;
+        while (lastBucket > 0 && blameLatency.get( lastBucket ) == 0) {
+            lastBucket--;
+        }
+
+        json.append( "  \"blameLatency\": [\n" );
+        for (int i = 0; i <= lastBucket; i++) {
+            json.append( "    { \"lessThanMillis\": " ).append( 1L << i ).append( ", \"count\": " ).append( blameLatency.get( i ) ).append( " }" );
+            json.append( i < lastBucket ? ",\n" : "\n" );
+        }
+        json.append( "  ]\n" );
+        json.append( "}\n" );
+
+        OutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream( file );
+            outputStream.write( json.toString().getBytes( "UTF-8" ) );
+        }
+        finally {
+            IOUtil.close( outputStream );
+        }
+    }
+
+    private static void appendStrings( StringBuilder json, List<String> values ) {
+
+        json.append( '[' );
+        for (int i = 0; i < values.size(); i++) {
+            json.append( i == 0 ? " " : ", " );
+            appendString( json, values.get( i ) );
+        }
+        json.append( values.isEmpty() ? "]" : " ]" );
+    }
+
+    /**
+     * Appends the value as a JSON string. Windows paths are full of
+     * backslashes, and file names may hold quotes or control characters.
+     */
+    private static void appendString( StringBuilder json, String value ) {
+
+        json.append( '"' );
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt( i );
+            switch (c) {
+                case '"':
+                    json.append( "\\\"" );
+                    break;
+                case '\\':
+                    json.append( "\\\\" );
+                    break;
+                case '\n':
+                    json.append( "\\n" );
+                    break;
+                case '\r':
+                    json.append( "\\r" );
+                    break;
+                case '\t':
+                    json.append( "\\t" );
+                    break;
+                default:
+                    if ( c < 0x20 ) {
+                        json.append( String.format( Locale.ROOT, "\\u%04x", (int) c ) );
+                    }
+                    else {
+                        json.append( c );
+                    }
+                    break;
+            }
+        }
+        json.append( '"' );
+    }
+
+    private static long millis( long nanos ) {
+
+        return TimeUnit.NANOSECONDS.toMillis( nanos );
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import generated.ClassMetrics;
+import generated.Construct;
+import generated.Line;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Filters the lines of a report file against the revision each line was last
+ * changed in, totalling the file and class metrics of the lines which survive.
+ */
+public final class FileReducer {
+
+    /**
+     * Orders lines by number, then construct. Ties are equal so a stable sort
+     * keeps them in report order.
+     */
+    private static final Comparator<Line> LINE_ORDER = new Comparator<Line>() {
+
+        @Override
+        public int compare( Line line1, Line line2 ) {
+
+            int num1 = line1.getNum();
+            int num2 = line2.getNum();
+            if ( num1 != num2 ) {
+                return num1 < num2 ? -1 : 1;
+            }
+            return line1.getType().ordinal() - line2.getType().ordinal();
+        }
+    };
+
+    private FileReducer() {
+
+        // do nothing
+    }
+
+    /**
+     * Clover lists the lines of a file in order, so they are filtered in a
+     * single pass which totals the metrics as it goes. Lines found out of
+     * order are sorted and totalled again.
+     * 
+     * @return The file with only the lines changed after the cutoff revision,
+     * or null if there are none.
+     */
+    public static generated.File reduce( generated.File file, RevisionColumn revisions, long cutoffRevision ) {
+
+        List<Line> lines = file.getLine();
+        int lineCount = lines.size();
+
+        generated.File fileReduced = null;
+        List<Line> linesReduced = null;
+        MetricsSweep metricsSweep = null;
+        Line previous = null;
+        boolean sorted = true;
+
+        for (int i = 0; i < lineCount; i++) {
+
+            Line line = lines.get( i );
+
+            int lineNumber = line.getNum();
+            if ( cutoffRevision >= revisions.get( lineNumber ) ) {
+                continue;
+            }
+
+            if ( fileReduced == null ) {
+                fileReduced = new generated.File();
+                fileReduced.setName( file.getName() );
+                fileReduced.setPath( file.getPath() );
+                linesReduced = fileReduced.getLine();
+                // no more than the lines left can survive
+                if ( linesReduced instanceof ArrayList ) {
+                    ( (ArrayList<Line>) linesReduced ).ensureCapacity( lineCount - i );
+                }
+                metricsSweep = new MetricsSweep( file );
+            }
+            else if ( sorted && LINE_ORDER.compare( previous, line ) > 0 ) {
+                sorted = false;
+            }
+
+            linesReduced.add( line );
+            previous = line;
+
+            if ( sorted ) {
+                metricsSweep.add( line );
+            }
+        }
+
+        if ( fileReduced == null ) {
+            return null;
+        }
+
+        if ( linesReduced instanceof ArrayList ) {
+            ( (ArrayList<Line>) linesReduced ).trimToSize();
+        }
+
+        if ( !sorted ) {
+            Collections.sort( linesReduced, LINE_ORDER );
+            metricsSweep = new MetricsSweep( file );
+            for (Line line : linesReduced) {
+                metricsSweep.add( line );
+            }
+        }
+
+        metricsSweep.finish( fileReduced );
+
+        return fileReduced;
+    }
+
+    /**
+     * @return The first line of each class. A class without methods starts
+     * where the next one does, so it is passed over, and classes past the
+     * last method never start.
+     */
+    private static int[] classStarts( generated.File file, List<generated.Class> classes ) {
+
+        int[] classStarts = new int[classes.size()];
+        if ( classStarts.length == 0 ) {
+            return classStarts;
+        }
+
+        int methodCount = 0;
+        for (Line line : file.getLine()) {
+            if ( line.getType() == Construct.METHOD ) {
+                methodCount++;
+            }
+        }
+
+        int[] methodLines = new int[methodCount];
+        methodCount = 0;
+        for (Line line : file.getLine()) {
+            if ( line.getType() == Construct.METHOD ) {
+                methodLines[methodCount++] = line.getNum();
+            }
+        }
+        Arrays.sort( methodLines );
+
+        int method = 0;
+        for (int i = 0; i < classStarts.length; i++) {
+            classStarts[i] = method < methodLines.length ? methodLines[method] : Integer.MAX_VALUE;
+            // the method count is the only class metric read, every other one
+            // is recalculated from the lines, so a CoverageSnapshot keeps no more
+            ClassMetrics classMetrics = classes.get( i ).getMetrics();
+            method += classMetrics == null ? 0 : classMetrics.getMethods();
+        }
+
+        // the first class also takes anything before its first method
+        classStarts[0] = Integer.MIN_VALUE;
+
+        return classStarts;
+    }
+
+    /**
+     * Totals the metrics of the reduced lines, given in order. The report only
+     * says how many methods each class has, so in the order the classes are
+     * listed each one is taken to start at its first method line and run up
+     * to the next class. Lines before the first method belong to the first
+     * class.
+     */
+    private static final class MetricsSweep {
+
+        private final List<generated.Class> classes;
+        private final int[] classStarts;
+        private final MetricsAccumulator[] classAccumulators;
+        private final MetricsAccumulator fileAccumulator = new MetricsAccumulator();
+        private int classIndex;
+
+        public MetricsSweep(generated.File file) {
+
+            classes = file.getClazz();
+            classStarts = classStarts( file, classes );
+            classAccumulators = new MetricsAccumulator[classStarts.length];
+        }
+
+        public void add( Line line ) {
+
+            if ( classStarts.length == 0 ) {
+                fileAccumulator.addLine( line );
+                return;
+            }
+
+            int lineNumber = line.getNum();
+            while (classIndex + 1 < classStarts.length && classStarts[classIndex + 1] <= lineNumber) {
+                classIndex++;
+            }
+
+            if ( classAccumulators[classIndex] == null ) {
+                classAccumulators[classIndex] = new MetricsAccumulator();
+            }
+            classAccumulators[classIndex].addLine( line );
+        }
+
+        public void finish( generated.File fileReduced ) {
+
+            List<generated.Class> classesReduced = fileReduced.getClazz();
+
+            for (int i = 0; i < classAccumulators.length; i++) {
+
+                MetricsAccumulator classAccumulator = classAccumulators[i];
+                if ( classAccumulator == null ) {
+                    continue;
+                }
+
+                generated.Class _class = new generated.Class();
+                _class.setName( classes.get( i ).getName() );
+                _class.setMetrics( classAccumulator.toClassMetrics() );
+                classesReduced.add( _class );
+
+                fileAccumulator.addClass( classAccumulator );
+            }
+
+            fileReduced.setMetrics( fileAccumulator.toFileMetrics() );
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.plexus.util.cli.CommandLineUtils;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+/**
+ * Uses the <code>git</code> command line client. Git has no revision numbers,
+ * so commit timestamps in seconds take their place: the cutoff revision is the
+ * cutoff date itself, and each line is blamed with the committer time of the
+ * commit which last changed it.
+ * <p>
+ * The last change of every file comes from a single <code>git log</code> of
+ * the working copy, run by {@link #findChangedPaths(String, long)} or by the
+ * first {@link #info(String)}, so no process is started per file for info.
+ * Only the first parent of each merge is followed, so a file brought in by a
+ * merge counts as changed when the merge was committed.
+ */
+public final class GitBackend implements VcsBackend {
+
+    private final File workingCopy;
+    private final long timeout;
+    private final String topLevel;
+    private final CommitDateResolver commitDateResolver;
+
+    /**
+     * The committer time of the last commit to change each file, by canonical
+     * path. Files missing from it were last changed before the logged range.
+     */
+    private volatile Map<String, Long> lastChangedDates;
+
+    /**
+     * @param timeout Milliseconds each command may run before it is killed,
+     * or 0 for no limit. The long running <code>cat-file</code> process used
+     * to resolve commit dates has no limit.
+     */
+    public GitBackend(File workingCopy, long timeout) throws Exception {
+
+        this.workingCopy = workingCopy;
+        this.timeout = timeout;
+
+        List<String> cmd = command( "rev-parse" );
+        cmd.add( "--show-toplevel" );
+        topLevel = new File( execute( cmd ).trim() ).getCanonicalPath();
+
+        commitDateResolver = new CommitDateResolver( workingCopy );
+    }
+
+    /**
+     * A file without a commit in the logged range is reported as last changed
+     * at 0, older than any cutoff.
+     */
+    @Override
+    public VcsInfo info( String path ) throws Exception {
+
+        Long date = lastChangedDates().get( new File( path ).getCanonicalPath() );
+        long lastChanged = date == null ? 0 : date;
+        return new VcsInfo( lastChanged, lastChanged, repositoryPath( path ), topLevel );
+    }
+
+    private Map<String, Long> lastChangedDates() throws Exception {
+
+        Map<String, Long> _lastChangedDates = lastChangedDates;
+        if ( _lastChangedDates == null ) {
+            synchronized (this) {
+                _lastChangedDates = lastChangedDates;
+                if ( _lastChangedDates == null ) {
+                    // no cutoff known yet, log the whole history once
+                    _lastChangedDates = log( null );
+                    lastChangedDates = _lastChangedDates;
+                }
+            }
+        }
+        return _lastChangedDates;
+    }
+
+    /**
+     * @param since The committer time to log from, or null for all history.
+     * @return The last committer time of each file changed in the range.
+     */
+    private Map<String, Long> log( Long since ) throws Exception {
+
+        List<String> cmd = command( "log" );
+        cmd.add( "--format=%x01%ct" );
+        cmd.add( "--name-only" );
+        cmd.add( "-z" );
+        // a merge lists what it brought in against the branch it was made on,
+        // and a rename lists the new name whatever diff.renames is set to
+        cmd.add( "-m" );
+        cmd.add( "--first-parent" );
+        cmd.add( "--no-renames" );
+        if ( since != null ) {
+            cmd.add( "--since=@" + since );
+        }
+        cmd.add( "HEAD" );
+
+        Map<String, Long> dates = new HashMap<String, Long>();
+        ProcessExecutor.executeBytes( cmd, workingCopy, new LogOutputParser( dates ), timeout );
+        return dates;
+    }
+
+    private String repositoryPath( String path ) throws Exception {
+
+        String canonicalPath = new File( path ).getCanonicalPath();
+        if ( canonicalPath.startsWith( topLevel ) ) {
+            canonicalPath = canonicalPath.substring( topLevel.length() );
+        }
+        return canonicalPath.replace( File.separatorChar, '/' );
+    }
+
+    @Override
+    public void blame( String path, RevisionColumn revisions ) throws Exception {
+
+        List<String> cmd = command( "blame" );
+        cmd.add( "--incremental" );
+        cmd.add( "--" );
+        cmd.add( path );
+
+        revisions.clear();
+        StreamConsumer streamConsumer = new GitBlameStreamConsumer( revisions, commitDateResolver );
+        execute( cmd, streamConsumer );
+    }
+
+    @Override
+    public long findCutoffRevision( String workingCopy, String cutoffDate ) throws Exception {
+
+        return CutoffDate.parse( cutoffDate ) / 1000;
+    }
+
+    @Override
+    public Set<String> findChangedPaths( String workingCopy, long cutoffRevision ) throws Exception {
+
+        Map<String, Long> dates = log( cutoffRevision );
+        // also answers info for every file which can still have lines past the cutoff
+        lastChangedDates = dates;
+        return new HashSet<String>( dates.keySet() );
+    }
+
+    @Override
+    public Set<String> findModifiedPaths( String workingCopy ) throws Exception {
+
+        // staged and unstaged changes to tracked files
+        List<String> cmd = command( "diff" );
+        cmd.add( "--name-only" );
+        cmd.add( "-z" );
+        cmd.add( "HEAD" );
+
+        Set<String> paths = new HashSet<String>();
+        execute( cmd, new NameStreamConsumer( paths ) );
+        return paths;
+    }
+
+    @Override
+    public void close() {
+
+        commitDateResolver.close();
+    }
+
+    private List<String> command( String subcommand ) {
+
+        List<String> cmd = new LinkedList<String>();
+        cmd.add( "git" );
+        cmd.add( subcommand );
+        return cmd;
+    }
+
+    private String execute( List<String> cmd ) throws Exception {
+
+        CommandLineUtils.StringStreamConsumer streamConsumer = new CommandLineUtils.StringStreamConsumer();
+        execute( cmd, streamConsumer );
+        return streamConsumer.getOutput();
+    }
+
+    private void execute( List<String> cmd, StreamConsumer streamConsumer ) throws Exception {
+
+        ProcessExecutor.execute( cmd, workingCopy, streamConsumer, timeout );
+    }
+
+    /**
+     * Collects the file names listed with <code>-z</code>, relative to the top
+     * level directory, as canonical local paths.
+     */
+    private final class NameStreamConsumer implements StreamConsumer {
+
+        private final Set<String> paths;
+
+        public NameStreamConsumer(Set<String> paths) {
+
+            this.paths = paths;
+        }
+
+        @Override
+        public void consumeLine( String line ) {
+
+            // -z separates the names with NUL rather than newlines
+            for (String name : line.split( "\0" )) {
+                if ( name.length() > 0 ) {
+                    paths.add( topLevel + File.separator + name.replace( '/', File.separatorChar ) );
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads <code>git log --format=%x01%ct --name-only -z</code> output. Every
+     * field ends with NUL: a commit starts with <code>\1</code> and its
+     * committer time, and is followed by the names it changed, the first of
+     * which starts with a newline.
+     */
+    private final class LogOutputParser implements ProcessExecutor.OutputParser {
+
+        private final Map<String, Long> dates;
+
+        public LogOutputParser(Map<String, Long> dates) {
+
+            this.dates = dates;
+        }
+
+        @Override
+        public void parse( InputStream inputStream ) throws IOException {
+
+            ByteArrayOutputStream field = new ByteArrayOutputStream( 256 );
+            long date = -1;
+
+            int b;
+            while (( b = inputStream.read() ) != -1) {
+
+                if ( b != 0 ) {
+                    field.write( b );
+                    continue;
+                }
+
+                String value = field.toString( "UTF-8" );
+                field.reset();
+
+                if ( value.length() > 0 && value.charAt( 0 ) == '\n' ) {
+                    value = value.substring( 1 );
+                }
+
+                if ( value.length() == 0 ) {
+                    continue;
+                }
+
+                if ( value.charAt( 0 ) == '\1' ) {
+                    date = Long.parseLong( value.substring( 1 ).trim() );
+                    continue;
+                }
+
+                String path = topLevel + File.separator + value.replace( '/', File.separatorChar );
+                Long previous = dates.get( path );
+                if ( previous == null || previous < date ) {
+                    dates.put( path, date );
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+/**
+ * Parses <code>git blame --incremental</code> output into a revision column of
+ * commit timestamps. Each hunk starts with
+ * <code>&lt;sha&gt; &lt;source line&gt; &lt;result line&gt; &lt;lines&gt;</code>,
+ * followed by the commit headers the first time that commit is seen, and ends
+ * with a <code>filename</code> line.
+ */
+public class GitBlameStreamConsumer implements StreamConsumer {
+
+    private static final String COMMITTER_TIME = "committer-time ";
+    private static final String FILENAME = "filename ";
+
+    /**
+     * Lines which are not committed yet are newer than any cutoff.
+     */
+    private static final String NOT_COMMITTED = "0000000000000000000000000000000000000000";
+
+    private final RevisionColumn revisions;
+    private final CommitDateResolver commitDateResolver;
+    private final Map<String, Long> dates = new HashMap<String, Long>();
+
+    private String sha;
+    private int resultLine;
+    private int lineCount;
+
+    public GitBlameStreamConsumer(RevisionColumn revisions, CommitDateResolver commitDateResolver) {
+
+        this.revisions = revisions;
+        this.commitDateResolver = commitDateResolver;
+    }
+
+    @Override
+    public void consumeLine( String line ) {
+
+        if ( sha == null ) {
+            startHunk( line );
+        }
+        else if ( line.startsWith( COMMITTER_TIME ) ) {
+            long date = Long.parseLong( line.substring( COMMITTER_TIME.length() ).trim() );
+            dates.put( sha, date );
+            commitDateResolver.put( sha, date );
+        }
+        else if ( line.startsWith( FILENAME ) ) {
+            endHunk();
+        }
+    }
+
+    private void startHunk( String line ) {
+
+        String[] tokens = line.trim().split( " " );
+        if ( tokens.length != 4 ) {
+            throw new IllegalStateException( "Unable to parse git blame line: [" + line + "]" );
+        }
+
+        sha = tokens[0];
+        resultLine = Integer.parseInt( tokens[2] );
+        lineCount = Integer.parseInt( tokens[3] );
+    }
+
+    private void endHunk() {
+
+        long date;
+
+        if ( NOT_COMMITTED.equals( sha ) ) {
+            date = RevisionColumn.LOCAL_MODIFICATION;
+        }
+        else {
+            Long _date = dates.get( sha );
+            if ( _date != null ) {
+                date = _date;
+            }
+            else {
+                try {
+                    date = commitDateResolver.get( sha );
+                }
+                catch (IOException e) {
+                    throw new IllegalStateException( e );
+                }
+            }
+        }
+
+        for (int i = 0; i < lineCount; i++) {
+            revisions.set( resultLine + i, date );
+        }
+
+        sha = null;
+    }
+}
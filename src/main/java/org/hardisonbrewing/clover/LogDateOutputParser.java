@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.hardisonbrewing.jaxb.JAXB;
+
+/**
+ * Collects the revision and date of each entry from
+ * <code>svn log --xml --quiet</code> output into a {@link RevisionIndex}.
+ */
+public final class LogDateOutputParser implements ProcessExecutor.OutputParser {
+
+    private static final String LOGENTRY = "logentry";
+    private static final String DATE = "date";
+
+    private final RevisionIndex revisionIndex;
+    private final SimpleDateFormat dateFormat;
+
+    private long firstRevision = -1;
+
+    public LogDateOutputParser(RevisionIndex revisionIndex) {
+
+        this.revisionIndex = revisionIndex;
+
+        dateFormat = new SimpleDateFormat( "yyyy-MM-dd'T'HH:mm:ss" );
+        dateFormat.setLenient( false );
+        dateFormat.setTimeZone( TimeZone.getTimeZone( "UTC" ) );
+    }
+
+    @Override
+    public void parse( InputStream inputStream ) throws IOException {
+
+        try {
+            XMLStreamReader reader = JAXB.createXMLStreamReader( inputStream );
+            try {
+                parse( reader );
+            }
+            finally {
+                reader.close();
+            }
+        }
+        catch (XMLStreamException e) {
+            throw new IOException( "Unable to parse svn log output", e );
+        }
+    }
+
+    private void parse( XMLStreamReader reader ) throws XMLStreamException, IOException {
+
+        long revision = -1;
+
+        while (reader.hasNext()) {
+
+            if ( reader.next() != XMLStreamConstants.START_ELEMENT ) {
+                continue;
+            }
+
+            String localName = reader.getLocalName();
+            if ( LOGENTRY.equals( localName ) ) {
+                revision = Long.parseLong( reader.getAttributeValue( null, "revision" ) );
+                if ( firstRevision == -1 ) {
+                    firstRevision = revision;
+                }
+            }
+            else if ( DATE.equals( localName ) && revision != -1 ) {
+                revisionIndex.add( parseDate( reader.getElementText() ), revision );
+                revision = -1;
+            }
+        }
+    }
+
+    /**
+     * @param date The date as <code>2013-01-01T12:00:00.000000Z</code>, the
+     * fraction is dropped.
+     */
+    private long parseDate( String date ) throws IOException {
+
+        ParsePosition parsePosition = new ParsePosition( 0 );
+        Date parsed = dateFormat.parse( date, parsePosition );
+        if ( parsed == null || !date.endsWith( "Z" ) ) {
+            throw new IOException( "Unable to parse date: " + date );
+        }
+        return parsed.getTime();
+    }
+
+    /**
+     * @return The first revision listed, or -1 if there were none.
+     */
+    public long getFirstRevision() {
+
+        return firstRevision;
+    }
+}
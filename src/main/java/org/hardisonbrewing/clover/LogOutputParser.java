@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.hardisonbrewing.jaxb.JAXB;
+
+/**
+ * Collects the changed paths from <code>svn log --xml --verbose</code>
+ * output, one for each <code>&lt;path&gt;</code> element. Directories
+ * added by a copy or a move are collected as a {@link ChangedPaths#tree(String)}.
+ */
+public final class LogOutputParser implements ProcessExecutor.OutputParser {
+
+    private static final String PATH = "path";
+    private static final String ACTION = "action";
+    private static final String KIND = "kind";
+    private static final String COPYFROM_PATH = "copyfrom-path";
+
+    private final Set<String> paths;
+
+    /**
+     * @param paths Receives the repository path of each changed file.
+     */
+    public LogOutputParser(Set<String> paths) {
+
+        this.paths = paths;
+    }
+
+    @Override
+    public void parse( InputStream inputStream ) throws IOException {
+
+        try {
+            XMLStreamReader reader = JAXB.createXMLStreamReader( inputStream );
+            try {
+                parse( reader );
+            }
+            finally {
+                reader.close();
+            }
+        }
+        catch (XMLStreamException e) {
+            throw new IOException( "Unable to parse svn log output", e );
+        }
+    }
+
+    private void parse( XMLStreamReader reader ) throws XMLStreamException {
+
+        while (reader.hasNext()) {
+            if ( reader.next() == XMLStreamConstants.START_ELEMENT && PATH.equals( reader.getLocalName() ) ) {
+                String action = reader.getAttributeValue( null, ACTION );
+                String kind = reader.getAttributeValue( null, KIND );
+                String copyFromPath = reader.getAttributeValue( null, COPYFROM_PATH );
+                String path = reader.getElementText();
+                paths.add( ChangedPaths.isTreeChange( action, kind, copyFromPath ) ? ChangedPaths.tree( path ) : path );
+            }
+        }
+    }
+}
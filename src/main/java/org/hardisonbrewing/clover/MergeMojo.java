@@ -0,0 +1,340 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import generated.Coverage;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Combines the partial reports written by <code>reduct</code> with the
+ * <code>shard</code> option into a single reduced report. Files are copied
+ * as they are, and the package and project metrics are added up again. The
+ * partial reports are read side by side, so the merge holds a single package
+ * rather than every file in memory.
+ * 
+ * @goal merge
+ * @requiresProject false
+ */
+public final class MergeMojo extends AbstractMojo {
+
+    private static final String PARTIALS = "partials";
+    private static final String OUTPUT = "output";
+
+    /**
+     * One or more comma separated partial reports, each of which may be a
+     * pattern such as <code>target/site/clover/clover-reduced-shard*.xml</code>.
+     * 
+     * @parameter property="partials" expression="${partials}"
+     */
+    private String partialsPath;
+
+    /**
+     * @parameter property="output" expression="${output}"
+     */
+    private String outputPath;
+
+    /**
+     * @parameter property="formatOutput" default-value="true" expression="${formatOutput}"
+     */
+    private boolean formatOutput;
+
+    @Override
+    public final void execute() throws MojoExecutionException, MojoFailureException {
+
+        long start = System.currentTimeMillis();
+
+        try {
+            _execute();
+        }
+        catch (Exception e) {
+            throw new IllegalStateException( e );
+        }
+        finally {
+            long end = System.currentTimeMillis();
+            getLog().info( "Executed in " + ( ( end - start ) / 1000.0 ) + "s" );
+        }
+    }
+
+    private void _execute() throws Exception {
+
+        if ( partialsPath == null || partialsPath.trim().length() == 0 ) {
+            getLog().error( "Required property `" + PARTIALS + "` missing. Use -D" + PARTIALS + "=<path or pattern>,<path or pattern>" );
+            throw new IllegalArgumentException();
+        }
+
+        if ( outputPath == null || outputPath.length() == 0 ) {
+            getLog().error( "Required property `" + OUTPUT + "` missing. Use -D" + OUTPUT + "=<path to xml>" );
+            throw new IllegalArgumentException();
+        }
+
+        File output = new File( outputPath );
+        String outputCanonicalPath = output.getCanonicalPath();
+
+        List<Partial> partials = new ArrayList<Partial>();
+
+        try {
+
+            Coverage coverage = null;
+
+            for (File file : ReportFiles.find( partialsPath, null )) {
+
+                // a pattern may also match the output of an earlier merge
+                if ( file.getCanonicalPath().equals( outputCanonicalPath ) ) {
+                    continue;
+                }
+
+                getLog().info( "Merging partial report: " + file.getPath() );
+                Partial partial = new Partial( CoverageCursor.readPackageNames( file ), CoverageCursor.open( file ) );
+                partials.add( partial );
+
+                Coverage _coverage = partial.cursor.getCoverage();
+                if ( coverage == null && _coverage != null && _coverage.getProject() != null ) {
+                    coverage = _coverage;
+                }
+            }
+
+            if ( coverage == null ) {
+                getLog().info( "No project found." );
+                return;
+            }
+
+            close( partials, false );
+
+            if ( partials.isEmpty() ) {
+                getLog().info( "No files found." );
+                output.delete();
+                return;
+            }
+
+            getLog().info( "Saving merged coverage report to: " + output.getPath() );
+            merge( output, coverage, partials );
+        }
+        finally {
+            close( partials, true );
+        }
+    }
+
+    /**
+     * Writes the files of every partial report a package at a time. The
+     * partial reports list their packages in the order of the original
+     * report, which is pieced back together from the package names read up
+     * front: a package is only written once no partial report lists it
+     * further on, so every package is written exactly once. Within a package
+     * the lowest path is taken from the heads of the partial reports. When
+     * the original report is sorted, as Clover writes it, the merged report
+     * matches an unsharded reduction, and only the package being written is
+     * held in memory.
+     */
+    private void merge( File output, Coverage coverage, List<Partial> partials ) throws Exception {
+
+        ReducedReportWriter reportWriter = new ReducedReportWriter( output, formatOutput );
+        MetricsAccumulator projectAccumulator = new MetricsAccumulator();
+
+        try {
+
+            reportWriter.open( coverage );
+
+            while (!partials.isEmpty()) {
+
+                String packageName = nextPackageName( partials );
+
+                MetricsAccumulator packageAccumulator = new MetricsAccumulator();
+
+                generated.Package _package = new generated.Package();
+                _package.setName( packageName );
+
+                List<generated.File> files = _package.getFile();
+                String previousPath = null;
+
+                Partial partial;
+                while (( partial = nextFile( partials, packageName ) ) != null) {
+
+                    CoverageCursor cursor = partial.cursor;
+
+                    // shards do not overlap, but patterns may match a report twice
+                    if ( cursor.getPath().equals( previousPath ) ) {
+                        getLog().warn( "Skipping file listed by more than one partial report: " + cursor.getPath() );
+                        cursor.skipFile();
+                    }
+                    else {
+                        previousPath = cursor.getPath();
+                        generated.File file = cursor.readFile();
+                        packageAccumulator.addFile( file.getMetrics() );
+                        files.add( file );
+                    }
+
+                    if ( !cursor.hasFile() || !equals( cursor.getPackageName(), packageName ) ) {
+                        partial.position++;
+                    }
+                }
+
+                close( partials, false );
+
+                _package.setMetrics( packageAccumulator.toPackageMetrics() );
+                projectAccumulator.addPackage( packageAccumulator );
+
+                reportWriter.writePackage( _package );
+            }
+
+            reportWriter.close( projectAccumulator.toProjectMetrics() );
+        }
+        catch (Exception e) {
+            reportWriter.abort();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The lowest package at the head of a partial report which no
+     * partial report lists further on.
+     */
+    private String nextPackageName( List<Partial> partials ) {
+
+        String packageName = null;
+        boolean found = false;
+
+        for (Partial partial : partials) {
+            String _packageName = partial.packageName();
+            if ( ( !found || compare( _packageName, packageName ) < 0 ) && !listedLater( partials, _packageName ) ) {
+                packageName = _packageName;
+                found = true;
+            }
+        }
+
+        if ( found ) {
+            return packageName;
+        }
+
+        // only if the original report listed a package more than once
+        packageName = partials.get( 0 ).packageName();
+        for (Partial partial : partials) {
+            if ( compare( partial.packageName(), packageName ) < 0 ) {
+                packageName = partial.packageName();
+            }
+        }
+        getLog().warn( "Partial reports list packages in different orders, package written more than once: " + packageName );
+        return packageName;
+    }
+
+    private static boolean listedLater( List<Partial> partials, String packageName ) {
+
+        for (Partial partial : partials) {
+            Integer lastPosition = partial.lastPositions.get( packageName );
+            if ( lastPosition != null && lastPosition.intValue() > partial.position ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The partial report on the lowest path in the package, or null
+     * once no partial report has any more files in it.
+     */
+    private static Partial nextFile( List<Partial> partials, String packageName ) {
+
+        Partial next = null;
+        for (Partial partial : partials) {
+            CoverageCursor cursor = partial.cursor;
+            if ( !cursor.hasFile() || !equals( cursor.getPackageName(), packageName ) ) {
+                continue;
+            }
+            if ( next == null || cursor.getPath().compareTo( next.cursor.getPath() ) < 0 ) {
+                next = partial;
+            }
+        }
+        return next;
+    }
+
+    private static boolean equals( String value1, String value2 ) {
+
+        return compare( value1, value2 ) == 0;
+    }
+
+    private static int compare( String value1, String value2 ) {
+
+        if ( value1 == null ) {
+            return value2 == null ? 0 : -1;
+        }
+        return value2 == null ? 1 : value1.compareTo( value2 );
+    }
+
+    /**
+     * @param all False to close only the partial reports which have no files
+     * left.
+     */
+    private static void close( List<Partial> partials, boolean all ) {
+
+        for (Iterator<Partial> iterator = partials.iterator(); iterator.hasNext();) {
+            Partial partial = iterator.next();
+            if ( all || !partial.cursor.hasFile() ) {
+                partial.cursor.close();
+                iterator.remove();
+            }
+        }
+    }
+
+    public void setPartials( String partialsPath ) {
+
+        this.partialsPath = partialsPath;
+    }
+
+    public void setOutput( String outputPath ) {
+
+        this.outputPath = outputPath;
+    }
+
+    /**
+     * A partial report being merged, with the packages it lists in order.
+     */
+    private static final class Partial {
+
+        private final List<String> packageNames;
+        private final Map<String, Integer> lastPositions = new HashMap<String, Integer>();
+        private final CoverageCursor cursor;
+
+        /**
+         * The index of the package the cursor is in.
+         */
+        private int position;
+
+        public Partial(List<String> packageNames, CoverageCursor cursor) {
+
+            this.packageNames = packageNames;
+            this.cursor = cursor;
+
+            for (int i = 0; i < packageNames.size(); i++) {
+                lastPositions.put( packageNames.get( i ), i );
+            }
+        }
+
+        private String packageName() {
+
+            return packageNames.get( position );
+        }
+    }
+}
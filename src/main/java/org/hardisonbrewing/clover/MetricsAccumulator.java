@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import generated.ClassMetrics;
+import generated.FileMetrics;
+import generated.Line;
+import generated.PackageMetrics;
+import generated.ProjectMetrics;
+
+/**
+ * Sums metrics in primitive counters rather than through the boxed getters
+ * and setters of the JAXB metrics beans, which are only written once the
+ * totals are known. The same accumulator serves every level: lines add up to
+ * classes, classes to files, files to packages and packages to the project.
+ */
+public final class MetricsAccumulator {
+
+    private int packages;
+    private int files;
+    private int classes;
+    private int loc;
+    private int complexity;
+
+    private int statements;
+    private int conditionals;
+    private int methods;
+    private int elements;
+
+    private int coveredStatements;
+    private int coveredConditionals;
+    private int coveredMethods;
+    private int coveredElements;
+
+    /**
+     * Adds a single report line. Statements also count as lines of code.
+     */
+    public void addLine( Line line ) {
+
+        switch (line.getType()) {
+            case STMT: {
+                int covered = Math.min( 1, _int( line.getCount() ) );
+                loc++;
+                statements++;
+                coveredStatements += covered;
+                elements++;
+                coveredElements += covered;
+                break;
+            }
+            case COND: {
+                int covered = Math.min( 1, _int( line.getTruecount() ) ) + Math.min( 1, _int( line.getFalsecount() ) );
+                conditionals += 2;
+                coveredConditionals += covered;
+                elements += 2;
+                coveredElements += covered;
+                break;
+            }
+            case METHOD: {
+                int covered = Math.min( 1, _int( line.getCount() ) );
+                complexity += _int( line.getComplexity() );
+                methods++;
+                coveredMethods += covered;
+                elements++;
+                coveredElements += covered;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Adds the totals of a class, counting it as one more class.
+     */
+    public void addClass( MetricsAccumulator _class ) {
+
+        add( _class );
+        classes++;
+    }
+
+    public void addFile( FileMetrics fileMetrics ) {
+
+        files++;
+        classes += _int( fileMetrics.getClasses() );
+        loc += _int( fileMetrics.getLoc() );
+        add( (ClassMetrics) fileMetrics );
+    }
+
+    private void add( ClassMetrics classMetrics ) {
+
+        complexity += classMetrics.getComplexity();
+        statements += classMetrics.getStatements();
+        conditionals += classMetrics.getConditionals();
+        methods += classMetrics.getMethods();
+        elements += classMetrics.getElements();
+
+        coveredStatements += classMetrics.getCoveredstatements();
+        coveredConditionals += classMetrics.getCoveredconditionals();
+        coveredMethods += classMetrics.getCoveredmethods();
+        coveredElements += classMetrics.getCoveredelements();
+    }
+
+    /**
+     * Adds the totals of a package, counting it as one more package.
+     */
+    public void addPackage( MetricsAccumulator _package ) {
+
+        add( _package );
+        packages++;
+    }
+
+    public void add( MetricsAccumulator metrics ) {
+
+        packages += metrics.packages;
+        files += metrics.files;
+        classes += metrics.classes;
+        loc += metrics.loc;
+        complexity += metrics.complexity;
+
+        statements += metrics.statements;
+        conditionals += metrics.conditionals;
+        methods += metrics.methods;
+        elements += metrics.elements;
+
+        coveredStatements += metrics.coveredStatements;
+        coveredConditionals += metrics.coveredConditionals;
+        coveredMethods += metrics.coveredMethods;
+        coveredElements += metrics.coveredElements;
+    }
+
+    public ClassMetrics toClassMetrics() {
+
+        ClassMetrics classMetrics = new ClassMetrics();
+        copyTo( classMetrics );
+        return classMetrics;
+    }
+
+    public FileMetrics toFileMetrics() {
+
+        FileMetrics fileMetrics = new FileMetrics();
+        copyTo( fileMetrics );
+        return fileMetrics;
+    }
+
+    public PackageMetrics toPackageMetrics() {
+
+        PackageMetrics packageMetrics = new PackageMetrics();
+        packageMetrics.setFiles( files );
+        copyTo( packageMetrics );
+        return packageMetrics;
+    }
+
+    public ProjectMetrics toProjectMetrics() {
+
+        ProjectMetrics projectMetrics = new ProjectMetrics();
+        projectMetrics.setPackages( packages );
+        projectMetrics.setFiles( files );
+        copyTo( projectMetrics );
+        return projectMetrics;
+    }
+
+    private void copyTo( FileMetrics fileMetrics ) {
+
+        fileMetrics.setClasses( classes );
+        fileMetrics.setLoc( loc );
+        copyTo( (ClassMetrics) fileMetrics );
+    }
+
+    private void copyTo( ClassMetrics classMetrics ) {
+
+        classMetrics.setComplexity( complexity );
+
+        classMetrics.setStatements( statements );
+        classMetrics.setConditionals( conditionals );
+        classMetrics.setMethods( methods );
+        classMetrics.setElements( elements );
+
+        classMetrics.setCoveredstatements( coveredStatements );
+        classMetrics.setCoveredconditionals( coveredConditionals );
+        classMetrics.setCoveredmethods( coveredMethods );
+        classMetrics.setCoveredelements( coveredElements );
+    }
+
+    private static int _int( Integer integer ) {
+
+        return integer == null ? 0 : integer.intValue();
+    }
+}
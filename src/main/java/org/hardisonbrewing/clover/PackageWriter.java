@@ -0,0 +1,228 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import generated.ProjectMetrics;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands each package to the report writer once its last file is reduced.
+ * Writing happens on a single background thread so that the output I/O
+ * overlaps with the blame threads.
+ * <p>
+ * Packages finish in whatever order their files are blamed, but are written
+ * in the order the report lists them, with their files in report order too.
+ * A package finished ahead of an earlier one waits on the writer thread until
+ * the earlier one has been written or dropped, so every partial report of a
+ * sharded reduction follows the order of the original report.
+ * <p>
+ * Whichever thread finishes a package totals its metrics and adds them to
+ * its own project accumulator, so no lock is shared between the blame
+ * threads. The accumulators are merged once at the end.
+ */
+public final class PackageWriter {
+
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private final ReducedReportWriter reportWriter;
+    private final ExecutionMetrics executionMetrics;
+
+    private final Queue<MetricsAccumulator> projectAccumulators = new ConcurrentLinkedQueue<MetricsAccumulator>();
+    private final ThreadLocal<MetricsAccumulator> projectAccumulator = new ThreadLocal<MetricsAccumulator>() {
+
+        @Override
+        protected MetricsAccumulator initialValue() {
+
+            MetricsAccumulator metricsAccumulator = new MetricsAccumulator();
+            projectAccumulators.add( metricsAccumulator );
+            return metricsAccumulator;
+        }
+    };
+
+    /**
+     * The package being parsed and its index. Only used by the parser thread.
+     */
+    private PackageReduction openPackage;
+    private int packageCount;
+
+    /**
+     * Finished packages waiting for an earlier one, by index, null for a
+     * package left empty. Only used by the writer thread.
+     */
+    private final Map<Integer, generated.Package> finished = new HashMap<Integer, generated.Package>();
+    private int nextIndex;
+
+    private volatile Exception exception;
+
+    public PackageWriter(ReducedReportWriter reportWriter, ExecutionMetrics executionMetrics) {
+
+        this.reportWriter = reportWriter;
+        this.executionMetrics = executionMetrics;
+    }
+
+    /**
+     * Called by the parser for every file it hands to the blame threads.
+     */
+    public PackageReduction fileQueued( String packageName ) {
+
+        if ( openPackage == null ) {
+            openPackage = new PackageReduction( packageName, packageCount++ );
+        }
+        openPackage.pending.incrementAndGet();
+        return openPackage;
+    }
+
+    /**
+     * Called by the parser at the end tag of every package.
+     */
+    public void packageParsed( String packageName ) {
+
+        if ( openPackage != null ) {
+            PackageReduction packageReduction = openPackage;
+            openPackage = null;
+            release( packageReduction );
+        }
+    }
+
+    /**
+     * @param order The position of the file in the report, which orders the
+     * files of the package.
+     * @param fileReduced The reduced file, or null if nothing is left of it.
+     */
+    public void fileReduced( PackageReduction packageReduction, int order, generated.File fileReduced ) {
+
+        if ( fileReduced != null ) {
+            packageReduction.filesReduced.put( order, fileReduced );
+        }
+        release( packageReduction );
+    }
+
+    private void release( PackageReduction packageReduction ) {
+
+        if ( packageReduction.pending.decrementAndGet() > 0 ) {
+            return;
+        }
+
+        generated.Package _package = null;
+
+        if ( !packageReduction.filesReduced.isEmpty() ) {
+
+            long start = System.nanoTime();
+
+            MetricsAccumulator packageAccumulator = new MetricsAccumulator();
+
+            _package = new generated.Package();
+            _package.setName( packageReduction.name );
+
+            List<generated.File> files = _package.getFile();
+            for (generated.File file : packageReduction.filesReduced.values()) {
+                packageAccumulator.addFile( file.getMetrics() );
+                files.add( file );
+            }
+
+            _package.setMetrics( packageAccumulator.toPackageMetrics() );
+            projectAccumulator.get().addPackage( packageAccumulator );
+
+            executionMetrics.add( ExecutionMetrics.Phase.AGGREGATE, System.nanoTime() - start );
+        }
+
+        final int index = packageReduction.index;
+        final generated.Package finishedPackage = _package;
+
+        // an empty package is still passed on, the packages after it wait for it
+        executorService.execute( new Runnable() {
+
+            @Override
+            public void run() {
+
+                finished.put( index, finishedPackage );
+                while (finished.containsKey( nextIndex )) {
+                    write( finished.remove( nextIndex++ ) );
+                }
+            }
+        } );
+    }
+
+    private void write( generated.Package _package ) {
+
+        if ( _package == null || exception != null ) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            reportWriter.writePackage( _package );
+            executionMetrics.add( ExecutionMetrics.Phase.MARSHAL, System.nanoTime() - start );
+        }
+        catch (Exception e) {
+            exception = e;
+        }
+    }
+
+    /**
+     * Waits for the finished packages to be written.
+     */
+    public void finish() throws Exception {
+
+        executorService.shutdown();
+        while (!executorService.awaitTermination( 1, TimeUnit.SECONDS )) {
+            // keep waiting for the queued packages to be written
+        }
+
+        if ( exception != null ) {
+            throw exception;
+        }
+    }
+
+    public ProjectMetrics getProjectMetrics() {
+
+        MetricsAccumulator metricsAccumulator = new MetricsAccumulator();
+        for (MetricsAccumulator _metricsAccumulator : projectAccumulators) {
+            metricsAccumulator.add( _metricsAccumulator );
+        }
+        return metricsAccumulator.toProjectMetrics();
+    }
+
+    /**
+     * Tracks the files of a single package which are still being reduced. The
+     * pending count starts at one for the package itself, which is released
+     * once its end tag has been parsed, so it only reaches zero when every
+     * file has been reduced.
+     */
+    public static final class PackageReduction {
+
+        private final String name;
+        private final int index;
+        private final AtomicInteger pending = new AtomicInteger( 1 );
+        private final ConcurrentSkipListMap<Integer, generated.File> filesReduced = new ConcurrentSkipListMap<Integer, generated.File>();
+
+        private PackageReduction(String name, int index) {
+
+            this.name = name;
+            this.index = index;
+        }
+    }
+}
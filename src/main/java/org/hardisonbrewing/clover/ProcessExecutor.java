@@ -0,0 +1,277 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+/**
+ * Runs child processes and keeps track of them, so that every process still
+ * running can be killed when a reduction is cancelled.
+ */
+public final class ProcessExecutor {
+
+    private static final Set<Process> processes = Collections.synchronizedSet( new HashSet<Process>() );
+    private static final AtomicLong startedCount = new AtomicLong();
+
+    private static final ExecutorService errorPumps = Executors.newCachedThreadPool( new ThreadFactory() {
+
+        @Override
+        public Thread newThread( Runnable runnable ) {
+
+            Thread thread = new Thread( runnable, "reductor-stderr" );
+            thread.setDaemon( true );
+            return thread;
+        }
+    } );
+
+    private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+
+        @Override
+        public Thread newThread( Runnable runnable ) {
+
+            Thread thread = new Thread( runnable, "reductor-watchdog" );
+            thread.setDaemon( true );
+            return thread;
+        }
+    } );
+
+    private ProcessExecutor() {
+
+        // do nothing
+    }
+
+    /**
+     * Runs the command, passing each line of its standard output to the
+     * consumer.
+     * 
+     * @param timeout Milliseconds after which the process is killed, or 0 to
+     * wait as long as it takes.
+     * @throws ProcessTimeoutException If the command runs past the timeout.
+     * @throws IllegalStateException If the command exits with a non-zero code.
+     * @throws InterruptedException If the process was killed by {@link #destroyAll()}.
+     */
+    public static void execute( List<String> cmd, File directory, final StreamConsumer streamConsumer, long timeout ) throws IOException, InterruptedException {
+
+        executeBytes( cmd, directory, new OutputParser() {
+
+            @Override
+            public void parse( InputStream inputStream ) throws IOException {
+
+                BufferedReader reader = new BufferedReader( new InputStreamReader( inputStream ) );
+                String line;
+                while (( line = reader.readLine() ) != null) {
+                    streamConsumer.consumeLine( line );
+                }
+            }
+        }, timeout );
+    }
+
+    /**
+     * Runs the command, passing its undecoded standard output to the parser.
+     * 
+     * @param timeout Milliseconds after which the process is killed, or 0 to
+     * wait as long as it takes.
+     * @throws ProcessTimeoutException If the command runs past the timeout.
+     * @throws IllegalStateException If the command exits with a non-zero code.
+     * @throws InterruptedException If the process was killed by {@link #destroyAll()}.
+     */
+    public static void executeBytes( List<String> cmd, File directory, OutputParser outputParser, long timeout ) throws IOException, InterruptedException {
+
+        ProcessBuilder processBuilder = new ProcessBuilder( cmd );
+        if ( directory != null ) {
+            processBuilder.directory( directory );
+        }
+
+        Process process = start( processBuilder );
+
+        Timeout _timeout = null;
+        ScheduledFuture<?> timeoutFuture = null;
+        if ( timeout > 0 ) {
+            _timeout = new Timeout( process );
+            timeoutFuture = watchdog.schedule( _timeout, timeout, TimeUnit.MILLISECONDS );
+        }
+
+        try {
+
+            process.getOutputStream().close();
+
+            ErrorPump errorPump = new ErrorPump( process.getErrorStream() );
+            errorPumps.execute( errorPump );
+
+            int exitCode;
+            try {
+                outputParser.parse( process.getInputStream() );
+                exitCode = process.waitFor();
+            }
+            catch (IOException | RuntimeException e) {
+                // the output was cut short by the kill
+                if ( _timeout != null && _timeout.expired ) {
+                    throw new ProcessTimeoutException( cmd + " timed out after " + timeout + "ms" );
+                }
+                throw e;
+            }
+
+            if ( Thread.interrupted() ) {
+                throw new InterruptedException( cmd.get( 0 ) + " was cancelled" );
+            }
+
+            if ( _timeout != null && _timeout.expired ) {
+                throw new ProcessTimeoutException( cmd + " timed out after " + timeout + "ms" );
+            }
+
+            if ( exitCode != 0 ) {
+                throw new IllegalStateException( cmd + " failed with exit code " + exitCode + ": " + errorPump.getOutput() );
+            }
+        }
+        finally {
+            if ( timeoutFuture != null ) {
+                timeoutFuture.cancel( false );
+            }
+            destroy( process );
+        }
+    }
+
+    /**
+     * Starts a process which will be killed by {@link #destroyAll()}. The
+     * caller must release it with {@link #destroy(Process)}.
+     */
+    public static Process start( ProcessBuilder processBuilder ) throws IOException {
+
+        Process process = processBuilder.start();
+        processes.add( process );
+        startedCount.incrementAndGet();
+        return process;
+    }
+
+    /**
+     * @return The number of processes started so far.
+     */
+    public static long getStartedCount() {
+
+        return startedCount.get();
+    }
+
+    public static void destroy( Process process ) {
+
+        processes.remove( process );
+        process.destroy();
+    }
+
+    /**
+     * Kills every running child process. Threads reading their output see the
+     * end of the stream and fail with an {@link InterruptedException} if they
+     * were interrupted.
+     */
+    public static void destroyAll() {
+
+        List<Process> _processes;
+        synchronized (processes) {
+            _processes = new ArrayList<Process>( processes );
+            processes.clear();
+        }
+        for (Process process : _processes) {
+            process.destroy();
+        }
+    }
+
+    /**
+     * Reads the standard output of a process.
+     */
+    public interface OutputParser {
+
+        public void parse( InputStream inputStream ) throws IOException;
+    }
+
+    private static final class Timeout implements Runnable {
+
+        private final Process process;
+        private volatile boolean expired;
+
+        public Timeout(Process process) {
+
+            this.process = process;
+        }
+
+        @Override
+        public void run() {
+
+            expired = true;
+            process.destroy();
+        }
+    }
+
+    private static final class ErrorPump implements Runnable {
+
+        private final InputStream inputStream;
+        private final StringBuffer output = new StringBuffer();
+        private boolean finished;
+
+        public ErrorPump(InputStream inputStream) {
+
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public void run() {
+
+            try {
+                BufferedReader reader = new BufferedReader( new InputStreamReader( inputStream ) );
+                String line;
+                while (( line = reader.readLine() ) != null) {
+                    synchronized (this) {
+                        output.append( line ).append( '\n' );
+                    }
+                }
+            }
+            catch (IOException e) {
+                // the process was destroyed
+            }
+            finally {
+                synchronized (this) {
+                    finished = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        private synchronized String getOutput() throws InterruptedException {
+
+            while (!finished) {
+                wait();
+            }
+            return output.toString().trim();
+        }
+    }
+}
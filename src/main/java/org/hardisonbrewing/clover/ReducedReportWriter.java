@@ -0,0 +1,266 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import generated.Coverage;
+import generated.Project;
+import generated.ProjectMetrics;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.Marshaller;
+import javax.xml.namespace.QName;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.hardisonbrewing.jaxb.JAXB;
+
+/**
+ * Writes a reduced Clover report incrementally. Packages are appended as soon
+ * as they are finished, and the project level <code>&lt;metrics&gt;</code>
+ * element, which has to precede the packages, is patched into space reserved
+ * after the <code>&lt;project&gt;</code> start tag when the writer is closed.
+ * <p>
+ * A gzip compressed report cannot be patched, so its packages are compressed
+ * into a temporary file instead. On close the header and metrics are written
+ * as a gzip member of their own, followed by the packages as a second member,
+ * which gzip readers treat as a single stream.
+ * <p>
+ * The report is written to a temporary file next to the target, which is only
+ * renamed over the target once the report is complete. A failed or cancelled
+ * run leaves the previous report in place.
+ */
+public final class ReducedReportWriter {
+
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * Bytes reserved for the project metrics element. All attributes at their
+     * maximum width fit in well under half of this.
+     */
+    private static final int METRICS_RESERVED = 1024;
+
+    private final File file;
+    private final File tempFile;
+    private final boolean formatted;
+    private final boolean compressed;
+
+    private RandomAccessFile randomAccessFile;
+    private File bodyFile;
+    private byte[] header;
+    private OutputStream outputStream;
+    private Marshaller marshaller;
+    private long metricsOffset;
+
+    /**
+     * @param formatted False to write the packages without indentation.
+     */
+    public ReducedReportWriter(File file, boolean formatted) {
+
+        this.file = file;
+        this.formatted = formatted;
+        compressed = JAXB.isCompressed( file );
+        tempFile = new File( file.getPath() + ".tmp" );
+    }
+
+    public synchronized void open( Coverage coverage ) throws Exception {
+
+        if ( compressed ) {
+            bodyFile = new File( file.getPath() + ".body" );
+            // not named .gz, so it has to be asked for
+            outputStream = JAXB.openOutputStream( bodyFile, true );
+        }
+        else {
+            randomAccessFile = new RandomAccessFile( tempFile, "rw" );
+            randomAccessFile.setLength( 0 );
+            outputStream = new BufferedOutputStream( Channels.newOutputStream( randomAccessFile.getChannel() ) );
+        }
+
+        marshaller = JAXB.getMarshaller();
+        marshaller.setProperty( Marshaller.JAXB_FRAGMENT, Boolean.TRUE );
+        marshaller.setProperty( Marshaller.JAXB_FORMATTED_OUTPUT, formatted );
+
+        Project project = coverage.getProject();
+
+        StringBuffer header = new StringBuffer();
+        header.append( "<?xml version=\"1.0\" encoding=\"" ).append( ENCODING ).append( "\" standalone=\"yes\"?>\n" );
+        header.append( "<coverage" );
+        attribute( header, "clover", coverage.getClover() );
+        attribute( header, "generated", Integer.toString( coverage.getGenerated() ) );
+        header.append( ">\n" );
+        header.append( "<project" );
+        attribute( header, "name", project.getName() );
+        attribute( header, "timestamp", Integer.toString( project.getTimestamp() ) );
+        header.append( ">\n" );
+
+        byte[] bytes = header.toString().getBytes( ENCODING );
+
+        if ( compressed ) {
+            this.header = bytes;
+            return;
+        }
+
+        outputStream.write( bytes );
+        metricsOffset = bytes.length;
+
+        byte[] reserved = new byte[METRICS_RESERVED];
+        Arrays.fill( reserved, (byte) ' ' );
+        reserved[reserved.length - 1] = '\n';
+        outputStream.write( reserved );
+    }
+
+    public synchronized void writePackage( generated.Package _package ) throws Exception {
+
+        marshaller.marshal( _package, outputStream );
+        if ( formatted ) {
+            outputStream.write( '\n' );
+        }
+    }
+
+    public synchronized void close( ProjectMetrics projectMetrics ) throws Exception {
+
+        try {
+
+            outputStream.write( "</project>\n</coverage>\n".getBytes( ENCODING ) );
+
+            ByteArrayOutputStream metrics = new ByteArrayOutputStream();
+            QName qName = new QName( "metrics" );
+            marshaller.setProperty( Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.FALSE );
+            marshaller.marshal( new JAXBElement<ProjectMetrics>( qName, ProjectMetrics.class, projectMetrics ), metrics );
+
+            byte[] bytes = metrics.toByteArray();
+
+            if ( compressed ) {
+                outputStream.close();
+                writeCompressed( bytes );
+            }
+            else {
+
+                outputStream.flush();
+
+                if ( bytes.length >= METRICS_RESERVED ) {
+                    throw new IllegalStateException( "Project metrics exceed the reserved " + METRICS_RESERVED + " bytes" );
+                }
+
+                randomAccessFile.seek( metricsOffset );
+                randomAccessFile.write( bytes );
+                randomAccessFile.close();
+                randomAccessFile = null;
+            }
+
+            Files.move( tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        }
+        finally {
+            abort();
+        }
+    }
+
+    private void writeCompressed( byte[] metrics ) throws IOException {
+
+        OutputStream fileOutputStream = null;
+        InputStream bodyInputStream = null;
+
+        try {
+
+            fileOutputStream = new BufferedOutputStream( new FileOutputStream( tempFile ) );
+
+            GZIPOutputStream gzipOutputStream = new GZIPOutputStream( fileOutputStream );
+            gzipOutputStream.write( header );
+            gzipOutputStream.write( metrics );
+            gzipOutputStream.write( '\n' );
+            gzipOutputStream.finish();
+
+            // already compressed, copied as is
+            bodyInputStream = new FileInputStream( bodyFile );
+            IOUtil.copy( bodyInputStream, fileOutputStream );
+            fileOutputStream.flush();
+        }
+        finally {
+            IOUtil.close( bodyInputStream );
+            IOUtil.close( fileOutputStream );
+        }
+    }
+
+    /**
+     * Discards the incomplete report, leaving any previous report in place.
+     */
+    public synchronized void abort() {
+
+        try {
+            if ( randomAccessFile != null ) {
+                randomAccessFile.close();
+                randomAccessFile = null;
+            }
+        }
+        catch (IOException e) {
+            // do nothing
+        }
+
+        if ( bodyFile != null ) {
+            IOUtil.close( outputStream );
+            bodyFile.delete();
+        }
+
+        // already renamed once the report is complete
+        tempFile.delete();
+    }
+
+    private static void attribute( StringBuffer stringBuffer, String name, String value ) {
+
+        if ( value == null ) {
+            return;
+        }
+
+        stringBuffer.append( ' ' ).append( name ).append( "=\"" );
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt( i );
+            switch (c) {
+                case '&':
+                    stringBuffer.append( "&amp;" );
+                    break;
+                case '<':
+                    stringBuffer.append( "&lt;" );
+                    break;
+                case '>':
+                    stringBuffer.append( "&gt;" );
+                    break;
+                case '"':
+                    stringBuffer.append( "&quot;" );
+                    break;
+                default:
+                    stringBuffer.append( c );
+                    break;
+            }
+        }
+
+        stringBuffer.append( '"' );
+    }
+}
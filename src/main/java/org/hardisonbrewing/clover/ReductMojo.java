@@ -16,35 +16,35 @@
  */
 package org.hardisonbrewing.clover;
 
-import generated.ClassMetrics;
-import generated.Construct;
 import generated.Coverage;
-import generated.FileMetrics;
 import generated.Line;
-import generated.PackageMetrics;
-import generated.Project;
-import generated.ProjectMetrics;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.Comparator;
-import java.util.LinkedList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Properties;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.codehaus.plexus.util.FileUtils;
-import org.codehaus.plexus.util.cli.CommandLineException;
-import org.codehaus.plexus.util.cli.CommandLineUtils;
-import org.codehaus.plexus.util.cli.Commandline;
-import org.codehaus.plexus.util.cli.StreamConsumer;
 import org.hardisonbrewing.jaxb.JAXB;
 
-import com.google.common.collect.SortedArraySet;
-
 /**
  * @goal reduct
  * @phase reduct
@@ -55,8 +55,33 @@ public final class ReductMojo extends AbstractMojo {
     private static final String CLOVER = "clover";
     private static final String WORKING_COPY = "workingCopy";
     private static final String CUTOFF_DATE = "cutoffDate";
+    private static final String VCS = "vcs";
+
+    private static final String VCS_SVN = "svn";
+    private static final String VCS_SVNKIT = "svnkit";
+    private static final String VCS_GIT = "git";
+
+    private static final String SHARD = "shard";
+    private static final String ORIGINAL_COPY = "originalCopy";
+    private static final String ORIGINAL_COPY_COPY = "copy";
+    private static final String ORIGINAL_COPY_LINK = "link";
+    private static final String ORIGINAL_COPY_NONE = "none";
+
+    // recent commands looked at, and the percentage of them failing which opens the breaker
+    private static final int CIRCUIT_BREAKER_WINDOW = 20;
+    private static final int CIRCUIT_BREAKER_THRESHOLD = 50;
+
+    /**
+     * Each blame thread reuses a single column for every file it blames.
+     */
+    private final ThreadLocal<RevisionColumn> revisionColumns = new ThreadLocal<RevisionColumn>() {
 
-    private File cloverReportFile;
+        @Override
+        protected RevisionColumn initialValue() {
+
+            return new RevisionColumn();
+        }
+    };
 
     /**
      * @parameter expression="${svnUsername}"
@@ -64,6 +89,11 @@ public final class ReductMojo extends AbstractMojo {
     private String svnUsername;
 
     /**
+     * One or more comma separated reports, each of which may be a pattern
+     * such as <code>**&#47;target/site/clover/clover.xml</code>. Each report
+     * is reduced into its own report, and a source file listed by several is
+     * only blamed once.
+     * 
      * @parameter property="clover" expression="${clover}"
      */
     private String cloverReportPath;
@@ -74,6 +104,9 @@ public final class ReductMojo extends AbstractMojo {
     private String workingCopyPath;
 
     /**
+     * One or more comma separated dates, each optionally labelled as
+     * <code>label=date</code>. Each date is reduced into its own report.
+     * 
      * @parameter expression="${cutoffDate}"
      */
     private String cutoffDate;
@@ -83,8 +116,153 @@ public final class ReductMojo extends AbstractMojo {
      */
     private int threadCount;
 
+    /**
+     * @parameter property="blameCache" default-value="true" expression="${blameCache}"
+     */
+    private boolean blameCacheEnabled;
+
+    /**
+     * @parameter property="blameCacheDirectory" expression="${blameCacheDirectory}"
+     */
+    private String blameCacheDirectoryPath;
+
+    /**
+     * Maximum size of the blame cache in megabytes.
+     * 
+     * @parameter property="blameCacheSize" default-value="512" expression="${blameCacheSize}"
+     */
+    private int blameCacheSize;
+
+    /**
+     * @parameter property="vcs" default-value="svn" expression="${vcs}"
+     */
+    private String vcs;
+
+    /**
+     * @parameter property="changedPathIndex" default-value="true" expression="${changedPathIndex}"
+     */
+    private boolean changedPathIndex;
+
+    /**
+     * @parameter property="workingCopyDatabase" default-value="true" expression="${workingCopyDatabase}"
+     */
+    private boolean workingCopyDatabaseEnabled;
+
+    /**
+     * Number of files allowed to fail before the run is aborted, or -1 for no limit.
+     * 
+     * @parameter property="maxFailures" default-value="-1" expression="${maxFailures}"
+     */
+    private int maxFailures;
+
+    /**
+     * Seconds a single <code>svn</code> or <code>git</code> command may run
+     * before it is killed, or 0 for no limit. Not supported by
+     * <code>svnkit</code>.
+     * 
+     * @parameter property="timeout" default-value="300" expression="${timeout}"
+     */
+    private int timeout;
+
+    /**
+     * Number of times a command which timed out or failed on a network or
+     * busy server error is tried again before the file is counted as failed.
+     * 
+     * @parameter property="retries" default-value="2" expression="${retries}"
+     */
+    private int retries;
+
+    /**
+     * Milliseconds to back off before the first retry, doubled for each
+     * further retry. Each thread waits a random time up to this, so retries
+     * do not all hit the server at once.
+     * 
+     * @parameter property="retryDelay" default-value="1000" expression="${retryDelay}"
+     */
+    private long retryDelay;
+
+    /**
+     * Seconds every thread holds back once most recent commands have failed,
+     * before a single command is let through to test the server.
+     * 
+     * @parameter property="circuitBreakerCooldown" default-value="30" expression="${circuitBreakerCooldown}"
+     */
+    private int circuitBreakerCooldown;
+
+    /**
+     * Number of parsed files allowed to be queued or running. The queued files
+     * are run largest first, so a larger window orders better but holds more
+     * of the report on the heap.
+     * 
+     * @parameter property="lookahead" default-value="256" expression="${lookahead}"
+     */
+    private int lookahead;
+
+    /**
+     * @parameter property="reductionManifest" default-value="true" expression="${reductionManifest}"
+     */
+    private boolean reductionManifestEnabled;
+
+    /**
+     * Keeps a binary snapshot of each report, which later runs map into
+     * memory instead of parsing the XML for as long as the report is
+     * unchanged.
+     * 
+     * @parameter property="snapshot" default-value="true" expression="${snapshot}"
+     */
+    private boolean snapshotEnabled;
+
+    /**
+     * Only reduces the files of one shard, given as <code>index/count</code>
+     * with the index starting at 1, into a partial report for the
+     * <code>merge</code> goal.
+     * 
+     * @parameter property="shard" expression="${shard}"
+     */
+    private String shardValue;
+
+    /**
+     * How the original report is kept under the target directory: a
+     * <code>copy</code>, a hard <code>link</code>, which falls back to a copy
+     * where links are not supported, or <code>none</code>. A link shares its
+     * content with the report, so it also changes when a later build
+     * rewrites the report in place.
+     * 
+     * @parameter property="originalCopy" default-value="copy" expression="${originalCopy}"
+     */
+    private String originalCopy;
+
+    /**
+     * @parameter property="formatOutput" default-value="true" expression="${formatOutput}"
+     */
+    private boolean formatOutput;
+
+    /**
+     * Gzip the reduced reports. Reports read from a <code>.gz</code> file are
+     * always written compressed.
+     * 
+     * @parameter property="compressOutput" default-value="false" expression="${compressOutput}"
+     */
+    private boolean compressOutput;
+
     private File targetDirectory;
-    private long cutoffRevision;
+    private Shard shard;
+    private Report[] reports;
+    private Cutoff[] cutoffs;
+    private long minimumCutoffRevision;
+    private String workingCopyCanonicalPath;
+    private Set<String> changedPaths;
+    private Set<String> modifiedPaths;
+    private BlameCache blameCache;
+    private BlameHistory blameHistory;
+    private VcsBackend vcsBackend;
+    private RetryingVcsBackend retryingVcsBackend;
+    private CircuitBreaker circuitBreaker;
+    private WorkingCopyDatabase workingCopyDatabase;
+    private ExecutionMetrics executionMetrics;
+    private Future<Void> vcsSetup;
+    private ConcurrentMap<String, SourceBlame> sourceBlames;
+    private final AtomicInteger unchangedCount = new AtomicInteger();
 
     @Override
     public final void execute() throws MojoExecutionException, MojoFailureException {
@@ -94,6 +272,9 @@ public final class ReductMojo extends AbstractMojo {
         try {
             _execute();
         }
+        catch (MojoFailureException e) {
+            throw e;
+        }
         catch (Exception e) {
             throw new IllegalStateException( e );
         }
@@ -105,100 +286,429 @@ public final class ReductMojo extends AbstractMojo {
 
     private void _execute() throws Exception {
 
-        initCloverFilePath();
-        initWorkingCopyPath();
+        executionMetrics = new ExecutionMetrics();
+
         initCutoffDate();
+        initCloverReports();
+        initWorkingCopyPath();
+        initOriginalCopy();
+        initShard();
+
+        for (Report report : reports) {
+            getLog().info( "Using coverage report from: " + report.file.getPath() );
+        }
+
+        if ( reports.length > 1 ) {
+            initSourceBlames();
+        }
 
-        getLog().info( "Using coverage report from: " + cloverReportFile.getPath() );
+        File reductorDirectory = new File( "target", "clover-reductor" );
 
-        targetDirectory = new File( "target", "clover-reductor" );
+        // shards running side by side only share the blame cache
+        targetDirectory = shard == null ? reductorDirectory : new File( reductorDirectory, shard.getLabel() );
         targetDirectory.mkdirs();
 
-        FileUtils.copyFile( cloverReportFile, new File( targetDirectory, "clover-original.xml" ) );
+        initBlameCache( reductorDirectory );
 
-        Coverage coverage = JAXB.unmarshal( cloverReportFile, Coverage.class );
-        Project project = coverage.getProject();
-        getLog().info( "Running Reductor: " + project.getName() );
+        blameHistory = new BlameHistory( new File( targetDirectory, "blame-history" ) );
+        blameHistory.load();
 
-        List<generated.Package> packages = project.getPackage();
-        if ( packages.isEmpty() ) {
-            getLog().info( "No packages found." );
-            return;
+        try {
+            reduce();
+        }
+        finally {
+            if ( vcsBackend != null ) {
+                vcsBackend.close();
+            }
+            saveBlameHistory();
+            writeExecutionMetrics();
         }
+    }
 
-        cutoffRevision = findCutoffRevision( workingCopyPath );
-        getLog().info( "Cutoff Revision: " + cutoffRevision );
+    /**
+     * Creates the backend, loads the working copy database and resolves the
+     * cutoff revisions. Runs alongside the report parser, and blame threads
+     * wait for it with {@link #awaitVcsSetup()}.
+     */
+    private void setUpVcs() throws Exception {
 
-        int fileCount = 0;
+        circuitBreaker = new CircuitBreaker( CIRCUIT_BREAKER_WINDOW, CIRCUIT_BREAKER_THRESHOLD, circuitBreakerCooldown * 1000L );
+        retryingVcsBackend = new RetryingVcsBackend( createVcsBackend(), getLog(), retries, retryDelay, circuitBreaker );
+        vcsBackend = retryingVcsBackend;
+        initWorkingCopyDatabase();
 
-        for (int i = packages.size() - 1; i >= 0; i--) {
+        long start = System.nanoTime();
 
-            generated.Package _package = packages.get( i );
-            List<generated.File> files = _package.getFile();
+        minimumCutoffRevision = Long.MAX_VALUE;
+        for (Cutoff cutoff : cutoffs) {
+            cutoff.revision = vcsBackend.findCutoffRevision( workingCopyPath, cutoff.date );
+            minimumCutoffRevision = Math.min( minimumCutoffRevision, cutoff.revision );
+            getLog().info( "Cutoff Revision" + ( cutoff.label == null ? "" : " [" + cutoff.label + "]" ) + ": " + cutoff.revision );
+        }
 
-            if ( files.isEmpty() ) {
-                packages.remove( _package );
-                continue;
+        executionMetrics.add( ExecutionMetrics.Phase.CUTOFF, System.nanoTime() - start );
+
+        // the earliest cutoff sees every change the later ones do
+        if ( changedPathIndex ) {
+            start = System.nanoTime();
+            try {
+                changedPaths = vcsBackend.findChangedPaths( workingCopyPath, minimumCutoffRevision );
+            }
+            catch (Exception e) {
+                getLog().warn( "Unable to list the files changed since cutoff, blaming every file", e );
+            }
+            executionMetrics.add( ExecutionMetrics.Phase.CHANGED_PATHS, System.nanoTime() - start );
+            if ( changedPaths != null ) {
+                getLog().info( "Files changed since cutoff: " + changedPaths.size() );
+            }
+        }
+
+        try {
+            modifiedPaths = vcsBackend.findModifiedPaths( workingCopyPath );
+            if ( !modifiedPaths.isEmpty() ) {
+                getLog().info( "Files modified in the working copy: " + modifiedPaths.size() );
+            }
+        }
+        catch (Exception e) {
+            getLog().warn( "Unable to check the working copy for modified files, treating every file as modified", e );
+        }
+    }
+
+    private void awaitVcsSetup() throws Exception {
+
+        try {
+            vcsSetup.get();
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof Exception ) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private void reduce() throws Exception {
+
+        final BlameScheduler scheduler = new BlameScheduler( getLog(), threadCount, Math.max( threadCount, lookahead ), maxFailures );
+
+        // none of these depend on each other, or on the report being parsed
+        ExecutorService startup = Executors.newFixedThreadPool( 3 );
+
+        startup.submit( new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+
+                JAXB.getJAXBContext();
+                return null;
+            }
+        } );
+
+        Future<Void> originalCopy = startup.submit( new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+
+                for (Report report : reports) {
+                    keepOriginal( report );
+                }
+                return null;
+            }
+        } );
+
+        vcsSetup = startup.submit( new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+
+                try {
+                    setUpVcs();
+                }
+                catch (Exception e) {
+                    // stop the blame threads waiting for it
+                    scheduler.cancel();
+                    throw e;
+                }
+                return null;
+            }
+        } );
+
+        startup.shutdown();
+
+        for (Report report : reports) {
+            report.reportHandler = new ReportHandler( report, scheduler );
+            for (Reduction reduction : report.reductions) {
+                reduction.open();
+            }
+        }
+
+        // kill the child processes rather than leaving them behind on Ctrl-C
+        Thread shutdownHook = new Thread() {
+
+            @Override
+            public void run() {
+
+                scheduler.cancel();
+            }
+        };
+
+        Runtime.getRuntime().addShutdownHook( shutdownHook );
+
+        try {
+            long start = System.nanoTime();
+            try {
+                for (Report report : reports) {
+                    read( report );
+                }
+                executionMetrics.add( ExecutionMetrics.Phase.PARSE, System.nanoTime() - start );
+            }
+            catch (CancellationException e) {
+                // stopped by the scheduler, awaitCompletion reports why
             }
+            catch (Exception e) {
+                scheduler.cancel();
+                throw e;
+            }
+            finally {
+                scheduler.awaitCompletion();
+                for (Report report : reports) {
+                    for (Reduction reduction : report.reductions) {
+                        reduction.packageWriter.finish();
+                    }
+                }
+            }
+
+            awaitVcsSetup();
+            originalCopy.get();
+
+            if ( scheduler.isCancelled() ) {
+                throw new MojoFailureException( "Reduction was cancelled" );
+            }
+
+            // inside the try, so a report failing to close aborts the ones after it
+            for (Report report : reports) {
+                report.close();
+            }
+        }
+        catch (Exception e) {
+            for (Report report : reports) {
+                for (Reduction reduction : report.reductions) {
+                    reduction.abort();
+                }
+            }
+            throw e;
+        }
+        finally {
+            try {
+                Runtime.getRuntime().removeShutdownHook( shutdownHook );
+            }
+            catch (IllegalStateException e) {
+                // already shutting down
+            }
+            // the backend is closed once setup is no longer using it
+            while (!startup.awaitTermination( 1, TimeUnit.SECONDS )) {
+                // keep waiting
+            }
+            executionMetrics.setScheduler( scheduler, threadCount );
+            if ( retryingVcsBackend != null ) {
+                executionMetrics.setRetries( retryingVcsBackend, circuitBreaker );
+            }
+            executionMetrics.setFileCounts( fileCount(), unchangedCount.get() );
+        }
+
+        getLog().info( String.format( "Thread utilization: %.1f%% of %d threads", scheduler.getUtilization() * 100, threadCount ) );
+
+        if ( retryingVcsBackend != null ) {
+            logRetries( scheduler );
+        }
+        else if ( scheduler.getFailureCount() > 0 ) {
+            getLog().warn( scheduler.getFailureCount() + " files could not be inspected" );
+        }
+
+        int fileCount = fileCount();
+        if ( fileCount > 0 && changedPaths != null ) {
+            getLog().info( "Skipped " + unchangedCount + " of " + fileCount + " files unchanged since cutoff" );
+        }
+    }
+
+    private void read( Report report ) throws Exception {
 
-            fileCount += files.size();
+        if ( !snapshotEnabled ) {
+            new CoverageReader( report.reportHandler ).read( report.file );
+            return;
         }
 
-        if ( fileCount == 0 ) {
-            getLog().info( "No files found." );
+        File snapshotFile = new File( targetDirectory, "coverage-snapshot" + report.suffix() );
+
+        CoverageSnapshot snapshot = null;
+        try {
+            snapshot = CoverageSnapshot.open( snapshotFile, report.file );
+        }
+        catch (IOException e) {
+            getLog().warn( "Unable to open coverage snapshot: " + snapshotFile.getPath(), e );
+        }
+
+        if ( snapshot != null ) {
+            getLog().info( "Using coverage snapshot: " + snapshotFile.getPath() );
+            snapshot.read( report.reportHandler );
             return;
         }
 
-        BlameThread[] threads = new BlameThread[Math.min( fileCount, threadCount )];
-        List<generated.Package> packagesReduced = new LinkedList<generated.Package>();
+        CoverageSnapshotWriter snapshotWriter = new CoverageSnapshotWriter( snapshotFile, report.file, report.reportHandler );
+
+        try {
+            new CoverageReader( snapshotWriter ).read( report.file );
+        }
+        catch (Exception e) {
+            snapshotWriter.abort();
+            throw e;
+        }
+
+        try {
+            snapshotWriter.close();
+        }
+        catch (IOException e) {
+            getLog().warn( "Unable to save coverage snapshot: " + snapshotFile.getPath(), e );
+        }
+    }
+
+    private int fileCount() {
 
-        for (int i = 0; i < threads.length; i++) {
-            threads[i] = new BlameThread( packages, packagesReduced );
-            new Thread( threads[i] ).start();
+        int fileCount = 0;
+        for (Report report : reports) {
+            if ( report.reportHandler != null ) {
+                fileCount += report.reportHandler.fileCount;
+            }
         }
+        return fileCount;
+    }
+
+    private void logRetries( BlameScheduler scheduler ) {
 
-        for (BlameThread thread : threads) {
-            thread.waitUntilFinished();
+        int retriedCount = retryingVcsBackend.getRetriedPaths().size();
+        if ( retriedCount > 0 ) {
+            getLog().info( retriedCount + " files needed a retry (" + retryingVcsBackend.getTimeoutCount() + " timeouts)" );
         }
 
-        Project projectReduced = new Project();
-        projectReduced.setMetrics( new ProjectMetrics() );
-        projectReduced.setName( project.getName() );
-        projectReduced.setTimestamp( project.getTimestamp() );
+        if ( circuitBreaker.getOpenCount() > 0 ) {
+            getLog().warn( "Held back every thread " + circuitBreaker.getOpenCount() + " times after repeated failures" );
+        }
 
-        for (generated.Package _package : packagesReduced) {
-            add( projectReduced, _package );
+        List<String> failedNames = scheduler.getFailedNames();
+        if ( !failedNames.isEmpty() ) {
+            getLog().warn( failedNames.size() + " files could not be inspected: " + failedNames );
         }
+    }
 
-        Coverage coverageReduced = new Coverage();
-        coverageReduced.setProject( projectReduced );
-        coverageReduced.setClover( coverageReduced.getClover() );
-        coverageReduced.setGenerated( coverage.getGenerated() );
+    private void writeExecutionMetrics() {
 
-        File cloverReportReducedFile = reducedFile( cloverReportFile );
-        getLog().info( "Saving new coverage report to: " + cloverReportReducedFile.getPath() );
-        JAXB.marshal( cloverReportReducedFile, coverageReduced );
+        File file = reducedFile( reports[0].file, shardLabel( "metrics" ), "json" );
+
+        try {
+            executionMetrics.write( file );
+            getLog().info( "Saved execution metrics to: " + file.getPath() );
+        }
+        catch (IOException e) {
+            getLog().warn( "Unable to save execution metrics", e );
+        }
     }
 
-    private File reducedFile( File file ) {
+    private void saveBlameHistory() {
 
-        String name = file.getName();
-        String extension = FileUtils.extension( name );
-        name = name.substring( 0, name.length() - ( extension.length() + 1 ) );
-        name = name + "-reduced." + extension;
+        try {
+            blameHistory.save();
+        }
+        catch (IOException e) {
+            getLog().warn( "Unable to save blame history", e );
+        }
+    }
+
+    private File reducedFile( File file, String label ) {
+
+        String extension = FileUtils.extension( uncompressedName( file ) );
+        if ( compressOutput || JAXB.isCompressed( file ) ) {
+            extension += JAXB.GZIP_EXTENSION;
+        }
+        return reducedFile( file, label, extension );
+    }
+
+    /**
+     * @return The reduced report next to the original, named with the label
+     * of the cutoff and shard, if any.
+     */
+    static File reducedFile( File file, String label, String extension ) {
+
+        String name = FileUtils.removeExtension( uncompressedName( file ) );
+        name = name + "-reduced" + ( label == null ? "" : "-" + label ) + "." + extension;
         return new File( file.getParent(), name );
     }
 
-    private void initCloverFilePath() throws Exception {
+    /**
+     * @return The label with the shard added, so partial reports do not
+     * overwrite each other.
+     */
+    private String shardLabel( String label ) {
+
+        if ( shard == null ) {
+            return label;
+        }
+        return label == null ? shard.getLabel() : label + "-" + shard.getLabel();
+    }
+
+    private static String uncompressedName( File file ) {
+
+        String name = file.getName();
+        if ( JAXB.isCompressed( file ) ) {
+            name = name.substring( 0, name.length() - JAXB.GZIP_EXTENSION.length() );
+        }
+        return name;
+    }
+
+    private void keepOriginal( Report report ) throws IOException {
+
+        if ( ORIGINAL_COPY_NONE.equals( originalCopy ) ) {
+            return;
+        }
+
+        String extension = JAXB.isCompressed( report.file ) ? ".xml" + JAXB.GZIP_EXTENSION : ".xml";
+        File original = new File( targetDirectory, "clover-original" + report.suffix() + extension );
 
-        if ( cloverReportPath == null || cloverReportPath.length() == 0 ) {
-            getLog().error( "Required property `" + CLOVER + "` missing. Use -D" + CLOVER + "=<path to xml>" );
+        if ( ORIGINAL_COPY_LINK.equals( originalCopy ) ) {
+            original.delete();
+            try {
+                Files.createLink( original.toPath(), report.file.toPath() );
+                return;
+            }
+            catch (IOException | UnsupportedOperationException e) {
+                getLog().debug( "Unable to link the original report, copying instead", e );
+            }
+        }
+
+        FileUtils.copyFile( report.file, original );
+    }
+
+    private void initCloverReports() throws Exception {
+
+        if ( cloverReportPath == null || cloverReportPath.trim().length() == 0 ) {
+            getLog().error( "Required property `" + CLOVER + "` missing. Use -D" + CLOVER + "=<path to xml> or -D" + CLOVER + "=<path or pattern>,<path or pattern>" );
             throw new IllegalArgumentException();
         }
 
-        cloverReportFile = new File( cloverReportPath );
-        if ( !cloverReportFile.exists() ) {
-            throw new FileNotFoundException( cloverReportFile.getPath() );
+        // leave out the reports written by earlier runs
+        List<File> files = ReportFiles.find( cloverReportPath, new String[] { "**/*-reduced.*", "**/*-reduced-*" } );
+
+        reports = new Report[files.size()];
+        for (int i = 0; i < reports.length; i++) {
+            reports[i] = new Report( i, files.get( i ) );
+        }
+    }
+
+    private void initOriginalCopy() {
+
+        if ( !ORIGINAL_COPY_COPY.equals( originalCopy ) && !ORIGINAL_COPY_LINK.equals( originalCopy ) && !ORIGINAL_COPY_NONE.equals( originalCopy ) ) {
+            getLog().error( "Unsupported `" + ORIGINAL_COPY + "` value: " + originalCopy + ". Use " + ORIGINAL_COPY_COPY + ", " + ORIGINAL_COPY_LINK + " or " + ORIGINAL_COPY_NONE );
+            throw new IllegalArgumentException();
         }
     }
 
@@ -213,10 +723,28 @@ public final class ReductMojo extends AbstractMojo {
             throw new FileNotFoundException( workingCopyPath );
         }
 
-        if ( !new File( workingCopyPath, ".svn" ).exists() ) {
+        String metadataDirectory = VCS_GIT.equals( vcs ) ? ".git" : ".svn";
+        if ( !new File( workingCopyPath, metadataDirectory ).exists() ) {
             getLog().error( "Directory is not a working copy: " + workingCopyPath );
             throw new IllegalArgumentException();
         }
+
+        workingCopyCanonicalPath = new File( workingCopyPath ).getCanonicalPath();
+    }
+
+    private void initShard() {
+
+        if ( shardValue == null || shardValue.length() == 0 ) {
+            return;
+        }
+
+        shard = Shard.parse( shardValue );
+        if ( shard == null ) {
+            getLog().error( "Invalid `" + SHARD + "` value: " + shardValue + ". Use -D" + SHARD + "=<index>/<count>" );
+            throw new IllegalArgumentException();
+        }
+
+        getLog().info( "Reducing shard " + shard );
     }
 
     private void initCutoffDate() throws Exception {
@@ -225,204 +753,290 @@ public final class ReductMojo extends AbstractMojo {
             getLog().error( "Required property `" + CUTOFF_DATE + "` missing. Use -D" + CUTOFF_DATE + "=<timestamp>" );
             throw new IllegalArgumentException();
         }
+
+        Map<String, String> dates;
+        try {
+            dates = CutoffDate.parseLabelled( cutoffDate );
+        }
+        catch (IllegalArgumentException e) {
+            getLog().error( "Invalid `" + CUTOFF_DATE + "` value: " + cutoffDate + ". " + e.getMessage() + ". Use -D" + CUTOFF_DATE + "=<timestamp> or -D" + CUTOFF_DATE + "=<label>=<timestamp>,<label>=<timestamp>" );
+            throw e;
+        }
+
+        cutoffs = new Cutoff[dates.size()];
+        int i = 0;
+        for (Map.Entry<String, String> entry : dates.entrySet()) {
+            cutoffs[i++] = new Cutoff( entry.getKey(), entry.getValue() );
+        }
     }
 
-    private generated.File reduceFile( generated.File file ) throws Exception {
+    private VcsBackend createVcsBackend() throws Exception {
 
-        String filePath = file.getPath();
-        if ( !new File( filePath ).exists() ) {
-            throw new FileNotFoundException( filePath );
+        if ( VCS_SVN.equals( vcs ) ) {
+            return new SvnCommandLineBackend( svnUsername, targetDirectory, timeout * 1000L );
+        }
+        if ( VCS_SVNKIT.equals( vcs ) ) {
+            return new SvnKitBackend( svnUsername, targetDirectory );
         }
+        if ( VCS_GIT.equals( vcs ) ) {
+            return new GitBackend( new File( workingCopyPath ), timeout * 1000L );
+        }
+        getLog().error( "Unsupported `" + VCS + "` value: " + vcs + ". Use " + VCS_SVN + ", " + VCS_SVNKIT + " or " + VCS_GIT );
+        throw new IllegalArgumentException();
+    }
 
-        Properties properties = info( filePath );
-        long revision = Long.parseLong( properties.getProperty( "Revision" ) );
-        if ( revision < cutoffRevision ) {
-            return null;
+    private void initWorkingCopyDatabase() throws IOException {
+
+        if ( !workingCopyDatabaseEnabled || VCS_GIT.equals( vcs ) ) {
+            return;
         }
 
-        generated.File fileReduced = null;
-        Set<Line> sortedLines = null;
+        workingCopyDatabase = WorkingCopyDatabase.load( new File( workingCopyPath ) );
+        if ( workingCopyDatabase == null ) {
+            getLog().info( "Working copy database not recognised, using " + vcs + " info" );
+        }
+        else {
+            getLog().info( "Loaded " + workingCopyDatabase.size() + " files from the working copy database" );
+        }
+    }
 
-        List<Long> revisions = blame( file.getPath() );
+    private void initBlameCache( File reductorDirectory ) {
 
-        for (Line line : file.getLine()) {
+        if ( !blameCacheEnabled ) {
+            return;
+        }
 
-            int lineNumber = line.getNum();
-            if ( cutoffRevision >= revisions.get( lineNumber - 1 ) ) {
-                continue;
-            }
+        File directory;
+        if ( blameCacheDirectoryPath == null || blameCacheDirectoryPath.length() == 0 ) {
+            directory = new File( reductorDirectory, "blame-cache" );
+        }
+        else {
+            directory = new File( blameCacheDirectoryPath );
+        }
 
-            if ( fileReduced == null ) {
-                fileReduced = new generated.File();
-                fileReduced.setMetrics( new FileMetrics() );
-                fileReduced.setName( file.getName() );
-                fileReduced.setPath( file.getPath() );
-                sortedLines = new SortedArraySet<Line>( new LineComparator() );
-            }
+        getLog().info( "Using blame cache: " + directory.getPath() );
+        blameCache = new BlameCache( directory, blameCacheSize * 1024L * 1024L );
+    }
+
+    /**
+     * Blames the file at most once and reduces it against every cutoff.
+     * 
+     * @return The reduced file for each cutoff, null where no lines survived.
+     */
+    private generated.File[] reduceFile( Report report, generated.File file, RevisionColumn revisions ) throws Exception {
+
+        awaitVcsSetup();
+
+        Reduction[] reductions = report.reductions;
+        generated.File[] filesReduced = new generated.File[reductions.length];
 
-            addMetrics( fileReduced, line );
-            sortedLines.add( line );
+        boolean modified = isModified( file );
+
+        if ( !modified && isUnchanged( file.getPath() ) ) {
+            unchangedCount.incrementAndGet();
+            return filesReduced;
         }
 
-        if ( fileReduced != null ) {
-            List<Line> lines = fileReduced.getLine();
-            lines.addAll( sortedLines );
+        String filePath = file.getPath();
+        if ( !new File( filePath ).exists() ) {
+            throw new FileNotFoundException( filePath );
         }
 
-        return fileReduced;
-    }
+        SourceBlame sourceBlame = null;
+        if ( sourceBlames != null ) {
+            sourceBlame = sourceBlame( filePath );
+        }
+
+        VcsInfo info = sourceBlame == null ? info( filePath ) : sourceBlame.info( filePath );
+        // uncommitted lines are newer than any cutoff
+        if ( !modified && info.getRevision() < minimumCutoffRevision ) {
+            return filesReduced;
+        }
 
-    private void addMetrics( generated.File file, Line line ) {
+        long lastChangedRevision = info.getLastChangedRevision();
+        long fileHash = 0;
+        // the last changed revision says nothing of uncommitted changes
+        if ( reductionManifestEnabled && !modified ) {
+            fileHash = ReductionManifest.hash( file );
+        }
+        boolean blamed = false;
 
-        FileMetrics fileMetrics = file.getMetrics();
+        for (int i = 0; i < reductions.length; i++) {
 
-        int elements = 0;
-        int coveredElements = 0;
+            Reduction reduction = reductions[i];
+            long cutoffRevision = reduction.cutoff.revision;
+            ReductionManifest reductionManifest = modified ? null : reduction.reductionManifest;
 
-        switch (line.getType()) {
-            case STMT: {
-                elements = 1;
-                coveredElements = Math.min( 1, line.getCount() );
-                fileMetrics.setLoc( _int( fileMetrics.getLoc() ) + 1 );
-                fileMetrics.setStatements( fileMetrics.getStatements() + elements );
-                fileMetrics.setCoveredstatements( fileMetrics.getCoveredstatements() + coveredElements );
-                break;
+            if ( reductionManifest != null && reductionManifest.contains( filePath, lastChangedRevision, fileHash, cutoffRevision ) ) {
+                filesReduced[i] = reductionManifest.get( filePath );
+                executionMetrics.fileReused();
+                continue;
             }
-            case COND: {
-                elements = 2;
-                coveredElements = Math.min( 1, line.getTruecount() ) + Math.min( 1, line.getFalsecount() );
-                fileMetrics.setConditionals( fileMetrics.getConditionals() + elements );
-                fileMetrics.setCoveredconditionals( fileMetrics.getCoveredconditionals() + coveredElements );
-                break;
+
+            if ( !blamed ) {
+                if ( sourceBlame == null ) {
+                    blame( filePath, info, modified, revisions );
+                }
+                else {
+                    sourceBlame.blame( filePath, modified, revisions );
+                }
+                blamed = true;
             }
-            case METHOD: {
-                elements = 1;
-                coveredElements = Math.min( 1, line.getCount() );
-                fileMetrics.setMethods( fileMetrics.getMethods() + elements );
-                fileMetrics.setCoveredmethods( fileMetrics.getCoveredmethods() + coveredElements );
-                break;
+
+            long start = System.nanoTime();
+            filesReduced[i] = FileReducer.reduce( file, revisions, cutoffRevision );
+            executionMetrics.add( ExecutionMetrics.Phase.REDUCE, System.nanoTime() - start );
+
+            if ( reductionManifest != null ) {
+                reductionManifest.put( filePath, lastChangedRevision, fileHash, cutoffRevision, filesReduced[i] );
             }
         }
 
-        fileMetrics.setElements( fileMetrics.getElements() + elements );
-        fileMetrics.setCoveredelements( fileMetrics.getCoveredelements() + coveredElements );
+        return filesReduced;
     }
 
-    private void add( generated.Package _package, generated.File file ) {
+    /**
+     * @param modified True if the file has uncommitted changes, which are not
+     * part of the cached blame of its last changed revision.
+     */
+    private void blame( String filePath, VcsInfo info, boolean modified, RevisionColumn revisions ) throws Exception {
 
-        PackageMetrics packageMetrics = _package.getMetrics();
-        packageMetrics.setFiles( _int( packageMetrics.getFiles() ) + 1 );
-        add( packageMetrics, file.getMetrics() );
+        String repositoryPath = info.getPath();
+        long lastChangedRevision = info.getLastChangedRevision();
+        BlameCache blameCache = modified ? null : this.blameCache;
 
-        List<generated.File> files = _package.getFile();
-        files.add( file );
-    }
+        if ( blameCache != null && blameCache.get( repositoryPath, lastChangedRevision, revisions ) ) {
+            executionMetrics.blameCacheHit();
+            return;
+        }
 
-    private int _int( Integer integer ) {
+        long start = System.nanoTime();
+        vcsBackend.blame( filePath, revisions );
+        long nanos = System.nanoTime() - start;
+        executionMetrics.addBlame( nanos );
+        blameHistory.record( filePath, revisions.size(), TimeUnit.NANOSECONDS.toMillis( nanos ) );
 
-        return integer == null ? 0 : integer.intValue();
+        // local modifications are not part of the last changed revision
+        if ( blameCache != null && !revisions.hasLocalModifications() ) {
+            blameCache.put( repositoryPath, lastChangedRevision, revisions );
+        }
     }
 
-    private void add( Project project, generated.Package _package ) {
-
-        ProjectMetrics projectMetrics = project.getMetrics();
-        projectMetrics.setPackages( _int( projectMetrics.getPackages() ) + 1 );
-        add( projectMetrics, _package.getMetrics() );
+    /**
+     * Counts the reports listing each source file in this shard. Only the
+     * files listed by more than one report share their info and blame.
+     */
+    private void initSourceBlames() throws Exception {
 
-        List<generated.Package> packages = project.getPackage();
-        packages.add( _package );
-    }
+        Map<String, Integer> references = new HashMap<String, Integer>();
 
-    private void add( PackageMetrics parent, PackageMetrics child ) {
+        for (Report report : reports) {
+            Set<String> paths = new HashSet<String>();
+            CoverageReader.readPaths( report.file, paths );
+            for (String path : paths) {
+                if ( shard != null && !shard.contains( relativePath( path ) ) ) {
+                    continue;
+                }
+                path = new File( path ).getCanonicalPath();
+                Integer count = references.get( path );
+                references.put( path, count == null ? 1 : count + 1 );
+            }
+        }
 
-        parent.setFiles( _int( parent.getFiles() ) + _int( child.getFiles() ) );
-        add( (FileMetrics) parent, child );
+        sourceBlames = new ConcurrentHashMap<String, SourceBlame>();
+        for (Map.Entry<String, Integer> entry : references.entrySet()) {
+            if ( entry.getValue() > 1 ) {
+                sourceBlames.put( entry.getKey(), new SourceBlame( entry.getValue() ) );
+            }
+        }
     }
 
-    private void add( FileMetrics parent, FileMetrics child ) {
+    /**
+     * @return The shared info and blame of the file, or null if no other
+     * report lists it.
+     */
+    private SourceBlame sourceBlame( String filePath ) throws IOException {
 
-        parent.setClasses( _int( parent.getClasses() ) + _int( child.getClasses() ) );
-        parent.setLoc( _int( parent.getLoc() ) + _int( child.getLoc() ) );
-        add( (ClassMetrics) parent, child );
+        return sourceBlames.get( new File( filePath ).getCanonicalPath() );
     }
 
-    private void add( ClassMetrics parent, ClassMetrics child ) {
+    /**
+     * Called once by each report when it is done with the file, dropping the
+     * shared blame after the last one.
+     */
+    private void releaseSourceBlame( String filePath ) throws IOException {
 
-        parent.setStatements( parent.getStatements() + child.getStatements() );
-        parent.setConditionals( parent.getConditionals() + child.getConditionals() );
-        parent.setMethods( parent.getMethods() + child.getMethods() );
-        parent.setElements( parent.getElements() + child.getElements() );
+        if ( sourceBlames == null ) {
+            return;
+        }
 
-        parent.setCoveredstatements( parent.getCoveredstatements() + child.getCoveredstatements() );
-        parent.setCoveredconditionals( parent.getCoveredconditionals() + child.getCoveredconditionals() );
-        parent.setCoveredmethods( parent.getCoveredmethods() + child.getCoveredmethods() );
-        parent.setCoveredelements( parent.getCoveredelements() + child.getCoveredelements() );
+        String path = new File( filePath ).getCanonicalPath();
+        SourceBlame sourceBlame = sourceBlames.get( path );
+        if ( sourceBlame != null && sourceBlame.references.decrementAndGet() == 0 ) {
+            sourceBlames.remove( path );
+        }
     }
 
-    private Properties info( String filePath ) throws Exception {
+    /**
+     * @return The path of the file relative to the working copy with
+     * <code>/</code> separators, or its canonical path if it is outside the
+     * working copy.
+     */
+    private String relativePath( String filePath ) throws IOException {
 
-        List<String> cmd = new LinkedList<String>();
-        cmd.add( "svn" );
-        cmd.add( "info" );
-        if ( svnUsername != null ) {
-            cmd.add( "--username=" + svnUsername );
+        String path = new File( filePath ).getCanonicalPath();
+        if ( path.startsWith( workingCopyCanonicalPath + File.separator ) ) {
+            path = path.substring( workingCopyCanonicalPath.length() + 1 );
         }
-        cmd.add( filePath );
-
-        Properties properties = new Properties();
-        StreamConsumer streamConsumer = new InfoStreamConsumer( properties );
-        CommandLineUtils.executeCommandLine( build( cmd ), streamConsumer, streamConsumer );
-        return properties;
+        return path.replace( File.separatorChar, '/' );
     }
 
-    private List<Long> blame( String filePath ) throws Exception {
+    /**
+     * @return True if the file has uncommitted changes, or if the working copy
+     * could not be checked.
+     */
+    private boolean isModified( generated.File file ) throws IOException {
 
-        List<String> cmd = new LinkedList<String>();
-        cmd.add( "svn" );
-        cmd.add( "blame" );
-        if ( svnUsername != null ) {
-            cmd.add( "--username=" + svnUsername );
+        if ( modifiedPaths == null ) {
+            return true;
         }
-        cmd.add( filePath );
-
-        List<Long> revisions = new LinkedList<Long>();
-        StreamConsumer streamConsumer = new BlameStreamConsumer( revisions );
-        CommandLineUtils.executeCommandLine( build( cmd ), streamConsumer, streamConsumer );
-        return revisions;
+        return modifiedPaths.contains( new File( file.getPath() ).getCanonicalPath() );
     }
 
-    private long findCutoffRevision( String workingCopy ) throws Exception {
+    /**
+     * Files under the working copy which are missing from the changed path
+     * index, and not under a copied directory, have no lines newer than the
+     * cutoff and need no blame.
+     */
+    private boolean isUnchanged( String filePath ) throws IOException {
 
-        Properties properties = info( workingCopy );
+        if ( changedPaths == null ) {
+            return false;
+        }
 
-        List<String> cmd = new LinkedList<String>();
-        cmd.add( "svn" );
-        cmd.add( "checkout" );
-        if ( svnUsername != null ) {
-            cmd.add( "--username=" + svnUsername );
+        String path = new File( filePath ).getCanonicalPath();
+        if ( !path.startsWith( workingCopyCanonicalPath + File.separator ) ) {
+            return false;
         }
-        cmd.add( "-r" );
-        cmd.add( "{" + cutoffDate + "}" );
-        cmd.add( "--depth" );
-        cmd.add( "empty" );
-        cmd.add( properties.getProperty( "Repository Root" ) );
-        cmd.add( targetDirectory.getPath() );
 
-        RevisionStreamConsumer streamConsumer = new RevisionStreamConsumer();
-        CommandLineUtils.executeCommandLine( build( cmd ), streamConsumer, streamConsumer );
-        return streamConsumer.getRevision();
+        return !ChangedPaths.contains( changedPaths, path );
     }
 
-    private Commandline build( List<String> cmd ) throws CommandLineException {
+    private VcsInfo info( String filePath ) throws Exception {
 
-        Commandline commandLine = new Commandline();
-        commandLine.setExecutable( cmd.get( 0 ) );
-
-        for (int i = 1; i < cmd.size(); i++) {
-            commandLine.createArg().setValue( cmd.get( i ) );
+        long start = System.nanoTime();
+        try {
+            if ( workingCopyDatabase != null ) {
+                VcsInfo info = workingCopyDatabase.info( filePath );
+                if ( info != null ) {
+                    return info;
+                }
+            }
+            return vcsBackend.info( filePath );
+        }
+        finally {
+            executionMetrics.add( ExecutionMetrics.Phase.INFO, System.nanoTime() - start );
         }
-
-        return commandLine;
     }
 
     public void setThreads( int threadCount ) {
@@ -440,124 +1054,311 @@ public final class ReductMojo extends AbstractMojo {
         this.workingCopyPath = workingCopyPath;
     }
 
-    private final class BlameThread implements Runnable {
+    public void setCutoffDate( String cutoffDate ) {
 
-        private final Object lock = new Object();
+        this.cutoffDate = cutoffDate;
+    }
 
-        private final List<generated.Package> packages;
-        private final List<generated.Package> packagesReduced;
+    public void setVcs( String vcs ) {
 
-        private boolean finished;
+        this.vcs = vcs;
+    }
 
-        public BlameThread(List<generated.Package> packages, List<generated.Package> packagesReduced) {
+    public void setShard( String shardValue ) {
 
-            this.packages = packages;
-            this.packagesReduced = packagesReduced;
+        this.shardValue = shardValue;
+    }
+
+    public void setOriginalCopy( String originalCopy ) {
+
+        this.originalCopy = originalCopy;
+    }
+
+    public void setLookahead( int lookahead ) {
+
+        this.lookahead = lookahead;
+    }
+
+    private final class ReportHandler implements CoverageReader.Handler {
+
+        private final Report report;
+        private final BlameScheduler scheduler;
+
+        private Coverage coverage;
+        private int fileCount;
+
+        public ReportHandler(Report report, BlameScheduler scheduler) {
+
+            this.report = report;
+            this.scheduler = scheduler;
         }
 
         @Override
-        public void run() {
+        public void startProject( Coverage coverage ) throws Exception {
 
-            try {
+            this.coverage = coverage;
+            getLog().info( "Running Reductor: " + coverage.getProject().getName() );
+            for (Reduction reduction : report.reductions) {
+                reduction.reportWriter.open( coverage );
+            }
+        }
 
-                while (true) {
+        @Override
+        public boolean accept( String path ) throws Exception {
 
-                    generated.Package _package = null;
-                    generated.File file = null;
+            if ( shard != null && !shard.contains( relativePath( path ) ) ) {
+                return false;
+            }
 
-                    synchronized (packages) {
+            fileCount++;
 
-                        if ( packages.isEmpty() ) {
-                            break;
-                        }
+            // until the cutoff is resolved the blame thread checks instead
+            if ( vcsSetup.isDone() && isUnchanged( path ) ) {
+                unchangedCount.incrementAndGet();
+                releaseSourceBlame( path );
+                return false;
+            }
 
-                        _package = packages.get( 0 );
+            return true;
+        }
 
-                        List<generated.File> files = _package.getFile();
-                        file = files.remove( 0 );
+        @Override
+        public void file( String packageName, generated.File file ) throws Exception {
 
-                        if ( files.isEmpty() ) {
-                            packages.remove( 0 );
-                        }
-                    }
+            Reduction[] reductions = report.reductions;
+            PackageWriter.PackageReduction[] packageReductions = new PackageWriter.PackageReduction[reductions.length];
+            for (int i = 0; i < reductions.length; i++) {
+                packageReductions[i] = reductions[i].packageWriter.fileQueued( packageName );
+            }
 
-                    generated.File fileReduced = null;
+            // counted by accept, so it follows the order of the report
+            int order = fileCount;
 
-                    try {
-                        fileReduced = reduceFile( file );
-                    }
-                    catch (Exception e) {
-                        getLog().error( "Unable to inspect file: " + file.getName() );
-                        e.printStackTrace();
-                    }
+            long cost = blameHistory.estimate( file.getPath(), lineCount( file ) );
+            scheduler.submit( file.getName(), packageName, cost, new ReduceTask( report, packageReductions, order, file ) );
+        }
 
-                    if ( fileReduced != null ) {
-                        synchronized (packages) {
-                            generated.Package packageReduced = getPackage( _package.getName() );
-                            add( packageReduced, fileReduced );
-                        }
-                    }
-                }
+        @Override
+        public void endPackage( String packageName ) throws Exception {
+
+            for (Reduction reduction : report.reductions) {
+                reduction.packageWriter.packageParsed( packageName );
+            }
+        }
+
+        /**
+         * The report only lists the lines with coverage, so the highest line
+         * number is a closer estimate of the file length than the line count.
+         */
+        private int lineCount( generated.File file ) {
+
+            int lineCount = 0;
+            for (Line line : file.getLine()) {
+                lineCount = Math.max( lineCount, line.getNum() );
+            }
+            return lineCount;
+        }
+    }
+
+    private final class ReduceTask implements Callable<generated.File[]> {
+
+        private final Report report;
+        private final PackageWriter.PackageReduction[] packageReductions;
+        private final int order;
+        private final generated.File file;
+
+        public ReduceTask(Report report, PackageWriter.PackageReduction[] packageReductions, int order, generated.File file) {
+
+            this.report = report;
+            this.packageReductions = packageReductions;
+            this.order = order;
+            this.file = file;
+        }
+
+        @Override
+        public generated.File[] call() throws Exception {
+
+            generated.File[] filesReduced = null;
+
+            try {
+                filesReduced = reduceFile( report, file, revisionColumns.get() );
             }
             finally {
-                finished = true;
-                synchronized (lock) {
-                    lock.notify();
+                releaseSourceBlame( file.getPath() );
+                Reduction[] reductions = report.reductions;
+                for (int i = 0; i < reductions.length; i++) {
+                    generated.File fileReduced = filesReduced == null ? null : filesReduced[i];
+                    reductions[i].packageWriter.fileReduced( packageReductions[i], order, fileReduced );
                 }
             }
+
+            return filesReduced;
         }
+    }
 
-        private generated.Package getPackage( String name ) {
+    /**
+     * A single cutoff date, shared by every report.
+     */
+    private static final class Cutoff {
 
-            for (generated.Package _package : packagesReduced) {
-                if ( name.equals( _package.getName() ) ) {
-                    return _package;
-                }
+        private final String label;
+        private final String date;
+
+        private long revision;
+
+        public Cutoff(String label, String date) {
+
+            this.label = label;
+            this.date = date;
+        }
+    }
+
+    /**
+     * A single input report, with one reduction per cutoff.
+     */
+    private final class Report {
+
+        private final int index;
+        private final File file;
+        private final Reduction[] reductions;
+
+        private ReportHandler reportHandler;
+
+        public Report(int index, File file) {
+
+            this.index = index;
+            this.file = file;
+
+            reductions = new Reduction[cutoffs.length];
+            for (int i = 0; i < cutoffs.length; i++) {
+                reductions[i] = new Reduction( this, cutoffs[i] );
             }
-            generated.Package _package = new generated.Package();
-            _package.setMetrics( new PackageMetrics() );
-            _package.setName( name );
-            packagesReduced.add( _package );
-            return _package;
         }
 
-        private void waitUntilFinished() {
+        /**
+         * @return The suffix of the files kept for this report under the
+         * target directory, empty for the first report.
+         */
+        private String suffix() {
+
+            return index == 0 ? "" : "-" + index;
+        }
 
-            if ( finished ) {
+        private void close() throws Exception {
+
+            Coverage coverage = reportHandler.coverage;
+            if ( coverage == null || coverage.getProject() == null ) {
+                getLog().info( "No project found in: " + file.getPath() );
+                for (Reduction reduction : reductions) {
+                    reduction.abort();
+                }
                 return;
             }
 
-            synchronized (lock) {
-                while (!finished) {
-                    try {
-                        lock.wait();
-                    }
-                    catch (InterruptedException e) {
-                        // do nothing
-                    }
-                }
+            int fileCount = reportHandler.fileCount;
+            for (Reduction reduction : reductions) {
+                reduction.close( fileCount == 0 );
+            }
+
+            if ( fileCount == 0 ) {
+                getLog().info( "No files found in: " + file.getPath() );
             }
         }
     }
 
-    private static class LineComparator implements Comparator<Line> {
+    /**
+     * The output of a single report and cutoff date.
+     */
+    private final class Reduction {
 
-        @Override
-        public int compare( Line line1, Line line2 ) {
+        private final Report report;
+        private final Cutoff cutoff;
+
+        private File reducedFile;
+        private ReducedReportWriter reportWriter;
+        private PackageWriter packageWriter;
+        private ReductionManifest reductionManifest;
+
+        public Reduction(Report report, Cutoff cutoff) {
+
+            this.report = report;
+            this.cutoff = cutoff;
+        }
+
+        private void open() throws IOException {
+
+            reducedFile = reducedFile( report.file, shardLabel( cutoff.label ) );
+            getLog().info( "Saving new coverage report to: " + reducedFile.getPath() );
+            reportWriter = new ReducedReportWriter( reducedFile, formatOutput );
+            packageWriter = new PackageWriter( reportWriter, executionMetrics );
 
-            int num1 = line1.getNum();
-            int num2 = line2.getNum();
-            if ( num1 != num2 ) {
-                return num1 - num2;
+            if ( reductionManifestEnabled ) {
+                String name = "reduction-manifest" + report.suffix() + ( cutoff.label == null ? "" : "-" + cutoff.label );
+                reductionManifest = new ReductionManifest( new File( targetDirectory, name ) );
+                reductionManifest.load();
             }
+        }
+
+        private void close( boolean empty ) throws Exception {
+
+            long start = System.nanoTime();
+            reportWriter.close( packageWriter.getProjectMetrics() );
+            executionMetrics.add( ExecutionMetrics.Phase.MARSHAL, System.nanoTime() - start );
+
+            if ( empty ) {
+                reducedFile.delete();
+            }
+
+            if ( reductionManifest != null ) {
+                reductionManifest.save();
+            }
+        }
+
+        private void abort() {
 
-            Construct type1 = line1.getType();
-            Construct type2 = line2.getType();
-            if ( type1 != type2 ) {
-                return type1.ordinal() - type2.ordinal();
+            reportWriter.abort();
+            if ( reductionManifest != null ) {
+                reductionManifest.abort();
+            }
+        }
+    }
+
+    /**
+     * The info and blame of a source file listed by more than one report. The
+     * first report to reach the file fetches them, and the others wait for
+     * and reuse the result. The entry is dropped once every report listing
+     * the file is done with it.
+     */
+    private final class SourceBlame {
+
+        private final AtomicInteger references;
+
+        private VcsInfo info;
+        private long[] revisions;
+
+        public SourceBlame(int references) {
+
+            this.references = new AtomicInteger( references );
+        }
+
+        private synchronized VcsInfo info( String filePath ) throws Exception {
+
+            if ( info == null ) {
+                info = ReductMojo.this.info( filePath );
+            }
+            return info;
+        }
+
+        private synchronized void blame( String filePath, boolean modified, RevisionColumn revisionColumn ) throws Exception {
+
+            if ( revisions == null ) {
+                ReductMojo.this.blame( filePath, info, modified, revisionColumn );
+                revisions = revisionColumn.toArray();
+                return;
             }
 
-            return 1;
+            revisionColumn.clear();
+            revisionColumn.addAll( revisions );
         }
     }
 }
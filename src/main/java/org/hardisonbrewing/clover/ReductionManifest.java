@@ -0,0 +1,330 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.namespace.QName;
+
+import org.hardisonbrewing.jaxb.JAXB;
+
+/**
+ * Remembers the inputs and the result of the last reduction of each file.
+ * A file whose last changed revision, report entry and cutoff revision all
+ * match the previous run reuses the previous result without being blamed.
+ * <p>
+ * The results are kept on disk as <code>&lt;file&gt;</code> fragments,
+ * followed by an index of the inputs and the offset of each fragment, so
+ * only the index is held in memory. A reused fragment is copied from the
+ * previous manifest to the new one without being parsed.
+ * <p>
+ * Only the files reduced by the current run are saved, so files which left
+ * the report are dropped from the manifest.
+ */
+public final class ReductionManifest {
+
+    private static final int MAGIC = 0x4352524D; // CRRM
+    private static final int VERSION = 3;
+    private static final int HEADER_LENGTH = 5;
+
+    private static final QName FILE = new QName( "file" );
+
+    private final File file;
+    private final File tempFile;
+    private final Map<String, Entry> previous = new HashMap<String, Entry>();
+    private final Map<String, Entry> current = new ConcurrentHashMap<String, Entry>();
+
+    private FileChannel previousChannel;
+    private FileChannel currentChannel;
+    private long position;
+
+    public ReductionManifest(File file) {
+
+        this.file = file;
+        tempFile = new File( file.getPath() + ".tmp" );
+    }
+
+    /**
+     * Reads the index of the previous manifest and starts the new one, which
+     * replaces it on {@link #save()}.
+     */
+    public void load() throws IOException {
+
+        loadPrevious();
+
+        currentChannel = new RandomAccessFile( tempFile, "rw" ).getChannel();
+        currentChannel.truncate( 0 );
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        DataOutputStream dataOutputStream = new DataOutputStream( outputStream );
+        dataOutputStream.writeInt( MAGIC );
+        dataOutputStream.writeByte( VERSION );
+        write( outputStream.toByteArray() );
+    }
+
+    private void loadPrevious() {
+
+        if ( !file.exists() ) {
+            return;
+        }
+
+        try {
+
+            previousChannel = new RandomAccessFile( file, "r" ).getChannel();
+
+            DataInputStream dataInputStream = new DataInputStream( new ByteArrayInputStream( read( 0, HEADER_LENGTH ) ) );
+            if ( dataInputStream.readInt() != MAGIC || dataInputStream.readByte() != VERSION ) {
+                closePrevious();
+                return;
+            }
+
+            long size = previousChannel.size();
+            dataInputStream = new DataInputStream( new ByteArrayInputStream( read( size - 8, 8 ) ) );
+            long indexOffset = dataInputStream.readLong();
+
+            InputStream inputStream = Channels.newInputStream( previousChannel.position( indexOffset ) );
+            dataInputStream = new DataInputStream( new BufferedInputStream( inputStream ) );
+
+            int count = dataInputStream.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = dataInputStream.readUTF();
+                long lastChangedRevision = dataInputStream.readLong();
+                long fileHash = dataInputStream.readLong();
+                long cutoffRevision = dataInputStream.readLong();
+                long offset = dataInputStream.readLong();
+                int length = dataInputStream.readInt();
+                previous.put( path, new Entry( lastChangedRevision, fileHash, cutoffRevision, offset, length ) );
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            // start over without a manifest
+            previous.clear();
+            closePrevious();
+        }
+    }
+
+    /**
+     * Writes the index and replaces the previous manifest.
+     */
+    public void save() throws IOException {
+
+        long indexOffset = position;
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        DataOutputStream dataOutputStream = new DataOutputStream( outputStream );
+
+        dataOutputStream.writeInt( current.size() );
+        for (Map.Entry<String, Entry> mapEntry : current.entrySet()) {
+            Entry entry = mapEntry.getValue();
+            dataOutputStream.writeUTF( mapEntry.getKey() );
+            dataOutputStream.writeLong( entry.lastChangedRevision );
+            dataOutputStream.writeLong( entry.fileHash );
+            dataOutputStream.writeLong( entry.cutoffRevision );
+            dataOutputStream.writeLong( entry.offset );
+            dataOutputStream.writeInt( entry.length );
+        }
+        dataOutputStream.writeLong( indexOffset );
+
+        try {
+            write( outputStream.toByteArray() );
+            currentChannel.force( false );
+            currentChannel.close();
+            closePrevious();
+            Files.move( tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        }
+        finally {
+            abort();
+        }
+    }
+
+    /**
+     * Discards the new manifest, keeping the previous one.
+     */
+    public void abort() {
+
+        closePrevious();
+        if ( currentChannel != null ) {
+            try {
+                currentChannel.close();
+            }
+            catch (IOException e) {
+                // do nothing
+            }
+        }
+        tempFile.delete();
+    }
+
+    /**
+     * Checks the inputs of the previous reduction of the file, copying its
+     * result over to the manifest being saved when they match.
+     */
+    public boolean contains( String path, long lastChangedRevision, long fileHash, long cutoffRevision ) throws IOException {
+
+        Entry entry = previous.get( path );
+        if ( entry == null || entry.lastChangedRevision != lastChangedRevision || entry.fileHash != fileHash || entry.cutoffRevision != cutoffRevision ) {
+            return false;
+        }
+
+        long offset = entry.length == -1 ? -1 : write( read( entry.offset, entry.length ) );
+        current.put( path, new Entry( lastChangedRevision, fileHash, cutoffRevision, offset, entry.length ) );
+        return true;
+    }
+
+    /**
+     * @return The result of the previous reduction of the file, or null if no
+     * lines survived it.
+     */
+    public generated.File get( String path ) throws Exception {
+
+        Entry entry = previous.get( path );
+        if ( entry == null || entry.length == -1 ) {
+            return null;
+        }
+
+        InputStream inputStream = new ByteArrayInputStream( read( entry.offset, entry.length ) );
+        return JAXB.unmarshal( JAXB.createXMLStreamReader( inputStream ), generated.File.class );
+    }
+
+    public void put( String path, long lastChangedRevision, long fileHash, long cutoffRevision, generated.File reduced ) throws Exception {
+
+        long offset = -1;
+        int length = -1;
+
+        if ( reduced != null ) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            JAXB.marshalFragment( outputStream, element( reduced ) );
+            byte[] bytes = outputStream.toByteArray();
+            offset = write( bytes );
+            length = bytes.length;
+        }
+
+        current.put( path, new Entry( lastChangedRevision, fileHash, cutoffRevision, offset, length ) );
+    }
+
+    /**
+     * @return An FNV-1a hash of the serialized report entry of the file,
+     * which covers its attributes, metrics, classes and lines.
+     */
+    public static long hash( generated.File file ) throws Exception {
+
+        HashOutputStream outputStream = new HashOutputStream();
+        JAXB.marshalFragment( outputStream, element( file ) );
+        return outputStream.hash;
+    }
+
+    private static JAXBElement<generated.File> element( generated.File file ) {
+
+        return new JAXBElement<generated.File>( FILE, generated.File.class, file );
+    }
+
+    /**
+     * @return The offset the bytes were appended at in the new manifest.
+     */
+    private synchronized long write( byte[] bytes ) throws IOException {
+
+        long offset = position;
+        ByteBuffer byteBuffer = ByteBuffer.wrap( bytes );
+        while (byteBuffer.hasRemaining()) {
+            position += currentChannel.write( byteBuffer, position );
+        }
+        return offset;
+    }
+
+    private byte[] read( long offset, int length ) throws IOException {
+
+        ByteBuffer byteBuffer = ByteBuffer.allocate( length );
+        while (byteBuffer.hasRemaining()) {
+            if ( previousChannel.read( byteBuffer, offset + byteBuffer.position() ) == -1 ) {
+                throw new IOException( "Unexpected end of manifest: " + file.getPath() );
+            }
+        }
+        return byteBuffer.array();
+    }
+
+    private void closePrevious() {
+
+        if ( previousChannel == null ) {
+            return;
+        }
+        try {
+            previousChannel.close();
+        }
+        catch (IOException e) {
+            // do nothing
+        }
+        previousChannel = null;
+    }
+
+    private static final class HashOutputStream extends OutputStream {
+
+        private long hash = Shard.FNV_OFFSET;
+
+        @Override
+        public void write( int b ) {
+
+            hash = Shard.fnv( hash, b );
+        }
+
+        @Override
+        public void write( byte[] b, int off, int len ) {
+
+            for (int i = off; i < off + len; i++) {
+                hash = Shard.fnv( hash, b[i] );
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final long lastChangedRevision;
+        private final long fileHash;
+        private final long cutoffRevision;
+        private final long offset;
+        private final int length;
+
+        /**
+         * @param length The length of the reduced fragment, or -1 if no lines
+         * survived the reduction.
+         */
+        public Entry(long lastChangedRevision, long fileHash, long cutoffRevision, long offset, int length) {
+
+            this.lastChangedRevision = lastChangedRevision;
+            this.fileHash = fileHash;
+            this.cutoffRevision = cutoffRevision;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
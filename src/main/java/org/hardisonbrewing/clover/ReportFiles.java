@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.plexus.util.DirectoryScanner;
+
+/**
+ * Resolves a comma separated list of report paths, each of which may be a
+ * pattern such as <code>**&#47;target/site/clover/clover.xml</code>.
+ */
+public final class ReportFiles {
+
+    private ReportFiles() {
+
+        // do nothing
+    }
+
+    /**
+     * @param excludes Patterns of files for the patterns to leave out.
+     * @return The files in the order listed, patterns sorted by path. A file
+     * matched more than once is only returned the first time.
+     * @throws FileNotFoundException If a path does not exist or a pattern
+     * matches nothing.
+     */
+    public static List<File> find( String paths, String[] excludes ) throws IOException {
+
+        Map<String, File> files = new LinkedHashMap<String, File>();
+
+        for (String path : paths.split( "," )) {
+
+            path = path.trim();
+            if ( path.length() == 0 ) {
+                continue;
+            }
+
+            List<File> matches;
+            if ( path.indexOf( '*' ) == -1 && path.indexOf( '?' ) == -1 ) {
+                matches = new ArrayList<File>( 1 );
+                matches.add( new File( path ) );
+            }
+            else {
+                matches = match( path, excludes );
+            }
+
+            if ( matches.isEmpty() || !matches.get( 0 ).exists() ) {
+                throw new FileNotFoundException( path );
+            }
+
+            for (File file : matches) {
+                String canonicalPath = file.getCanonicalPath();
+                if ( !files.containsKey( canonicalPath ) ) {
+                    files.put( canonicalPath, file );
+                }
+            }
+        }
+
+        return new ArrayList<File>( files.values() );
+    }
+
+    private static List<File> match( String pattern, String[] excludes ) {
+
+        pattern = pattern.replace( '\\', '/' );
+
+        int wildcard = pattern.indexOf( '*' );
+        if ( wildcard == -1 || ( pattern.indexOf( '?' ) != -1 && pattern.indexOf( '?' ) < wildcard ) ) {
+            wildcard = pattern.indexOf( '?' );
+        }
+
+        int indexOf = pattern.lastIndexOf( '/', wildcard );
+        File basedir = new File( indexOf == -1 ? "." : pattern.substring( 0, indexOf + 1 ) );
+
+        List<File> files = new ArrayList<File>();
+        if ( !basedir.isDirectory() ) {
+            return files;
+        }
+
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir( basedir );
+        scanner.setIncludes( new String[] { pattern.substring( indexOf + 1 ) } );
+        if ( excludes != null ) {
+            scanner.setExcludes( excludes );
+        }
+        scanner.scan();
+
+        String[] paths = scanner.getIncludedFiles();
+        Arrays.sort( paths );
+        for (String path : paths) {
+            files.add( new File( basedir, path ) );
+        }
+        return files;
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Retries the operations of another backend with a jittered exponential
+ * backoff, and runs every attempt through a {@link CircuitBreaker} shared by
+ * all blame threads, so a failing server is given room to recover rather
+ * than being hit by every thread at once.
+ * <p>
+ * Only timeouts, I/O errors and the svn errors of an unreachable or busy
+ * server are retried. Any other failure, such as an unversioned or binary
+ * file or a path missing from the revision, fails the same way every time,
+ * so it is thrown at once and not counted against the server.
+ */
+public final class RetryingVcsBackend implements VcsBackend {
+
+    private static final long MAXIMUM_DELAY = 30 * 1000L;
+
+    private static final Pattern ERROR_CODE = Pattern.compile( "\\bE\\d{6}\\b" );
+
+    private static final Set<String> TRANSIENT_ERROR_CODES = new HashSet<String>( Arrays.asList( //
+            "E000104", // connection reset by peer
+            "E000110", // connection timed out
+            "E000111", // connection refused
+            "E120104", // connection reset, reported by serf
+            "E120108", // server closed the connection, reported by serf
+            "E170013", // unable to connect to the repository
+            "E175002", // HTTP request failed, including 5xx responses
+            "E175012", // HTTP connection timed out
+            "E200033", // working copy database is busy
+            "E210002", // svn:// connection closed unexpectedly
+            "E730054", // connection reset, on Windows
+            "E730060" // connection timed out, on Windows
+    ) );
+
+    private final VcsBackend vcsBackend;
+    private final Log log;
+    private final int retries;
+    private final long retryDelay;
+    private final CircuitBreaker circuitBreaker;
+
+    private final AtomicInteger retryCount = new AtomicInteger();
+    private final AtomicInteger timeoutCount = new AtomicInteger();
+    private final Set<String> retriedPaths = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+
+    /**
+     * @param retries The number of times a failed operation is tried again.
+     * @param retryDelay Milliseconds to wait before the first retry, doubled
+     * for each further retry. The actual wait is a random time up to this.
+     */
+    public RetryingVcsBackend(VcsBackend vcsBackend, Log log, int retries, long retryDelay, CircuitBreaker circuitBreaker) {
+
+        this.vcsBackend = vcsBackend;
+        this.log = log;
+        this.retries = retries;
+        this.retryDelay = retryDelay;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public VcsInfo info( final String path ) throws Exception {
+
+        return retry( path, true, new Operation<VcsInfo>() {
+
+            @Override
+            public VcsInfo run() throws Exception {
+
+                return vcsBackend.info( path );
+            }
+        } );
+    }
+
+    @Override
+    public void blame( final String path, final RevisionColumn revisions ) throws Exception {
+
+        retry( path, true, new Operation<Void>() {
+
+            @Override
+            public Void run() throws Exception {
+
+                vcsBackend.blame( path, revisions );
+                return null;
+            }
+        } );
+    }
+
+    @Override
+    public long findCutoffRevision( final String workingCopy, final String cutoffDate ) throws Exception {
+
+        return retry( workingCopy, false, new Operation<Long>() {
+
+            @Override
+            public Long run() throws Exception {
+
+                return vcsBackend.findCutoffRevision( workingCopy, cutoffDate );
+            }
+        } );
+    }
+
+    @Override
+    public Set<String> findChangedPaths( final String workingCopy, final long cutoffRevision ) throws Exception {
+
+        return retry( workingCopy, false, new Operation<Set<String>>() {
+
+            @Override
+            public Set<String> run() throws Exception {
+
+                return vcsBackend.findChangedPaths( workingCopy, cutoffRevision );
+            }
+        } );
+    }
+
+    @Override
+    public Set<String> findModifiedPaths( final String workingCopy ) throws Exception {
+
+        return retry( workingCopy, false, new Operation<Set<String>>() {
+
+            @Override
+            public Set<String> run() throws Exception {
+
+                return vcsBackend.findModifiedPaths( workingCopy );
+            }
+        } );
+    }
+
+    @Override
+    public void close() {
+
+        vcsBackend.close();
+    }
+
+    /**
+     * @return The number of operations tried again.
+     */
+    public int getRetryCount() {
+
+        return retryCount.get();
+    }
+
+    /**
+     * @return The number of operations killed for running past their timeout.
+     */
+    public int getTimeoutCount() {
+
+        return timeoutCount.get();
+    }
+
+    /**
+     * @return The paths which needed at least one retry.
+     */
+    public Set<String> getRetriedPaths() {
+
+        return retriedPaths;
+    }
+
+    /**
+     * @param file True if the path is a file of the report, which is counted
+     * in {@link #getRetriedPaths()}, rather than the working copy.
+     */
+    private <V> V retry( String path, boolean file, Operation<V> operation ) throws Exception {
+
+        for (int attempt = 0;; attempt++) {
+
+            circuitBreaker.acquire();
+
+            try {
+                V result = operation.run();
+                circuitBreaker.success();
+                return result;
+            }
+            catch (InterruptedException | CancellationException | FileNotFoundException e) {
+                // cancelled, or nothing a retry would change
+                circuitBreaker.release();
+                throw e;
+            }
+            catch (Exception e) {
+
+                if ( !isTransient( e ) ) {
+                    circuitBreaker.release();
+                    throw e;
+                }
+
+                if ( e instanceof ProcessTimeoutException ) {
+                    timeoutCount.incrementAndGet();
+                }
+
+                if ( circuitBreaker.failure() ) {
+                    log.warn( "Too many failures, holding back every thread for a while" );
+                }
+
+                if ( attempt >= retries ) {
+                    throw e;
+                }
+
+                retryCount.incrementAndGet();
+                if ( file ) {
+                    retriedPaths.add( path );
+                }
+
+                long delay = Math.min( MAXIMUM_DELAY, retryDelay << Math.min( attempt, 16 ) );
+                delay = delay <= 0 ? 0 : ThreadLocalRandom.current().nextLong( delay + 1 );
+                log.debug( "Retrying " + path + " in " + delay + "ms: " + e.getMessage() );
+                Thread.sleep( delay );
+            }
+        }
+    }
+
+    /**
+     * @return True if trying again may succeed.
+     */
+    static boolean isTransient( Exception e ) {
+
+        if ( e instanceof IOException ) {
+            return !( e instanceof FileNotFoundException );
+        }
+
+        for (Throwable throwable = e; throwable != null; throwable = throwable.getCause()) {
+            String message = throwable.getMessage();
+            if ( message == null ) {
+                continue;
+            }
+            Matcher matcher = ERROR_CODE.matcher( message );
+            while (matcher.find()) {
+                if ( TRANSIENT_ERROR_CODES.contains( matcher.group() ) ) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private interface Operation<V> {
+
+        public V run() throws Exception;
+    }
+}
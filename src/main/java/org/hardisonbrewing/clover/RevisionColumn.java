@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.util.Arrays;
+
+/**
+ * Growable column of the last changed revision of each source line, indexed
+ * by line number. A column is meant to be cleared and reused by the same
+ * thread for every file, so once it has grown to the largest file no further
+ * allocation takes place.
+ */
+public final class RevisionColumn {
+
+    /**
+     * The revision of a line which is modified in the working copy but not
+     * committed, newer than any cutoff.
+     */
+    public static final long LOCAL_MODIFICATION = Long.MAX_VALUE;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] revisions = new long[INITIAL_CAPACITY];
+    private int size;
+
+    public void add( long revision ) {
+
+        if ( size == revisions.length ) {
+            revisions = Arrays.copyOf( revisions, size << 1 );
+        }
+        revisions[size++] = revision;
+    }
+
+    /**
+     * Sets the revision of a line, growing the column if needed. Lines skipped
+     * over are left at revision 0.
+     * 
+     * @param lineNumber The 1-based line number, as used by Clover.
+     */
+    public void set( int lineNumber, long revision ) {
+
+        if ( lineNumber < 1 ) {
+            throw new IndexOutOfBoundsException( "Line: " + lineNumber );
+        }
+
+        if ( lineNumber > revisions.length ) {
+            revisions = Arrays.copyOf( revisions, Math.max( lineNumber, revisions.length << 1 ) );
+        }
+
+        if ( lineNumber > size ) {
+            Arrays.fill( revisions, size, lineNumber - 1, 0L );
+            size = lineNumber;
+        }
+
+        revisions[lineNumber - 1] = revision;
+    }
+
+    /**
+     * @param lineNumber The 1-based line number, as used by Clover.
+     */
+    public long get( int lineNumber ) {
+
+        if ( lineNumber < 1 || lineNumber > size ) {
+            throw new IndexOutOfBoundsException( "Line: " + lineNumber + ", Lines: " + size );
+        }
+        return revisions[lineNumber - 1];
+    }
+
+    /**
+     * @return True if any line is {@link #LOCAL_MODIFICATION}.
+     */
+    public boolean hasLocalModifications() {
+
+        for (int i = 0; i < size; i++) {
+            if ( revisions[i] == LOCAL_MODIFICATION ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void addAll( long[] revisions ) {
+
+        if ( size + revisions.length > this.revisions.length ) {
+            this.revisions = Arrays.copyOf( this.revisions, Math.max( size + revisions.length, this.revisions.length << 1 ) );
+        }
+        System.arraycopy( revisions, 0, this.revisions, size, revisions.length );
+        size += revisions.length;
+    }
+
+    /**
+     * @return A copy of the revisions, trimmed to the number of lines.
+     */
+    public long[] toArray() {
+
+        return Arrays.copyOf( revisions, size );
+    }
+
+    public int size() {
+
+        return size;
+    }
+
+    public void clear() {
+
+        size = 0;
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * A persistent, sorted index of the commit date of every revision seen so
+ * far. The revision in effect at a date is known without asking the server
+ * once the index holds two consecutive revisions committed on either side of
+ * that date.
+ */
+public final class RevisionIndex {
+
+    private static final int MAGIC = 0x43525249; // CRRI
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final String repositoryRoot;
+
+    private long[] dates = new long[16];
+    private long[] revisions = new long[16];
+    private int size;
+
+    private boolean modified;
+
+    public RevisionIndex(File file, String repositoryRoot) {
+
+        this.file = file;
+        this.repositoryRoot = repositoryRoot;
+    }
+
+    public void load() {
+
+        if ( !file.exists() ) {
+            return;
+        }
+
+        InputStream inputStream = null;
+
+        try {
+
+            inputStream = new BufferedInputStream( new FileInputStream( file ) );
+            DataInputStream dataInputStream = new DataInputStream( inputStream );
+
+            if ( dataInputStream.readInt() != MAGIC || dataInputStream.readByte() != VERSION ) {
+                return;
+            }
+
+            // the index belongs to another repository
+            if ( !repositoryRoot.equals( dataInputStream.readUTF() ) ) {
+                return;
+            }
+
+            int count = dataInputStream.readInt();
+            for (int i = 0; i < count; i++) {
+                add( dataInputStream.readLong(), dataInputStream.readLong() );
+            }
+        }
+        catch (IOException e) {
+            // start over with an empty index
+            size = 0;
+        }
+        finally {
+            IOUtil.close( inputStream );
+        }
+
+        modified = false;
+    }
+
+    public void save() throws IOException {
+
+        if ( !modified ) {
+            return;
+        }
+
+        File temp = new File( file.getPath() + ".tmp" );
+        OutputStream outputStream = null;
+
+        try {
+
+            outputStream = new BufferedOutputStream( new FileOutputStream( temp ) );
+            DataOutputStream dataOutputStream = new DataOutputStream( outputStream );
+
+            dataOutputStream.writeInt( MAGIC );
+            dataOutputStream.writeByte( VERSION );
+            dataOutputStream.writeUTF( repositoryRoot );
+            dataOutputStream.writeInt( size );
+
+            for (int i = 0; i < size; i++) {
+                dataOutputStream.writeLong( dates[i] );
+                dataOutputStream.writeLong( revisions[i] );
+            }
+
+            dataOutputStream.flush();
+        }
+        finally {
+            IOUtil.close( outputStream );
+        }
+
+        file.delete();
+        temp.renameTo( file );
+        modified = false;
+    }
+
+    /**
+     * @param date The date in milliseconds since the epoch.
+     */
+    public void add( long date, long revision ) {
+
+        int index = Arrays.binarySearch( revisions, 0, size, revision );
+        if ( index >= 0 ) {
+            return;
+        }
+
+        index = -( index + 1 );
+
+        if ( size == revisions.length ) {
+            dates = Arrays.copyOf( dates, size * 2 );
+            revisions = Arrays.copyOf( revisions, size * 2 );
+        }
+
+        System.arraycopy( dates, index, dates, index + 1, size - index );
+        System.arraycopy( revisions, index, revisions, index + 1, size - index );
+        dates[index] = date;
+        revisions[index] = revision;
+        size++;
+
+        modified = true;
+    }
+
+    /**
+     * @param date The date in milliseconds since the epoch.
+     * @return The last revision committed at or before the date, or -1 if the
+     * index cannot tell.
+     */
+    public long find( long date ) {
+
+        // revisions are sorted, and so are their dates
+        int low = 0;
+        int high = size - 1;
+
+        while (low <= high) {
+            int mid = ( low + high ) >>> 1;
+            if ( dates[mid] <= date ) {
+                low = mid + 1;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+
+        // high is the last revision at or before the date, low the first after
+        if ( high < 0 || low >= size ) {
+            return -1;
+        }
+        if ( revisions[low] != revisions[high] + 1 ) {
+            return -1;
+        }
+        return revisions[high];
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+/**
+ * One of a number of equal parts of a report, so a reduction can be spread
+ * over several processes or agents and put back together by the
+ * <code>merge</code> goal. Files are assigned by an FNV-1a hash of their path
+ * relative to the working copy, so every agent agrees on the split wherever
+ * it checked the working copy out to.
+ */
+public final class Shard {
+
+    static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int index;
+    private final int count;
+
+    /**
+     * @param index The shard, from 1 to <code>count</code>.
+     */
+    public Shard(int index, int count) {
+
+        if ( count < 1 || index < 1 || index > count ) {
+            throw new IllegalArgumentException( index + "/" + count );
+        }
+
+        this.index = index;
+        this.count = count;
+    }
+
+    /**
+     * @param value The shard as <code>index/count</code>, e.g. <code>2/4</code>.
+     * @return The shard, or null if the value is not valid.
+     */
+    public static Shard parse( String value ) {
+
+        int indexOf = value.indexOf( '/' );
+        if ( indexOf == -1 ) {
+            return null;
+        }
+
+        try {
+            int index = Integer.parseInt( value.substring( 0, indexOf ).trim() );
+            int count = Integer.parseInt( value.substring( indexOf + 1 ).trim() );
+            return new Shard( index, count );
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param path The path of the file relative to the working copy, with
+     * <code>/</code> separators.
+     */
+    public boolean contains( String path ) {
+
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt( i );
+            hash = fnv( hash, c );
+            hash = fnv( hash, c >>> 8 );
+        }
+        return ( hash & Long.MAX_VALUE ) % count == index - 1;
+    }
+
+    /**
+     * Adds the low byte of the value to an FNV-1a hash started from
+     * {@link #FNV_OFFSET}.
+     */
+    static long fnv( long hash, int value ) {
+
+        return ( hash ^ ( value & 0xFF ) ) * FNV_PRIME;
+    }
+
+    /**
+     * @return The label added to the names of the partial reports.
+     */
+    public String getLabel() {
+
+        return "shard" + index + "of" + count;
+    }
+
+    @Override
+    public String toString() {
+
+        return index + "/" + count;
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.hardisonbrewing.jaxb.JAXB;
+
+/**
+ * Collects the files whose contents are modified in the working copy from
+ * <code>svn status --xml</code> output. Property changes do not affect blame
+ * and are ignored.
+ */
+public final class StatusOutputParser implements ProcessExecutor.OutputParser {
+
+    private static final String ENTRY = "entry";
+    private static final String WC_STATUS = "wc-status";
+
+    private final Set<String> paths;
+
+    /**
+     * @param paths Receives the canonical path of each modified file.
+     */
+    public StatusOutputParser(Set<String> paths) {
+
+        this.paths = paths;
+    }
+
+    @Override
+    public void parse( InputStream inputStream ) throws IOException {
+
+        try {
+            XMLStreamReader reader = JAXB.createXMLStreamReader( inputStream );
+            try {
+                parse( reader );
+            }
+            finally {
+                reader.close();
+            }
+        }
+        catch (XMLStreamException e) {
+            throw new IOException( "Unable to parse svn status output", e );
+        }
+    }
+
+    private void parse( XMLStreamReader reader ) throws XMLStreamException, IOException {
+
+        String path = null;
+
+        while (reader.hasNext()) {
+
+            if ( reader.next() != XMLStreamConstants.START_ELEMENT ) {
+                continue;
+            }
+
+            String localName = reader.getLocalName();
+            if ( ENTRY.equals( localName ) ) {
+                path = reader.getAttributeValue( null, "path" );
+            }
+            else if ( WC_STATUS.equals( localName ) && path != null ) {
+                if ( isModified( reader.getAttributeValue( null, "item" ) ) ) {
+                    paths.add( new File( path ).getCanonicalPath() );
+                }
+                path = null;
+            }
+        }
+    }
+
+    /**
+     * @param item The text status of the entry.
+     */
+    public static boolean isModified( String item ) {
+
+        return "modified".equals( item ) || "merged".equals( item ) || "conflicted".equals( item ) || "replaced".equals( item );
+    }
+}
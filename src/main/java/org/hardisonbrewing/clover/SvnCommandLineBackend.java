@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+/**
+ * Runs the <code>svn</code> command line client for every operation. Commands
+ * run with <code>--non-interactive</code>, so a missing credential fails
+ * instead of waiting on a prompt nobody will answer.
+ */
+public final class SvnCommandLineBackend implements VcsBackend {
+
+    private final String executable;
+    private final String username;
+    private final File targetDirectory;
+    private final long timeout;
+
+    /**
+     * @param timeout Milliseconds each command may run before it is killed,
+     * or 0 for no limit.
+     */
+    public SvnCommandLineBackend(String username, File targetDirectory, long timeout) {
+
+        this( "svn", username, targetDirectory, timeout );
+    }
+
+    /**
+     * @param executable The <code>svn</code> client to run.
+     */
+    SvnCommandLineBackend(String executable, String username, File targetDirectory, long timeout) {
+
+        this.executable = executable;
+        this.username = username;
+        this.targetDirectory = targetDirectory;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public VcsInfo info( String path ) throws Exception {
+
+        Properties properties = properties( path );
+        long revision = Long.parseLong( properties.getProperty( "Revision" ) );
+        long lastChangedRevision = Long.parseLong( properties.getProperty( "Last Changed Rev" ) );
+        String repositoryRoot = properties.getProperty( "Repository Root" );
+        return new VcsInfo( revision, lastChangedRevision, repositoryPath( properties ), repositoryRoot );
+    }
+
+    private Properties properties( String path ) throws Exception {
+
+        List<String> cmd = command( "info" );
+        cmd.add( path );
+
+        Properties properties = new Properties();
+        StreamConsumer streamConsumer = new InfoStreamConsumer( properties );
+        ProcessExecutor.execute( cmd, null, streamConsumer, timeout );
+        return properties;
+    }
+
+    private String repositoryPath( Properties properties ) throws IOException {
+
+        String url = properties.getProperty( "URL" );
+        String repositoryRoot = properties.getProperty( "Repository Root" );
+        if ( url.startsWith( repositoryRoot ) ) {
+            url = url.substring( repositoryRoot.length() );
+        }
+        return ChangedPaths.decode( url );
+    }
+
+    @Override
+    public void blame( String path, RevisionColumn revisions ) throws Exception {
+
+        List<String> cmd = command( "blame" );
+        cmd.add( path );
+
+        revisions.clear();
+        ProcessExecutor.executeBytes( cmd, null, new BlameOutputParser( revisions ), timeout );
+    }
+
+    /**
+     * Answers from the revision index when it already brackets the cutoff.
+     * Otherwise logs the first two revisions from the cutoff onwards, which
+     * are the answer and the revision after it, and adds them to the index.
+     */
+    @Override
+    public long findCutoffRevision( String workingCopy, String cutoffDate ) throws Exception {
+
+        VcsInfo info = info( workingCopy );
+
+        RevisionIndex revisionIndex = new RevisionIndex( new File( targetDirectory, "revision-index" ), info.getRepositoryRoot() );
+        revisionIndex.load();
+
+        long revision = -1;
+        try {
+            revision = revisionIndex.find( CutoffDate.parse( cutoffDate ) );
+        }
+        catch (IllegalArgumentException e) {
+            // not exactly one of our formats, let svn read it
+        }
+        if ( revision != -1 ) {
+            return revision;
+        }
+
+        List<String> cmd = command( "log" );
+        cmd.add( "--xml" );
+        cmd.add( "--quiet" );
+        cmd.add( "-r" );
+        cmd.add( "{" + cutoffDate + "}:HEAD" );
+        cmd.add( "-l" );
+        cmd.add( "2" );
+        cmd.add( info.getRepositoryRoot() );
+
+        LogDateOutputParser outputParser = new LogDateOutputParser( revisionIndex );
+        ProcessExecutor.executeBytes( cmd, null, outputParser, timeout );
+
+        revision = outputParser.getFirstRevision();
+        if ( revision == -1 ) {
+            throw new IllegalStateException( "No revision found for date: " + cutoffDate );
+        }
+
+        revisionIndex.save();
+        return revision;
+    }
+
+    @Override
+    public Set<String> findChangedPaths( String workingCopy, long cutoffRevision ) throws Exception {
+
+        VcsInfo info = info( workingCopy );
+
+        List<String> cmd = command( "log" );
+        cmd.add( "--xml" );
+        cmd.add( "--verbose" );
+        cmd.add( "--quiet" );
+        cmd.add( "-r" );
+        cmd.add( cutoffRevision + ":HEAD" );
+        cmd.add( workingCopy );
+
+        Set<String> repositoryPaths = new HashSet<String>();
+        ProcessExecutor.executeBytes( cmd, null, new LogOutputParser( repositoryPaths ), timeout );
+        return ChangedPaths.toLocalPaths( new File( workingCopy ), info.getPath(), repositoryPaths );
+    }
+
+    @Override
+    public Set<String> findModifiedPaths( String workingCopy ) throws Exception {
+
+        List<String> cmd = command( "status" );
+        cmd.add( "--xml" );
+        cmd.add( "--quiet" );
+        cmd.add( workingCopy );
+
+        Set<String> paths = new HashSet<String>();
+        ProcessExecutor.executeBytes( cmd, null, new StatusOutputParser( paths ), timeout );
+        return paths;
+    }
+
+    @Override
+    public void close() {
+
+        // do nothing
+    }
+
+    private List<String> command( String subcommand ) {
+
+        List<String> cmd = new LinkedList<String>();
+        cmd.add( executable );
+        cmd.add( subcommand );
+        cmd.add( "--non-interactive" );
+        if ( username != null ) {
+            cmd.add( "--username=" + username );
+        }
+        return cmd;
+    }
+}
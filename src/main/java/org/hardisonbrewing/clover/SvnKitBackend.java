@@ -0,0 +1,278 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.internal.io.dav.DAVRepositoryFactory;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.internal.io.svn.SVNRepositoryFactoryImpl;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.ISVNAnnotateHandler;
+import org.tmatesoft.svn.core.wc.ISVNOptions;
+import org.tmatesoft.svn.core.wc.ISVNStatusHandler;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNInfo;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.SVNStatus;
+import org.tmatesoft.svn.core.wc.SVNStatusType;
+import org.tmatesoft.svn.core.wc.SVNWCUtil;
+
+/**
+ * Talks to the repository in-process through SVNKit rather than forking an
+ * <code>svn</code> process per operation. Each blame thread gets its own
+ * client manager, whose repository pool keeps the connection and
+ * authentication open from one file to the next.
+ */
+public final class SvnKitBackend implements VcsBackend {
+
+    static {
+        DAVRepositoryFactory.setup();
+        SVNRepositoryFactoryImpl.setup();
+        FSRepositoryFactory.setup();
+    }
+
+    private final ISVNOptions options;
+    private final ISVNAuthenticationManager authenticationManager;
+    private final File targetDirectory;
+
+    private final List<SVNClientManager> clientManagers = new LinkedList<SVNClientManager>();
+
+    private final ThreadLocal<SVNClientManager> threadClientManager = new ThreadLocal<SVNClientManager>() {
+
+        @Override
+        protected SVNClientManager initialValue() {
+
+            SVNClientManager clientManager = SVNClientManager.newInstance( options, authenticationManager );
+            synchronized (clientManagers) {
+                clientManagers.add( clientManager );
+            }
+            return clientManager;
+        }
+    };
+
+    public SvnKitBackend(String username, File targetDirectory) {
+
+        options = SVNWCUtil.createDefaultOptions( true );
+        authenticationManager = SVNWCUtil.createDefaultAuthenticationManager( username, (String) null );
+        this.targetDirectory = targetDirectory;
+    }
+
+    @Override
+    public VcsInfo info( String path ) throws Exception {
+
+        SVNClientManager clientManager = threadClientManager.get();
+        SVNInfo info = clientManager.getWCClient().doInfo( new File( path ), SVNRevision.UNDEFINED );
+
+        String url = info.getURL().toString();
+        String repositoryRoot = info.getRepositoryRootURL().toString();
+        String repositoryPath = ChangedPaths.decode( url.startsWith( repositoryRoot ) ? url.substring( repositoryRoot.length() ) : url );
+
+        long revision = info.getRevision().getNumber();
+        long lastChangedRevision = info.getCommittedRevision().getNumber();
+        return new VcsInfo( revision, lastChangedRevision, repositoryPath, repositoryRoot );
+    }
+
+    @Override
+    public void blame( String path, RevisionColumn revisions ) throws Exception {
+
+        revisions.clear();
+
+        SVNClientManager clientManager = threadClientManager.get();
+        AnnotateHandler annotateHandler = new AnnotateHandler( revisions );
+        clientManager.getLogClient().doAnnotate( new File( path ), SVNRevision.UNDEFINED, SVNRevision.create( 0 ), SVNRevision.BASE, annotateHandler );
+    }
+
+    @Override
+    public long findCutoffRevision( String workingCopy, String cutoffDate ) throws Exception {
+
+        VcsInfo info = info( workingCopy );
+
+        RevisionIndex revisionIndex = new RevisionIndex( new File( targetDirectory, "revision-index" ), info.getRepositoryRoot() );
+        revisionIndex.load();
+
+        Date date = null;
+        try {
+            date = new Date( CutoffDate.parse( cutoffDate ) );
+        }
+        catch (IllegalArgumentException e) {
+            // not exactly one of our formats, let SVNKit read it
+            date = SVNRevision.parse( "{" + cutoffDate + "}" ).getDate();
+            if ( date == null ) {
+                throw new IllegalArgumentException( "Unable to parse date: " + cutoffDate );
+            }
+        }
+
+        long revision = revisionIndex.find( date.getTime() );
+        if ( revision != -1 ) {
+            return revision;
+        }
+
+        SVNClientManager clientManager = threadClientManager.get();
+        SVNRepository repository = clientManager.createRepository( SVNURL.parseURIEncoded( info.getRepositoryRoot() ), true );
+        try {
+            revision = repository.getDatedRevision( date );
+            index( repository, revision, revisionIndex );
+        }
+        finally {
+            repository.closeSession();
+        }
+
+        revisionIndex.save();
+        return revision;
+    }
+
+    /**
+     * Adds the revision and the one after it to the index, which brackets the
+     * cutoff for the next run.
+     */
+    private void index( SVNRepository repository, long revision, final RevisionIndex revisionIndex ) throws SVNException {
+
+        long endRevision = Math.min( revision + 1, repository.getLatestRevision() );
+
+        ISVNLogEntryHandler logEntryHandler = new ISVNLogEntryHandler() {
+
+            @Override
+            public void handleLogEntry( SVNLogEntry logEntry ) throws SVNException {
+
+                if ( logEntry.getDate() != null ) {
+                    revisionIndex.add( logEntry.getDate().getTime(), logEntry.getRevision() );
+                }
+            }
+        };
+
+        repository.log( new String[] { "" }, revision, endRevision, false, false, logEntryHandler );
+    }
+
+    @Override
+    public Set<String> findChangedPaths( String workingCopy, long cutoffRevision ) throws Exception {
+
+        VcsInfo info = info( workingCopy );
+
+        final Set<String> repositoryPaths = new HashSet<String>();
+
+        ISVNLogEntryHandler logEntryHandler = new ISVNLogEntryHandler() {
+
+            @Override
+            public void handleLogEntry( SVNLogEntry logEntry ) throws SVNException {
+
+                for (SVNLogEntryPath logEntryPath : logEntry.getChangedPaths().values()) {
+                    String action = String.valueOf( logEntryPath.getType() );
+                    String kind = logEntryPath.getKind() == null ? null : logEntryPath.getKind().toString();
+                    String path = logEntryPath.getPath();
+                    repositoryPaths.add( ChangedPaths.isTreeChange( action, kind, logEntryPath.getCopyPath() ) ? ChangedPaths.tree( path ) : path );
+                }
+            }
+        };
+
+        SVNClientManager clientManager = threadClientManager.get();
+        File[] paths = new File[] { new File( workingCopy ) };
+        clientManager.getLogClient().doLog( paths, SVNRevision.create( cutoffRevision ), SVNRevision.HEAD, false, true, 0, logEntryHandler );
+        return ChangedPaths.toLocalPaths( new File( workingCopy ), info.getPath(), repositoryPaths );
+    }
+
+    @Override
+    public Set<String> findModifiedPaths( String workingCopy ) throws Exception {
+
+        final Set<String> paths = new HashSet<String>();
+
+        ISVNStatusHandler statusHandler = new ISVNStatusHandler() {
+
+            @Override
+            public void handleStatus( SVNStatus status ) throws SVNException {
+
+                SVNStatusType contentsStatus = status.getContentsStatus();
+                if ( contentsStatus == SVNStatusType.STATUS_MODIFIED || contentsStatus == SVNStatusType.STATUS_MERGED || contentsStatus == SVNStatusType.STATUS_CONFLICTED || contentsStatus == SVNStatusType.STATUS_REPLACED ) {
+                    try {
+                        paths.add( status.getFile().getCanonicalPath() );
+                    }
+                    catch (IOException e) {
+                        paths.add( status.getFile().getAbsolutePath() );
+                    }
+                }
+            }
+        };
+
+        SVNClientManager clientManager = threadClientManager.get();
+        clientManager.getStatusClient().doStatus( new File( workingCopy ), SVNRevision.WORKING, SVNDepth.INFINITY, false, false, false, false, statusHandler, null );
+        return paths;
+    }
+
+    @Override
+    public void close() {
+
+        synchronized (clientManagers) {
+            for (SVNClientManager clientManager : clientManagers) {
+                clientManager.dispose();
+            }
+            clientManagers.clear();
+        }
+    }
+
+    private static final class AnnotateHandler implements ISVNAnnotateHandler {
+
+        private final RevisionColumn revisions;
+
+        public AnnotateHandler(RevisionColumn revisions) {
+
+            this.revisions = revisions;
+        }
+
+        /**
+         * Superseded by the overload with the line number, which SVNKit calls
+         * for the same line.
+         */
+        @Override
+        public void handleLine( Date date, long revision, String author, String line ) throws SVNException {
+
+            // do nothing
+        }
+
+        @Override
+        public void handleLine( Date date, long revision, String author, String line, Date mergedDate, long mergedRevision, String mergedAuthor, String mergedPath, int lineNumber ) throws SVNException {
+
+            // the line number is 0-based
+            revisions.set( lineNumber + 1, revision );
+        }
+
+        @Override
+        public boolean handleRevision( Date date, long revision, String author, File contents ) throws SVNException {
+
+            // the file contents are not needed
+            return false;
+        }
+
+        @Override
+        public void handleEOF() {
+
+            // do nothing
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.util.Set;
+
+/**
+ * The version control operations needed to reduce a coverage report.
+ * Implementations are shared by all blame threads and must be thread-safe.
+ */
+public interface VcsBackend {
+
+    public VcsInfo info( String path ) throws Exception;
+
+    /**
+     * Clears the column and fills it with the last changed revision of each
+     * line in the file.
+     */
+    public void blame( String path, RevisionColumn revisions ) throws Exception;
+
+    public long findCutoffRevision( String workingCopy, String cutoffDate ) throws Exception;
+
+    /**
+     * Lists every file in the working copy changed since the cutoff revision,
+     * using a single log of the working copy.
+     * 
+     * @return The canonical local paths of the changed files, or <code>null</code> if not supported.
+     */
+    public Set<String> findChangedPaths( String workingCopy, long cutoffRevision ) throws Exception;
+
+    /**
+     * Lists every file in the working copy whose contents have uncommitted
+     * changes. The blame of such a file is not the blame of its last changed
+     * revision.
+     * 
+     * @return The canonical local paths of the modified files.
+     */
+    public Set<String> findModifiedPaths( String workingCopy ) throws Exception;
+
+    public void close();
+}
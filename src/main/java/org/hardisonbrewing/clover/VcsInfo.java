@@ -16,36 +16,41 @@
  */
 package org.hardisonbrewing.clover;
 
-import org.codehaus.plexus.util.cli.StreamConsumer;
-
-public class RevisionStreamConsumer implements StreamConsumer {
+public final class VcsInfo {
+
+    private final long revision;
+    private final long lastChangedRevision;
+    private final String path;
+    private final String repositoryRoot;
+
+    /**
+     * @param path The path of the file relative to the repository root.
+     */
+    public VcsInfo(long revision, long lastChangedRevision, String path, String repositoryRoot) {
+
+        this.revision = revision;
+        this.lastChangedRevision = lastChangedRevision;
+        this.path = path;
+        this.repositoryRoot = repositoryRoot;
+    }
 
-    private long revision;
+    public long getRevision() {
 
-    @Override
-    public void consumeLine( String line ) {
+        return revision;
+    }
 
-        line = line.trim();
-        String original = line;
+    public long getLastChangedRevision() {
 
-        int lastIndexOf = line.lastIndexOf( ' ' );
-        if ( lastIndexOf == -1 ) {
-            return;
-        }
+        return lastChangedRevision;
+    }
 
-        line = line.substring( lastIndexOf + 1, line.length() - 1 ).trim();
+    public String getPath() {
 
-        try {
-            revision = Long.parseLong( line );
-        }
-        catch (NumberFormatException e) {
-            System.err.println( "Unable to parse line: [" + original + "]" );
-            throw e;
-        }
+        return path;
     }
 
-    public long getRevision() {
+    public String getRepositoryRoot() {
 
-        return revision;
+        return repositoryRoot;
     }
 }
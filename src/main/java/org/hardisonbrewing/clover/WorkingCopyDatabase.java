@@ -0,0 +1,228 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Answers <code>svn info</code> for the files of an SVN 1.7+ working copy
+ * straight from its <code>.svn/wc.db</code> SQLite database. The BASE node of
+ * every file is loaded once into an open addressing table of primitive
+ * revisions keyed by working copy relative path.
+ */
+public final class WorkingCopyDatabase {
+
+    private static final String DRIVER = "org.sqlite.JDBC";
+
+    /**
+     * The wc.db formats written by SVN 1.7 (29) and 1.8 onwards (31).
+     */
+    private static final int[] FORMATS = new int[] { 29, 31 };
+
+    private static final String QUERY = "SELECT n.local_relpath, n.revision, n.changed_revision, n.repos_path, r.root" //
+            + " FROM nodes n JOIN repository r ON n.repos_id = r.id" //
+            + " WHERE n.op_depth = 0 AND n.kind = 'file' AND n.presence = 'normal'";
+
+    private final String root;
+
+    private String[] relativePaths;
+    private long[] revisions;
+    private long[] changedRevisions;
+    private String[] repositoryPaths;
+    private String[] repositoryRoots;
+    private int size;
+
+    private WorkingCopyDatabase(String root, int capacity) {
+
+        this.root = root;
+
+        int length = Integer.highestOneBit( Math.max( 16, capacity * 2 ) - 1 ) << 1;
+        relativePaths = new String[length];
+        revisions = new long[length];
+        changedRevisions = new long[length];
+        repositoryPaths = new String[length];
+        repositoryRoots = new String[length];
+    }
+
+    /**
+     * @return <code>null</code> if the working copy has no wc.db, its format
+     * is not recognised or no SQLite driver is available.
+     */
+    public static WorkingCopyDatabase load( File workingCopy ) throws IOException {
+
+        File root = workingCopy.getCanonicalFile();
+        while (root != null && !new File( root, ".svn/wc.db" ).exists()) {
+            root = root.getParentFile();
+        }
+
+        if ( root == null ) {
+            return null;
+        }
+
+        try {
+            Class.forName( DRIVER );
+        }
+        catch (ClassNotFoundException e) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty( "open_mode", "1" ); // SQLITE_OPEN_READONLY
+
+        Connection connection = null;
+
+        try {
+
+            String url = "jdbc:sqlite:" + new File( root, ".svn/wc.db" ).getPath();
+            connection = DriverManager.getConnection( url, properties );
+
+            Statement statement = connection.createStatement();
+
+            ResultSet resultSet = statement.executeQuery( "PRAGMA user_version" );
+            int format = resultSet.next() ? resultSet.getInt( 1 ) : -1;
+            resultSet.close();
+
+            if ( Arrays.binarySearch( FORMATS, format ) < 0 ) {
+                return null;
+            }
+
+            resultSet = statement.executeQuery( "SELECT COUNT(*) FROM nodes WHERE op_depth = 0 AND kind = 'file'" );
+            int count = resultSet.next() ? resultSet.getInt( 1 ) : 0;
+            resultSet.close();
+
+            WorkingCopyDatabase workingCopyDatabase = new WorkingCopyDatabase( root.getPath(), count );
+            Map<String, String> repositoryRoots = new HashMap<String, String>();
+
+            resultSet = statement.executeQuery( QUERY );
+            while (resultSet.next()) {
+                String repositoryRoot = resultSet.getString( 5 );
+                String _repositoryRoot = repositoryRoots.get( repositoryRoot );
+                if ( _repositoryRoot == null ) {
+                    repositoryRoots.put( repositoryRoot, repositoryRoot );
+                    _repositoryRoot = repositoryRoot;
+                }
+                workingCopyDatabase.put( resultSet.getString( 1 ), resultSet.getLong( 2 ), resultSet.getLong( 3 ), "/" + resultSet.getString( 4 ), _repositoryRoot );
+            }
+            resultSet.close();
+            statement.close();
+
+            return workingCopyDatabase;
+        }
+        catch (SQLException e) {
+            // unreadable or not the schema we expect
+            return null;
+        }
+        finally {
+            if ( connection != null ) {
+                try {
+                    connection.close();
+                }
+                catch (SQLException e) {
+                    // do nothing
+                }
+            }
+        }
+    }
+
+    private void put( String relativePath, long revision, long changedRevision, String repositoryPath, String repositoryRoot ) {
+
+        if ( ( size + 1 ) * 2 > relativePaths.length ) {
+            grow();
+        }
+
+        int slot = slot( relativePath );
+        if ( relativePaths[slot] == null ) {
+            size++;
+        }
+        relativePaths[slot] = relativePath;
+        revisions[slot] = revision;
+        changedRevisions[slot] = changedRevision;
+        repositoryPaths[slot] = repositoryPath;
+        repositoryRoots[slot] = repositoryRoot;
+    }
+
+    private void grow() {
+
+        String[] _relativePaths = relativePaths;
+        long[] _revisions = revisions;
+        long[] _changedRevisions = changedRevisions;
+        String[] _repositoryPaths = repositoryPaths;
+        String[] _repositoryRoots = repositoryRoots;
+
+        int length = _relativePaths.length << 1;
+        relativePaths = new String[length];
+        revisions = new long[length];
+        changedRevisions = new long[length];
+        repositoryPaths = new String[length];
+        repositoryRoots = new String[length];
+        size = 0;
+
+        for (int i = 0; i < _relativePaths.length; i++) {
+            if ( _relativePaths[i] != null ) {
+                put( _relativePaths[i], _revisions[i], _changedRevisions[i], _repositoryPaths[i], _repositoryRoots[i] );
+            }
+        }
+    }
+
+    /**
+     * @return The slot holding the path, or the empty slot it belongs in.
+     */
+    private int slot( String relativePath ) {
+
+        int mask = relativePaths.length - 1;
+        int hash = relativePath.hashCode();
+        int slot = ( hash ^ ( hash >>> 16 ) ) & mask;
+        while (relativePaths[slot] != null && !relativePaths[slot].equals( relativePath )) {
+            slot = ( slot + 1 ) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * @return <code>null</code> if the file is not a versioned file of this working copy.
+     */
+    public VcsInfo info( String path ) throws IOException {
+
+        String canonicalPath = new File( path ).getCanonicalPath();
+        if ( !canonicalPath.startsWith( root + File.separator ) ) {
+            return null;
+        }
+
+        String relativePath = canonicalPath.substring( root.length() + 1 ).replace( File.separatorChar, '/' );
+        int slot = slot( relativePath );
+        if ( relativePaths[slot] == null ) {
+            return null;
+        }
+
+        return new VcsInfo( revisions[slot], changedRevisions[slot], repositoryPaths[slot], repositoryRoots[slot] );
+    }
+
+    public int size() {
+
+        return size;
+    }
+}
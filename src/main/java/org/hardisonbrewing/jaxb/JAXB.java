@@ -18,20 +18,29 @@ package org.hardisonbrewing.jaxb;
 
 import generated.ObjectFactory;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Hashtable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.sax.SAXSource;
 
 import org.codehaus.plexus.util.IOUtil;
@@ -41,7 +50,21 @@ import org.xml.sax.helpers.XMLReaderFactory;
 
 public class JAXB {
 
-    private static Hashtable<Class<?>, JAXBContext> jaxbContexts = new Hashtable<Class<?>, JAXBContext>();
+    public static final String GZIP_EXTENSION = ".gz";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Every generated class belongs to the same context, so one is shared by
+     * the whole JVM. Marshallers and unmarshallers are not thread safe, they
+     * are pooled and borrowed for a single call.
+     */
+    private static volatile JAXBContext jaxbContext;
+
+    private static final Queue<Unmarshaller> unmarshallers = new ConcurrentLinkedQueue<Unmarshaller>();
+    private static final Queue<Marshaller> marshallers = new ConcurrentLinkedQueue<Marshaller>();
+
+    private static XMLInputFactory xmlInputFactory;
 
     protected JAXB() {
 
@@ -62,7 +85,7 @@ public class JAXB {
 
         InputStream inputStream = null;
         try {
-            inputStream = new FileInputStream( file );
+            inputStream = openInputStream( file );
             return unmarshal( inputStream, clazz );
         }
         catch (Exception e) {
@@ -73,6 +96,60 @@ public class JAXB {
         }
     }
 
+    /**
+     * @return True if the file is gzip compressed, judged by its extension.
+     */
+    public static boolean isCompressed( File file ) {
+
+        return file.getName().endsWith( GZIP_EXTENSION );
+    }
+
+    /**
+     * Opens the file for buffered reading, decompressing it on the fly if it
+     * is gzip compressed.
+     */
+    public static InputStream openInputStream( File file ) throws IOException {
+
+        InputStream inputStream = new FileInputStream( file );
+        if ( isCompressed( file ) ) {
+            try {
+                inputStream = new GZIPInputStream( inputStream, BUFFER_SIZE );
+            }
+            catch (IOException e) {
+                IOUtil.close( inputStream );
+                throw e;
+            }
+        }
+        return new BufferedInputStream( inputStream, BUFFER_SIZE );
+    }
+
+    /**
+     * Opens the file for buffered writing, compressing it on the fly if it is
+     * gzip compressed.
+     */
+    public static OutputStream openOutputStream( File file ) throws IOException {
+
+        return openOutputStream( file, isCompressed( file ) );
+    }
+
+    /**
+     * @param compressed True to gzip compress the file whatever its name.
+     */
+    public static OutputStream openOutputStream( File file, boolean compressed ) throws IOException {
+
+        OutputStream outputStream = new FileOutputStream( file );
+        if ( compressed ) {
+            try {
+                outputStream = new GZIPOutputStream( outputStream, BUFFER_SIZE );
+            }
+            catch (IOException e) {
+                IOUtil.close( outputStream );
+                throw e;
+            }
+        }
+        return new BufferedOutputStream( outputStream, BUFFER_SIZE );
+    }
+
     public static <T> T unmarshal( InputStream inputStream, Class<T> clazz ) throws JAXBException {
 
         try {
@@ -83,19 +160,57 @@ public class JAXB {
             InputSource inputSource = new InputSource( inputStream );
             SAXSource saxSource = new SAXSource( namespaceFilter, inputSource );
 
-            Unmarshaller unmarshaller = getUnmarshaller( clazz );
-            Object object = unmarshaller.unmarshal( saxSource );
-            if ( object instanceof JAXBElement ) {
-                JAXBElement<T> jaxbElement = (JAXBElement<T>) object;
-                return (T) jaxbElement.getValue();
+            Unmarshaller unmarshaller = borrowUnmarshaller();
+            try {
+                Object object = unmarshaller.unmarshal( saxSource );
+                if ( object instanceof JAXBElement ) {
+                    JAXBElement<T> jaxbElement = (JAXBElement<T>) object;
+                    return (T) jaxbElement.getValue();
+                }
+                return (T) object;
+            }
+            finally {
+                unmarshallers.offer( unmarshaller );
             }
-            return (T) object;
         }
         catch (SAXException e) {
             throw new IllegalStateException( e );
         }
     }
 
+    /**
+     * Unmarshals the element at the reader's position, which need not be a
+     * root element.
+     */
+    public static <T> T unmarshal( XMLStreamReader reader, Class<T> clazz ) throws JAXBException {
+
+        Unmarshaller unmarshaller = borrowUnmarshaller();
+        try {
+            return unmarshaller.unmarshal( reader, clazz ).getValue();
+        }
+        finally {
+            unmarshallers.offer( unmarshaller );
+        }
+    }
+
+    /**
+     * @return A reader which drops the namespace of every element, like the
+     * {@link NamespaceFilter} used when unmarshalling a whole document.
+     */
+    public static XMLStreamReader createXMLStreamReader( InputStream inputStream ) throws XMLStreamException {
+
+        return new NamespaceStrippingReader( getXMLInputFactory().createXMLStreamReader( inputStream ) );
+    }
+
+    private static synchronized XMLInputFactory getXMLInputFactory() {
+
+        if ( xmlInputFactory == null ) {
+            xmlInputFactory = XMLInputFactory.newInstance();
+            xmlInputFactory.setProperty( XMLInputFactory.SUPPORT_DTD, Boolean.FALSE );
+        }
+        return xmlInputFactory;
+    }
+
     public static String marshal( Object object ) throws JAXBException {
 
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
@@ -107,7 +222,7 @@ public class JAXB {
 
         OutputStream outputStream = null;
         try {
-            outputStream = new FileOutputStream( file );
+            outputStream = openOutputStream( file );
             marshal( outputStream, object );
         }
         catch (Exception e) {
@@ -120,29 +235,72 @@ public class JAXB {
 
     public static void marshal( OutputStream outputStream, Object object ) throws JAXBException {
 
-        Marshaller marshaller = getMarshaller( object.getClass() );
-        marshaller.setProperty( "jaxb.formatted.output", Boolean.TRUE );
-        marshaller.marshal( object, outputStream );
+        marshal( outputStream, object, false, true );
     }
 
-    public static JAXBContext getJAXBContext( Class<?> clazz ) throws JAXBException {
+    /**
+     * Marshals without an XML declaration or formatting, for embedding in
+     * another document.
+     */
+    public static void marshalFragment( OutputStream outputStream, Object object ) throws JAXBException {
 
-        JAXBContext jaxbContext = jaxbContexts.get( clazz );
-        if ( jaxbContext != null ) {
-            return jaxbContext;
+        marshal( outputStream, object, true, false );
+    }
+
+    private static void marshal( OutputStream outputStream, Object object, boolean fragment, boolean formatted ) throws JAXBException {
+
+        Marshaller marshaller = marshallers.poll();
+        if ( marshaller == null ) {
+            marshaller = getJAXBContext().createMarshaller();
+        }
+
+        try {
+            marshaller.setProperty( Marshaller.JAXB_FRAGMENT, fragment );
+            marshaller.setProperty( Marshaller.JAXB_FORMATTED_OUTPUT, formatted );
+            marshaller.marshal( object, outputStream );
+        }
+        finally {
+            marshallers.offer( marshaller );
+        }
+    }
+
+    private static Unmarshaller borrowUnmarshaller() throws JAXBException {
+
+        Unmarshaller unmarshaller = unmarshallers.poll();
+        if ( unmarshaller == null ) {
+            unmarshaller = getJAXBContext().createUnmarshaller();
+        }
+        return unmarshaller;
+    }
+
+    public static JAXBContext getJAXBContext() throws JAXBException {
+
+        JAXBContext _jaxbContext = jaxbContext;
+        if ( _jaxbContext == null ) {
+            synchronized (JAXB.class) {
+                _jaxbContext = jaxbContext;
+                if ( _jaxbContext == null ) {
+                    _jaxbContext = JAXBContext.newInstance( ObjectFactory.class );
+                    jaxbContext = _jaxbContext;
+                }
+            }
         }
-        jaxbContext = JAXBContext.newInstance( ObjectFactory.class );
-        jaxbContexts.put( clazz, jaxbContext );
-        return jaxbContext;
+        return _jaxbContext;
     }
 
-    public static Unmarshaller getUnmarshaller( Class<?> clazz ) throws JAXBException {
+    /**
+     * @return A new unmarshaller, for callers which keep one for their own use.
+     */
+    public static Unmarshaller getUnmarshaller() throws JAXBException {
 
-        return getJAXBContext( clazz ).createUnmarshaller();
+        return getJAXBContext().createUnmarshaller();
     }
 
-    public static Marshaller getMarshaller( Class<?> clazz ) throws JAXBException {
+    /**
+     * @return A new marshaller, for callers which keep one for their own use.
+     */
+    public static Marshaller getMarshaller() throws JAXBException {
 
-        return getJAXBContext( clazz ).createMarshaller();
+        return getJAXBContext().createMarshaller();
     }
 }
@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.jaxb;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+/**
+ * The StAX counterpart of {@link NamespaceFilter}: reports every element and
+ * attribute without a namespace, so reports written with a Clover namespace
+ * unmarshal against the unqualified generated classes.
+ */
+public class NamespaceStrippingReader extends StreamReaderDelegate {
+
+    public NamespaceStrippingReader(XMLStreamReader reader) {
+
+        super( reader );
+    }
+
+    @Override
+    public String getNamespaceURI() {
+
+        return null;
+    }
+
+    @Override
+    public String getNamespaceURI( String prefix ) {
+
+        return null;
+    }
+
+    @Override
+    public String getNamespaceURI( int index ) {
+
+        return null;
+    }
+
+    @Override
+    public int getNamespaceCount() {
+
+        return 0;
+    }
+
+    @Override
+    public String getPrefix() {
+
+        return null;
+    }
+
+    @Override
+    public QName getName() {
+
+        return new QName( getLocalName() );
+    }
+
+    @Override
+    public String getAttributeNamespace( int index ) {
+
+        return null;
+    }
+
+    @Override
+    public String getAttributePrefix( int index ) {
+
+        return null;
+    }
+
+    @Override
+    public QName getAttributeName( int index ) {
+
+        return new QName( getAttributeLocalName( index ) );
+    }
+}
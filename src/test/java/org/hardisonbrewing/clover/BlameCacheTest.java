@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BlameCacheTest {
+
+    private static final String PATH = "src/main/java/Foo.java";
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+
+        directory = File.createTempFile( "blame-cache", "" );
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void roundTripsRevisions() throws Exception {
+
+        // falling, large and local modification revisions give negative and 64 bit deltas
+        long[] expected = new long[] { 0, 1, 127, 128, 16384, 3, 1L << 40, 2, RevisionColumn.LOCAL_MODIFICATION, 5, RevisionColumn.LOCAL_MODIFICATION };
+
+        RevisionColumn revisions = new RevisionColumn();
+        revisions.addAll( expected );
+
+        BlameCache blameCache = new BlameCache( directory, Long.MAX_VALUE );
+        blameCache.put( PATH, 42, revisions );
+
+        RevisionColumn actual = new RevisionColumn();
+        actual.add( 99 );
+        assertTrue( blameCache.get( PATH, 42, actual ) );
+        assertEquals( expected.length, actual.size() );
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals( expected[i], actual.get( i + 1 ) );
+        }
+    }
+
+    @Test
+    public void roundTripsManyLines() throws Exception {
+
+        RevisionColumn revisions = new RevisionColumn();
+        for (int i = 0; i < 10000; i++) {
+            revisions.add( ( i * 7919L ) % 100003 );
+        }
+
+        BlameCache blameCache = new BlameCache( directory, Long.MAX_VALUE );
+        blameCache.put( PATH, 42, revisions );
+
+        // a new instance reads what the last one wrote
+        RevisionColumn actual = new RevisionColumn();
+        assertTrue( new BlameCache( directory, Long.MAX_VALUE ).get( PATH, 42, actual ) );
+        assertEquals( revisions.size(), actual.size() );
+        for (int i = 1; i <= revisions.size(); i++) {
+            assertEquals( revisions.get( i ), actual.get( i ) );
+        }
+    }
+
+    @Test
+    public void missesOtherRevisionsAndPaths() throws Exception {
+
+        RevisionColumn revisions = new RevisionColumn();
+        revisions.add( 1 );
+
+        BlameCache blameCache = new BlameCache( directory, Long.MAX_VALUE );
+        blameCache.put( PATH, 42, revisions );
+
+        assertFalse( blameCache.get( PATH, 43, new RevisionColumn() ) );
+        assertFalse( blameCache.get( "src/main/java/Bar.java", 42, new RevisionColumn() ) );
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+
+        RevisionColumn revisions = new RevisionColumn();
+        revisions.add( 1 );
+
+        // an entry for a one letter path is 18 bytes, so only one fits
+        BlameCache blameCache = new BlameCache( directory, 30 );
+        blameCache.put( "a", 1, revisions );
+        blameCache.put( "b", 1, revisions );
+
+        assertFalse( blameCache.get( "a", 1, new RevisionColumn() ) );
+        assertTrue( blameCache.get( "b", 1, new RevisionColumn() ) );
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BlameHistoryTest {
+
+    private File directory;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+
+        directory = File.createTempFile( "blame-history", "" );
+        directory.delete();
+        directory.mkdirs();
+
+        file = new File( directory, "blame-history" );
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void estimatesFromSavedHistory() throws Exception {
+
+        BlameHistory blameHistory = new BlameHistory( file );
+        blameHistory.load();
+        // one millisecond per line until something is recorded
+        assertEquals( 100, blameHistory.estimate( "/work/Foo.java", 100 ) );
+
+        blameHistory.record( "/work/Slow.java", 10, 500 );
+        blameHistory.record( "/work/Fast.java", 990, 5 );
+        blameHistory.save();
+        assertFalse( new File( file.getPath() + ".tmp" ).exists() );
+
+        BlameHistory loaded = new BlameHistory( file );
+        loaded.load();
+        assertEquals( 500, loaded.estimate( "/work/Slow.java", 10 ) );
+        assertEquals( 5, loaded.estimate( "/work/Fast.java", 990 ) );
+        // 505ms over 1000 lines
+        assertEquals( 51, loaded.estimate( "/work/Foo.java", 100 ) );
+    }
+
+    @Test
+    public void ordersNextRunBySavedCost() throws Exception {
+
+        BlameHistory blameHistory = new BlameHistory( file );
+        blameHistory.record( "/work/Slow.java", 10, 500 );
+        blameHistory.record( "/work/Fast.java", 990, 5 );
+        blameHistory.save();
+
+        BlameHistory loaded = new BlameHistory( file );
+        loaded.load();
+
+        // by line count alone Fast would go first and Slow last
+        List<String> ran = schedule( loaded, "/work/Fast.java", 990, "/work/New.java", 100, "/work/Slow.java", 10 );
+        assertEquals( Arrays.asList( "/work/Slow.java", "/work/New.java", "/work/Fast.java" ), ran );
+
+        List<String> unseen = schedule( new BlameHistory( new File( directory, "missing" ) ), "/work/Slow.java", 10, "/work/New.java", 100, "/work/Fast.java", 990 );
+        assertEquals( Arrays.asList( "/work/Fast.java", "/work/New.java", "/work/Slow.java" ), unseen );
+    }
+
+    @Test
+    public void startsOverFromDamagedHistory() throws Exception {
+
+        BlameHistory blameHistory = new BlameHistory( file );
+        blameHistory.record( "/work/Slow.java", 10, 500 );
+        blameHistory.save();
+
+        byte[] bytes = FileUtils.fileRead( file, "ISO-8859-1" ).getBytes( "ISO-8859-1" );
+        FileUtils.fileWrite( file.getPath(), "ISO-8859-1", new String( bytes, 0, bytes.length - 2, "ISO-8859-1" ) );
+
+        BlameHistory loaded = new BlameHistory( file );
+        loaded.load();
+        assertEquals( 10, loaded.estimate( "/work/Slow.java", 10 ) );
+    }
+
+    /**
+     * Runs the files, given as path and line count, on a single thread in the
+     * order of their estimated cost.
+     * 
+     * @return The paths in the order they ran.
+     */
+    private static List<String> schedule( BlameHistory blameHistory, Object... files ) throws Exception {
+
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final List<String> ran = Collections.synchronizedList( new ArrayList<String>() );
+
+        BlameScheduler scheduler = new BlameScheduler( new SystemStreamLog(), 1, files.length, -1 );
+
+        // holds the only thread until every file is queued
+        scheduler.submit( "blocker", "blocker", 0, new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+
+                release.await();
+                return null;
+            }
+        } );
+
+        for (int i = 0; i < files.length; i += 2) {
+            final String path = (String) files[i];
+            long cost = blameHistory.estimate( path, (Integer) files[i + 1] );
+            scheduler.submit( path, "/work", cost, new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+
+                    ran.add( path );
+                    return null;
+                }
+            } );
+        }
+
+        release.countDown();
+        scheduler.awaitCompletion();
+        return ran;
+    }
+}
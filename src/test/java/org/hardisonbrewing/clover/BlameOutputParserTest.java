@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+public class BlameOutputParserTest {
+
+    private static final long LOCAL = RevisionColumn.LOCAL_MODIFICATION;
+
+    @Test
+    public void parsesRevisions() throws Exception {
+
+        String blame = "" + //
+                "     5    alice one\n" + //
+                "    12      bob two\n" + //
+                "     -          three\n" + //
+                "   123    alice four";
+
+        assertArrayEquals( new long[] { 5, 12, LOCAL, 123 }, parse( blame, false ) );
+    }
+
+    @Test
+    public void splitsEveryLineEnding() throws Exception {
+
+        String blame = "     5    alice one\r\n" + //
+                "     6    alice two\r" + //
+                "     7    alice three\n" + //
+                "     8    alice \n" + //
+                "     9    alice five\r\n";
+
+        long[] expected = new long[] { 5, 6, 7, 8, 9 };
+        assertArrayEquals( expected, parse( blame, false ) );
+        // a \r\n split across reads is still one line ending
+        assertArrayEquals( expected, parse( blame, true ) );
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsEmptyLine() throws Exception {
+
+        parse( "     5    alice one\n\n", false );
+    }
+
+    private static long[] parse( String blame, final boolean byteAtATime ) throws Exception {
+
+        InputStream inputStream = new ByteArrayInputStream( blame.getBytes( "UTF-8" ) ) {
+
+            @Override
+            public synchronized int read( byte[] b, int off, int len ) {
+
+                return super.read( b, off, byteAtATime ? Math.min( len, 1 ) : len );
+            }
+        };
+
+        RevisionColumn revisions = new RevisionColumn();
+        new BlameOutputParser( revisions ).parse( inputStream );
+        return revisions.toArray();
+    }
+}
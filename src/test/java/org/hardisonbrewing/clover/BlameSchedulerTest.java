@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+public class BlameSchedulerTest {
+
+    private final CountDownLatch release = new CountDownLatch( 1 );
+    private final List<String> ran = Collections.synchronizedList( new ArrayList<String>() );
+
+    @Test
+    public void runsByMagnitudeThenTurnThenOrder() throws Exception {
+
+        BlameScheduler scheduler = new BlameScheduler( new SystemStreamLog(), 1, 16, -1 );
+
+        // holds the only thread until every file is queued
+        scheduler.submit( "blocker", "blocker", 0, blocker() );
+
+        scheduler.submit( "a1", "a", 3, record( "a1" ) );
+        scheduler.submit( "a2", "a", 1000, record( "a2" ) );
+        scheduler.submit( "a3", "a", 2, record( "a3" ) );
+        scheduler.submit( "b1", "b", 3, record( "b1" ) );
+        scheduler.submit( "b2", "b", 2, record( "b2" ) );
+
+        release.countDown();
+        scheduler.awaitCompletion();
+
+        // a1 and a3 are the first and third of their group, b1 and b2 the first and second
+        assertEquals( Arrays.asList( "a2", "a1", "b1", "b2", "a3" ), ran );
+        assertEquals( 0, scheduler.getFailureCount() );
+    }
+
+    @Test
+    public void abortsPastMaxFailures() throws Exception {
+
+        BlameScheduler scheduler = new BlameScheduler( new SystemStreamLog(), 1, 16, 1 );
+
+        scheduler.submit( "blocker", "blocker", 0, blocker() );
+        scheduler.submit( "Foo.java", "a", 1, failing( "Foo.java" ) );
+        scheduler.submit( "Bar.java", "a", 1, failing( "Bar.java" ) );
+        scheduler.submit( "Baz.java", "a", 1, failing( "Baz.java" ) );
+
+        release.countDown();
+
+        try {
+            scheduler.awaitCompletion();
+            fail();
+        }
+        catch (MojoFailureException e) {
+            // expected
+        }
+
+        // the second failure cancels the run before the third file starts
+        assertEquals( Arrays.asList( "Foo.java", "Bar.java" ), ran );
+        assertEquals( 2, scheduler.getFailureCount() );
+        assertEquals( Arrays.asList( "Bar.java", "Foo.java" ), scheduler.getFailedNames() );
+        assertTrue( scheduler.isCancelled() );
+
+        try {
+            scheduler.submit( "Qux.java", "a", 1, record( "Qux.java" ) );
+            fail();
+        }
+        catch (CancellationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void cancelReleasesBlockedSubmit() throws Exception {
+
+        // a single permit, taken by the blocker
+        final BlameScheduler scheduler = new BlameScheduler( new SystemStreamLog(), 1, 1, -1 );
+        scheduler.submit( "blocker", "blocker", 0, blocker() );
+
+        final CountDownLatch submitting = new CountDownLatch( 1 );
+        final AtomicReference<Throwable> thrown = new AtomicReference<Throwable>();
+
+        Thread parser = new Thread() {
+
+            @Override
+            public void run() {
+
+                try {
+                    submitting.countDown();
+                    scheduler.submit( "Foo.java", "a", 1, record( "Foo.java" ) );
+                }
+                catch (Throwable t) {
+                    thrown.set( t );
+                }
+            }
+        };
+        parser.start();
+
+        assertTrue( submitting.await( 10, TimeUnit.SECONDS ) );
+        Thread.sleep( 100 );
+        assertTrue( parser.isAlive() );
+
+        scheduler.cancel();
+        scheduler.cancel();
+
+        parser.join( 10000 );
+        assertFalse( parser.isAlive() );
+        assertTrue( String.valueOf( thrown.get() ), thrown.get() instanceof CancellationException );
+        assertTrue( ran.isEmpty() );
+    }
+
+    /**
+     * @return A file which waits for the test to release it, or for the
+     * scheduler to interrupt it.
+     */
+    private Callable<Void> blocker() {
+
+        return new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+
+                release.await();
+                return null;
+            }
+        };
+    }
+
+    private Callable<Void> record( final String name ) {
+
+        return new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+
+                ran.add( name );
+                return null;
+            }
+        };
+    }
+
+    private Callable<Void> failing( final String name ) {
+
+        return new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+
+                ran.add( name );
+                throw new IllegalStateException( "svn: E200009: Could not perform blame on " + name );
+            }
+        };
+    }
+}
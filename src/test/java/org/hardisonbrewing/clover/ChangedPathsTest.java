@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChangedPathsTest {
+
+    private File workingCopy;
+    private String root;
+
+    @Before
+    public void setUp() throws Exception {
+
+        workingCopy = File.createTempFile( "changed-paths", "" );
+        workingCopy.delete();
+        workingCopy.mkdirs();
+        root = workingCopy.getCanonicalPath();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        FileUtils.deleteDirectory( workingCopy );
+    }
+
+    @Test
+    public void filesUnderCopiedDirectoryAreChanged() throws Exception {
+
+        Set<String> repositoryPaths = new HashSet<String>( Arrays.asList( "/trunk/src/Foo.java", "/trunk/src/copy/", "/branches/x/Bar.java" ) );
+        Set<String> localPaths = ChangedPaths.toLocalPaths( workingCopy, "/trunk", repositoryPaths );
+
+        assertEquals( 2, localPaths.size() );
+        assertTrue( ChangedPaths.contains( localPaths, local( "src/Foo.java" ) ) );
+        assertTrue( ChangedPaths.contains( localPaths, local( "src/copy/Bar.java" ) ) );
+        assertTrue( ChangedPaths.contains( localPaths, local( "src/copy/a/b/Baz.java" ) ) );
+        assertFalse( ChangedPaths.contains( localPaths, local( "src/Bar.java" ) ) );
+        assertFalse( ChangedPaths.contains( localPaths, local( "src/copycat/Bar.java" ) ) );
+    }
+
+    @Test
+    public void copiedWorkingCopyChangesEverything() throws Exception {
+
+        Set<String> repositoryPaths = new HashSet<String>( Arrays.asList( "/branches/x/" ) );
+        Set<String> localPaths = ChangedPaths.toLocalPaths( workingCopy, "/branches/x/module", repositoryPaths );
+
+        assertTrue( ChangedPaths.contains( localPaths, local( "src/Foo.java" ) ) );
+    }
+
+    @Test
+    public void treeChanges() {
+
+        assertTrue( ChangedPaths.isTreeChange( "A", "dir", null ) );
+        assertTrue( ChangedPaths.isTreeChange( "R", "dir", null ) );
+        assertTrue( ChangedPaths.isTreeChange( "A", null, "/trunk/src" ) );
+        assertFalse( ChangedPaths.isTreeChange( "M", "dir", null ) );
+        assertFalse( ChangedPaths.isTreeChange( "A", "file", null ) );
+        assertFalse( ChangedPaths.isTreeChange( "A", "file", "/trunk/src/Foo.java" ) );
+        assertEquals( "/trunk/src/", ChangedPaths.tree( "/trunk/src" ) );
+        assertEquals( "/trunk/src/", ChangedPaths.tree( "/trunk/src/" ) );
+    }
+
+    private String local( String relativePath ) {
+
+        return root + File.separator + relativePath.replace( '/', File.separatorChar );
+    }
+}
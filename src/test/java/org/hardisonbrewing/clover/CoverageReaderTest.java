@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertEquals;
+import generated.Coverage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CoverageReaderTest {
+
+    private static final String REPORT = "" + //
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + //
+            "<coverage xmlns=\"http://www.cenqua.com/clover\" clover=\"3.1.12\" generated=\"1\">\n" + //
+            "  <project name=\"sample\" timestamp=\"2\">\n" + //
+            "    <metrics classes=\"1\"/>\n" + //
+            "    <package name=\"org.sample\">\n" + //
+            "      <metrics classes=\"1\"/>\n" + //
+            "      <file name=\"Foo.java\" path=\"/src/org/sample/Foo.java\">\n" + //
+            "        <metrics classes=\"1\"/>\n" + //
+            "        <class name=\"Foo\"><metrics methods=\"1\"/></class>\n" + //
+            "        <line num=\"3\" type=\"method\" count=\"1\" complexity=\"1\"/>\n" + //
+            "        <line num=\"4\" type=\"stmt\" count=\"0\"/>\n" + //
+            "      </file>\n" + //
+            "    </package>\n" + //
+            "  </project>\n" + //
+            "  <testproject name=\"sample\" timestamp=\"2\">\n" + //
+            "    <metrics classes=\"0\"/>\n" + //
+            "  </testproject>\n" + //
+            "</coverage>\n";
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+
+        directory = File.createTempFile( "coverage-reader", "" );
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void readsNamespacedReport() throws Exception {
+
+        File file = writeReport();
+
+        final List<String> events = new ArrayList<String>();
+
+        new CoverageReader( new CoverageReader.Handler() {
+
+            @Override
+            public void startProject( Coverage coverage ) {
+
+                events.add( "project " + coverage.getProject().getName() );
+            }
+
+            @Override
+            public boolean accept( String path ) {
+
+                return true;
+            }
+
+            @Override
+            public void file( String packageName, generated.File file ) {
+
+                events.add( "file " + packageName + " " + file.getPath() + " " + file.getClazz().size() + " " + file.getLine().size() );
+            }
+
+            @Override
+            public void endPackage( String packageName ) {
+
+                events.add( "end " + packageName );
+            }
+        } ).read( file );
+
+        List<String> expected = new ArrayList<String>();
+        expected.add( "project sample" );
+        expected.add( "file org.sample /src/org/sample/Foo.java 1 2" );
+        expected.add( "end org.sample" );
+        assertEquals( expected, events );
+    }
+
+    @Test
+    public void readsPaths() throws Exception {
+
+        List<String> paths = new ArrayList<String>();
+        CoverageReader.readPaths( writeReport(), paths );
+
+        assertEquals( Collections.singletonList( "/src/org/sample/Foo.java" ), paths );
+    }
+
+    private File writeReport() throws Exception {
+
+        File file = new File( directory, "clover.xml" );
+        OutputStream outputStream = new FileOutputStream( file );
+        try {
+            outputStream.write( REPORT.getBytes( "UTF-8" ) );
+        }
+        finally {
+            IOUtil.close( outputStream );
+        }
+        return file;
+    }
+}
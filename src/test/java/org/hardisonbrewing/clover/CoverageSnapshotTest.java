@@ -0,0 +1,298 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import generated.ClassMetrics;
+import generated.Construct;
+import generated.Coverage;
+import generated.Line;
+import generated.Project;
+import generated.Visibility;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CoverageSnapshotTest {
+
+    private File directory;
+    private File source;
+    private File snapshot;
+
+    @Before
+    public void setUp() throws Exception {
+
+        directory = File.createTempFile( "coverage-snapshot", "" );
+        directory.delete();
+        directory.mkdirs();
+
+        source = new File( directory, "clover.xml" );
+        FileUtils.fileWrite( source.getPath(), "<coverage/>" );
+        snapshot = new File( directory, "clover.snapshot" );
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void roundTripsReport() throws Exception {
+
+        EventHandler written = new EventHandler( null );
+        CoverageSnapshotWriter writer = new CoverageSnapshotWriter( snapshot, source, written );
+        writer.startProject( coverage() );
+        writer.file( "org.sample", file( "Foo.java", 0, 3 ) );
+        writer.file( "org.sample", file( "Bar.java", 0, 2 ) );
+        writer.endPackage( "org.sample" );
+        writer.file( "org.other", file( "Baz.java", 1, 1 ) );
+        writer.endPackage( "org.other" );
+        writer.close();
+
+        EventHandler read = new EventHandler( null );
+        CoverageSnapshot coverageSnapshot = CoverageSnapshot.open( snapshot, source );
+        assertNotNull( coverageSnapshot );
+        assertEquals( 3, coverageSnapshot.getFileCount() );
+        coverageSnapshot.read( read );
+
+        assertEquals( written.events, read.events );
+    }
+
+    @Test
+    public void roundTripsMoreStringsThanTheTable() throws Exception {
+
+        // every other line has a signature
+        int count = ( CoverageSnapshotWriter.STRING_TABLE_SIZE + 100 ) * 2;
+
+        EventHandler written = new EventHandler( null );
+        CoverageSnapshotWriter writer = new CoverageSnapshotWriter( snapshot, source, written );
+        writer.startProject( coverage() );
+        // the package name drops out of the table while the first file is written
+        writer.file( "org.sample", file( "Foo.java", 0, count ) );
+        writer.file( "org.sample", file( "Bar.java", 0, count ) );
+        writer.endPackage( "org.sample" );
+        writer.file( "org.other", file( "Baz.java", count, 2 ) );
+        writer.endPackage( "org.other" );
+        writer.close();
+
+        EventHandler read = new EventHandler( null );
+        CoverageSnapshot.open( snapshot, source ).read( read );
+
+        assertEquals( written.events, read.events );
+        assertEquals( 2, count( read.events, "end " ) );
+    }
+
+    @Test
+    public void rejectsReportRewrittenInPlace() throws Exception {
+
+        FileUtils.fileWrite( source.getPath(), "<coverage generated=\"1\"/>" );
+
+        CoverageSnapshotWriter writer = new CoverageSnapshotWriter( snapshot, source, new EventHandler( null ) );
+        writer.startProject( coverage() );
+        writer.file( "org.sample", file( "Foo.java", 0, 1 ) );
+        writer.endPackage( "org.sample" );
+        writer.close();
+        assertNotNull( CoverageSnapshot.open( snapshot, source ) );
+
+        // same length and modification time, generated again
+        long lastModified = source.lastModified();
+        FileUtils.fileWrite( source.getPath(), "<coverage generated=\"2\"/>" );
+        source.setLastModified( lastModified );
+
+        assertNull( CoverageSnapshot.open( snapshot, source ) );
+    }
+
+    @Test
+    public void fingerprintsHeadAndTail() throws Exception {
+
+        StringBuilder stringBuilder = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            stringBuilder.append( "<line/>\n" );
+        }
+        String middle = stringBuilder.toString();
+
+        FileUtils.fileWrite( source.getPath(), "<coverage generated=\"1\">" + middle + "<metrics a=\"1\"/>" );
+        long fingerprint = CoverageSnapshot.fingerprint( source );
+
+        FileUtils.fileWrite( source.getPath(), "<coverage generated=\"1\">" + middle + "<metrics a=\"2\"/>" );
+        assertFalse( fingerprint == CoverageSnapshot.fingerprint( source ) );
+
+        FileUtils.fileWrite( source.getPath(), "<coverage generated=\"2\">" + middle + "<metrics a=\"1\"/>" );
+        assertFalse( fingerprint == CoverageSnapshot.fingerprint( source ) );
+    }
+
+    @Test
+    public void skipsFilesNotAccepted() throws Exception {
+
+        CoverageSnapshotWriter writer = new CoverageSnapshotWriter( snapshot, source, new EventHandler( null ) );
+        writer.startProject( coverage() );
+        writer.file( "org.sample", file( "Foo.java", 0, 1 ) );
+        writer.file( "org.sample", file( "Bar.java", 0, 1 ) );
+        writer.endPackage( "org.sample" );
+        writer.close();
+
+        EventHandler read = new EventHandler( Collections.singleton( "/src/org/sample/Bar.java" ) );
+        CoverageSnapshot.open( snapshot, source ).read( read );
+
+        List<String> expected = new ArrayList<String>();
+        expected.add( "project sample 3.1.12 1 2" );
+        expected.add( "file org.sample /src/org/sample/Bar.java" );
+        expected.add( "end org.sample" );
+        assertEquals( expected, strip( read.events ) );
+    }
+
+    private static Coverage coverage() {
+
+        Project project = new Project();
+        project.setName( "sample" );
+        project.setTimestamp( 2 );
+
+        Coverage coverage = new Coverage();
+        coverage.setClover( "3.1.12" );
+        coverage.setGenerated( 1 );
+        coverage.setProject( project );
+        return coverage;
+    }
+
+    /**
+     * @param first The first of the distinct signatures given to the lines.
+     */
+    private static generated.File file( String name, int first, int lineCount ) {
+
+        ClassMetrics classMetrics = new ClassMetrics();
+        classMetrics.setMethods( lineCount );
+
+        generated.Class _class = new generated.Class();
+        _class.setName( name.substring( 0, name.indexOf( '.' ) ) );
+        _class.setMetrics( classMetrics );
+
+        generated.File file = new generated.File();
+        file.setName( name );
+        file.setPath( "/src/org/sample/" + name );
+        file.getClazz().add( _class );
+
+        for (int i = 0; i < lineCount; i++) {
+            Line line = new Line();
+            line.setNum( i + 1 );
+            if ( i % 2 == 0 ) {
+                line.setType( Construct.METHOD );
+                line.setSignature( "method" + ( first + i ) + "()" );
+                line.setVisibility( Visibility.PUBLIC );
+                line.setComplexity( 1 );
+                line.setTestduration( new BigDecimal( "0.25" ) );
+                line.setTestsuccess( true );
+            }
+            else {
+                line.setType( Construct.COND );
+                line.setTruecount( i );
+                line.setFalsecount( 0 );
+            }
+            line.setCount( i );
+            file.getLine().add( line );
+        }
+
+        return file;
+    }
+
+    private static int count( List<String> events, String prefix ) {
+
+        int count = 0;
+        for (String event : events) {
+            if ( event.startsWith( prefix ) ) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The events without the lines and classes of each file.
+     */
+    private static List<String> strip( List<String> events ) {
+
+        List<String> stripped = new ArrayList<String>();
+        for (String event : events) {
+            int index = event.indexOf( " [" );
+            stripped.add( index == -1 ? event : event.substring( 0, index ) );
+        }
+        return stripped;
+    }
+
+    private static class EventHandler implements CoverageReader.Handler {
+
+        private final Collection<String> paths;
+        private final List<String> events = new ArrayList<String>();
+
+        /**
+         * @param paths The paths to accept, or null for every path.
+         */
+        public EventHandler(Collection<String> paths) {
+
+            this.paths = paths == null ? null : new HashSet<String>( paths );
+        }
+
+        @Override
+        public void startProject( Coverage coverage ) {
+
+            Project project = coverage.getProject();
+            events.add( "project " + project.getName() + " " + coverage.getClover() + " " + coverage.getGenerated() + " " + project.getTimestamp() );
+        }
+
+        @Override
+        public boolean accept( String path ) {
+
+            return paths == null || paths.contains( path );
+        }
+
+        @Override
+        public void file( String packageName, generated.File file ) {
+
+            List<String> lines = new ArrayList<String>();
+            for (Line line : file.getLine()) {
+                lines.add( Arrays.asList( line.getNum(), line.getType(), line.getComplexity(), line.getCount(), line.getTruecount(), line.getFalsecount(), line.getSignature(), line.getVisibility(), line.getTestduration(), line.isTestsuccess() ).toString() );
+            }
+
+            List<String> classes = new ArrayList<String>();
+            for (generated.Class _class : file.getClazz()) {
+                classes.add( _class.getName() + " " + _class.getMetrics().getMethods() );
+            }
+
+            events.add( "file " + packageName + " " + file.getPath() + " [" + file.getName() + " " + classes + " " + lines + "]" );
+        }
+
+        @Override
+        public void endPackage( String packageName ) {
+
+            events.add( "end " + packageName );
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class CutoffDateTest {
+
+    // 2013-01-02T03:04:05Z
+    private static final long UTC = 1357095845000L;
+
+    @Test
+    public void parsesZones() {
+
+        assertEquals( UTC, CutoffDate.parse( "2013-01-02T03:04:05Z" ) );
+        assertEquals( UTC, CutoffDate.parse( "2013-01-02 03:04:05Z" ) );
+        assertEquals( UTC, CutoffDate.parse( "2013-01-02T04:04:05+01:00" ) );
+        assertEquals( UTC, CutoffDate.parse( "2013-01-02T04:04:05+0100" ) );
+        assertEquals( UTC, CutoffDate.parse( "2013-01-01T22:04:05-05" ) );
+        assertEquals( UTC - 5000, CutoffDate.parse( "2013-01-02T03:04Z" ) );
+    }
+
+    @Test
+    public void parsesLocalTime() {
+
+        Calendar calendar = Calendar.getInstance( TimeZone.getDefault() );
+        calendar.clear();
+        calendar.set( 2013, Calendar.JANUARY, 2, 3, 4, 5 );
+        assertEquals( calendar.getTimeInMillis(), CutoffDate.parse( "2013-01-02T03:04:05" ) );
+        assertEquals( calendar.getTimeInMillis(), CutoffDate.parse( "2013-01-02 03:04:05" ) );
+
+        calendar.set( Calendar.SECOND, 0 );
+        assertEquals( calendar.getTimeInMillis(), CutoffDate.parse( "2013-01-02 03:04" ) );
+
+        calendar.set( Calendar.HOUR_OF_DAY, 0 );
+        calendar.set( Calendar.MINUTE, 0 );
+        assertEquals( calendar.getTimeInMillis(), CutoffDate.parse( "2013-01-02" ) );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFraction() {
+
+        CutoffDate.parse( "2013-01-02T03:04:05.123Z" );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTrailingText() {
+
+        CutoffDate.parse( "2013-01-02 yesterday" );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZoneWithoutTime() {
+
+        CutoffDate.parse( "2013-01-02Z" );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidZone() {
+
+        CutoffDate.parse( "2013-01-02T03:04:05+25:00" );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidDate() {
+
+        CutoffDate.parse( "2013-02-30" );
+    }
+
+    @Test
+    public void parsesLabelsInOrder() {
+
+        Map<String, String> dates = CutoffDate.parseLabelled( " sprint = 2013-06-17 ,quarter=2013-04-01,year=2013-01-01T00:00:00Z" );
+
+        assertEquals( Arrays.asList( "sprint", "quarter", "year" ), new ArrayList<String>( dates.keySet() ) );
+        assertEquals( Arrays.asList( "2013-06-17", "2013-04-01", "2013-01-01T00:00:00Z" ), new ArrayList<String>( dates.values() ) );
+    }
+
+    @Test
+    public void leavesSingleDateUnlabelled() {
+
+        assertEquals( Collections.singletonMap( (String) null, "2013-01-02" ), CutoffDate.parseLabelled( "2013-01-02" ) );
+    }
+
+    @Test
+    public void labelsDatesWithoutLabel() {
+
+        Map<String, String> dates = CutoffDate.parseLabelled( "sprint=2013-06-17,2013-01-02 03:04+01:00" );
+
+        assertEquals( Arrays.asList( "sprint", "2013-01-02_03_04_01_00" ), new ArrayList<String>( dates.keySet() ) );
+        assertEquals( "2013-01-02 03:04+01:00", dates.get( "2013-01-02_03_04_01_00" ) );
+    }
+
+    @Test
+    public void rejectsInvalidLabelledDates() {
+
+        List<String> values = new ArrayList<String>();
+        values.add( "a=2013-01-01,a=2013-02-01" );
+        values.add( "2013-01-01,2013-01-01" );
+        values.add( "2013-01-01,2013-01-01=2013-02-01" );
+        values.add( "a=2013-01-01,,b=2013-02-01" );
+        values.add( "a=2013-01-01," );
+        values.add( " " );
+        values.add( "a=" );
+        values.add( "=2013-01-01" );
+
+        for (String value : values) {
+            try {
+                CutoffDate.parseLabelled( value );
+                fail( value );
+            }
+            catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void namesReducedReportsByLabel() {
+
+        File report = new File( "target", "clover.xml" );
+
+        assertEquals( new File( "target", "clover-reduced.xml" ), ReductMojo.reducedFile( report, null, "xml" ) );
+
+        List<String> labels = new ArrayList<String>( CutoffDate.parseLabelled( "sprint=2013-06-17,2013-01-02 03:04" ).keySet() );
+        assertEquals( new File( "target", "clover-reduced-sprint.xml.gz" ), ReductMojo.reducedFile( report, labels.get( 0 ), "xml.gz" ) );
+        assertEquals( new File( "target", "clover-reduced-2013-01-02_03_04.xml" ), ReductMojo.reducedFile( report, labels.get( 1 ), "xml" ) );
+        assertEquals( new File( "target", "clover-reduced-sprint-shard1of2.xml" ), ReductMojo.reducedFile( report, "sprint-" + new Shard( 1, 2 ).getLabel(), "xml" ) );
+    }
+}
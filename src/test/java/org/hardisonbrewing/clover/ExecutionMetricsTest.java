@@ -0,0 +1,346 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExecutionMetricsTest {
+
+    private static final String FAILED = "C:\\work\\src\\\"quoted\" name.java";
+    private static final String RETRIED = "/work/src/tab\tand\\back\nslash\u0001.java";
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+
+        directory = File.createTempFile( "execution-metrics", "" );
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void writesParsableJson() throws Exception {
+
+        ExecutionMetrics executionMetrics = new ExecutionMetrics();
+        executionMetrics.add( ExecutionMetrics.Phase.PARSE, 5000000L );
+        executionMetrics.addBlame( 3000000L );
+        executionMetrics.addBlame( 3000000L );
+        executionMetrics.blameCacheHit();
+        executionMetrics.setFileCounts( 4, 1 );
+        executionMetrics.setScheduler( failedScheduler(), 1 );
+        executionMetrics.setRetries( retriedBackend(), new CircuitBreaker( 10, 100, 0 ) );
+
+        File file = new File( directory, "clover-reduced-metrics.json" );
+        executionMetrics.write( file );
+
+        Map<?, ?> json = (Map<?, ?>) new JsonReader( FileUtils.fileRead( file, "UTF-8" ) ).read();
+
+        Map<?, ?> files = (Map<?, ?>) json.get( "files" );
+        assertEquals( 4.0, files.get( "total" ) );
+        assertEquals( 1.0, files.get( "unchanged" ) );
+        assertEquals( 2.0, files.get( "blamed" ) );
+        assertEquals( 1.0, files.get( "blameCacheHits" ) );
+        assertEquals( 1.0, files.get( "failed" ) );
+        assertEquals( Collections.singletonList( FAILED ), files.get( "failedPaths" ) );
+
+        Map<?, ?> retries = (Map<?, ?>) json.get( "retries" );
+        assertEquals( 1.0, retries.get( "total" ) );
+        assertEquals( 1.0, retries.get( "paths" ) );
+        assertEquals( Collections.singletonList( RETRIED ), retries.get( "retriedPaths" ) );
+
+        Map<?, ?> phases = (Map<?, ?>) json.get( "phases" );
+        assertEquals( ExecutionMetrics.Phase.values().length, phases.size() );
+        assertEquals( 5.0, ( (Map<?, ?>) phases.get( "parse" ) ).get( "millis" ) );
+        assertEquals( 2.0, ( (Map<?, ?>) phases.get( "blame" ) ).get( "count" ) );
+
+        // 3ms lands in the bucket below 4ms
+        List<?> blameLatency = (List<?>) json.get( "blameLatency" );
+        assertEquals( 3, blameLatency.size() );
+        assertEquals( 4.0, ( (Map<?, ?>) blameLatency.get( 2 ) ).get( "lessThanMillis" ) );
+        assertEquals( 2.0, ( (Map<?, ?>) blameLatency.get( 2 ) ).get( "count" ) );
+    }
+
+    @Test
+    public void writesEmptyPaths() throws Exception {
+
+        File file = new File( directory, "clover-reduced-metrics.json" );
+        new ExecutionMetrics().write( file );
+
+        Map<?, ?> json = (Map<?, ?>) new JsonReader( FileUtils.fileRead( file, "UTF-8" ) ).read();
+        assertEquals( Collections.emptyList(), ( (Map<?, ?>) json.get( "files" ) ).get( "failedPaths" ) );
+        assertEquals( Collections.emptyList(), ( (Map<?, ?>) json.get( "retries" ) ).get( "retriedPaths" ) );
+    }
+
+    private static BlameScheduler failedScheduler() throws Exception {
+
+        BlameScheduler scheduler = new BlameScheduler( new SystemStreamLog(), 1, 1, 0 );
+        scheduler.submit( FAILED, "a", 1, new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+
+                throw new IllegalStateException( "svn: E200009: Could not perform blame" );
+            }
+        } );
+
+        try {
+            scheduler.awaitCompletion();
+            fail();
+        }
+        catch (MojoFailureException e) {
+            // expected
+        }
+        return scheduler;
+    }
+
+    private static RetryingVcsBackend retriedBackend() throws Exception {
+
+        VcsBackend failingOnce = new VcsBackend() {
+
+            private boolean failed;
+
+            @Override
+            public VcsInfo info( String path ) throws Exception {
+
+                return null;
+            }
+
+            @Override
+            public void blame( String path, RevisionColumn revisions ) throws Exception {
+
+                if ( !failed ) {
+                    failed = true;
+                    throw new IllegalStateException( "svn: E175002: Connection refused" );
+                }
+            }
+
+            @Override
+            public long findCutoffRevision( String workingCopy, String cutoffDate ) throws Exception {
+
+                return 0;
+            }
+
+            @Override
+            public Set<String> findChangedPaths( String workingCopy, long cutoffRevision ) throws Exception {
+
+                return null;
+            }
+
+            @Override
+            public Set<String> findModifiedPaths( String workingCopy ) throws Exception {
+
+                return null;
+            }
+
+            @Override
+            public void close() {
+
+                // do nothing
+            }
+        };
+
+        RetryingVcsBackend vcsBackend = new RetryingVcsBackend( failingOnce, new SystemStreamLog(), 1, 0, new CircuitBreaker( 10, 100, 0 ) );
+        vcsBackend.blame( RETRIED, new RevisionColumn() );
+        return vcsBackend;
+    }
+
+    /**
+     * Reads just enough JSON to check the output: objects, arrays, strings
+     * with every escape and numbers, read as doubles.
+     */
+    private static final class JsonReader {
+
+        private final String json;
+        private int index;
+
+        public JsonReader(String json) {
+
+            this.json = json;
+        }
+
+        public Object read() {
+
+            Object value = value();
+            skipWhitespace();
+            assertEquals( json.length(), index );
+            return value;
+        }
+
+        private Object value() {
+
+            skipWhitespace();
+            char c = json.charAt( index );
+            if ( c == '{' ) {
+                return object();
+            }
+            if ( c == '[' ) {
+                return array();
+            }
+            if ( c == '"' ) {
+                return string();
+            }
+            return number();
+        }
+
+        private Map<String, Object> object() {
+
+            Map<String, Object> object = new LinkedHashMap<String, Object>();
+            expect( '{' );
+            if ( peek() == '}' ) {
+                index++;
+                return object;
+            }
+            do {
+                skipWhitespace();
+                String name = string();
+                expect( ':' );
+                object.put( name, value() );
+            }
+            while (next( ',', '}' ));
+            return object;
+        }
+
+        private List<Object> array() {
+
+            List<Object> array = new ArrayList<Object>();
+            expect( '[' );
+            if ( peek() == ']' ) {
+                index++;
+                return array;
+            }
+            do {
+                array.add( value() );
+            }
+            while (next( ',', ']' ));
+            return array;
+        }
+
+        private String string() {
+
+            expect( '"' );
+            StringBuilder stringBuilder = new StringBuilder();
+            char c;
+            while (( c = json.charAt( index++ ) ) != '"') {
+                if ( c < 0x20 ) {
+                    fail( "Unescaped control character at " + index );
+                }
+                if ( c != '\\' ) {
+                    stringBuilder.append( c );
+                    continue;
+                }
+                c = json.charAt( index++ );
+                switch (c) {
+                    case 'n':
+                        stringBuilder.append( '\n' );
+                        break;
+                    case 'r':
+                        stringBuilder.append( '\r' );
+                        break;
+                    case 't':
+                        stringBuilder.append( '\t' );
+                        break;
+                    case 'b':
+                        stringBuilder.append( '\b' );
+                        break;
+                    case 'f':
+                        stringBuilder.append( '\f' );
+                        break;
+                    case 'u':
+                        stringBuilder.append( (char) Integer.parseInt( json.substring( index, index + 4 ), 16 ) );
+                        index += 4;
+                        break;
+                    case '"':
+                    case '\\':
+                    case '/':
+                        stringBuilder.append( c );
+                        break;
+                    default:
+                        fail( "Invalid escape at " + index );
+                        break;
+                }
+            }
+            return stringBuilder.toString();
+        }
+
+        private Double number() {
+
+            int start = index;
+            while (index < json.length() && "+-.eE0123456789".indexOf( json.charAt( index ) ) != -1) {
+                index++;
+            }
+            return Double.valueOf( json.substring( start, index ) );
+        }
+
+        /**
+         * @return True if another member or element follows.
+         */
+        private boolean next( char separator, char end ) {
+
+            char c = peek();
+            index++;
+            if ( c != separator && c != end ) {
+                fail( "Expected " + separator + " or " + end + " at " + index + " in " + json );
+            }
+            return c == separator;
+        }
+
+        private void expect( char expected ) {
+
+            if ( peek() != expected ) {
+                fail( "Expected " + expected + " at " + index + " in " + json );
+            }
+            index++;
+        }
+
+        private char peek() {
+
+            skipWhitespace();
+            return json.charAt( index );
+        }
+
+        private void skipWhitespace() {
+
+            while (index < json.length() && Character.isWhitespace( json.charAt( index ) )) {
+                index++;
+            }
+        }
+    }
+}
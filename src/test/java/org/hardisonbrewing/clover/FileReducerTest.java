@@ -0,0 +1,188 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import generated.ClassMetrics;
+import generated.Construct;
+import generated.FileMetrics;
+import generated.Line;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileReducerTest {
+
+    private generated.File file;
+    private RevisionColumn revisions;
+
+    @Before
+    public void setUp() {
+
+        file = new generated.File();
+        file.setName( "Foo.java" );
+        file.setPath( "/src/Foo.java" );
+        file.getLine().add( line( 1, Construct.METHOD, 1 ) );
+        file.getLine().add( line( 2, Construct.STMT, 1 ) );
+        file.getLine().add( line( 3, Construct.STMT, 0 ) );
+
+        ClassMetrics classMetrics = new ClassMetrics();
+        classMetrics.setMethods( 1 );
+        generated.Class _class = new generated.Class();
+        _class.setName( "Foo" );
+        _class.setMetrics( classMetrics );
+        file.getClazz().add( _class );
+
+        revisions = new RevisionColumn();
+        revisions.add( 5 );
+        revisions.add( 10 );
+        revisions.add( 20 );
+    }
+
+    @Test
+    public void keepsLinesAfterCutoff() {
+
+        generated.File fileReduced = FileReducer.reduce( file, revisions, 5 );
+
+        assertEquals( "Foo.java", fileReduced.getName() );
+        assertEquals( "/src/Foo.java", fileReduced.getPath() );
+        assertLines( fileReduced.getLine(), 2, 3 );
+
+        FileMetrics metrics = fileReduced.getMetrics();
+        assertEquals( 2, metrics.getStatements() );
+        assertEquals( 1, metrics.getCoveredstatements() );
+        assertEquals( 0, metrics.getMethods() );
+        assertEquals( 1, fileReduced.getClazz().size() );
+        assertEquals( 2, fileReduced.getClazz().get( 0 ).getMetrics().getStatements() );
+    }
+
+    @Test
+    public void comparesEachLineWithItsOwnRevision() {
+
+        assertLines( FileReducer.reduce( file, revisions, 4 ).getLine(), 1, 2, 3 );
+        assertLines( FileReducer.reduce( file, revisions, 10 ).getLine(), 3 );
+        assertNull( FileReducer.reduce( file, revisions, 20 ) );
+    }
+
+    @Test
+    public void sortsLinesOutOfOrder() {
+
+        List<Line> lines = file.getLine();
+        lines.add( 0, lines.remove( 2 ) );
+
+        generated.File fileReduced = FileReducer.reduce( file, revisions, 0 );
+
+        assertLines( fileReduced.getLine(), 1, 2, 3 );
+        assertEquals( 1, fileReduced.getMetrics().getMethods() );
+        assertEquals( 1, fileReduced.getMetrics().getCoveredmethods() );
+    }
+
+    @Test
+    public void shuffledLinesTotalLikeSortedLines() {
+
+        generated.File sorted = new generated.File();
+        sorted.setName( "Bar.java" );
+        sorted.setPath( "/src/Bar.java" );
+        RevisionColumn revisions = new RevisionColumn();
+
+        // two classes of three methods, each method followed by statements and a branch
+        for (int num = 1; num <= 60; num++) {
+            Construct type = num % 10 == 1 ? Construct.METHOD : ( num % 10 == 5 ? Construct.COND : Construct.STMT );
+            Line line = line( num, type, num % 3 );
+            if ( type == Construct.COND ) {
+                line.setTruecount( num % 2 );
+                line.setFalsecount( 1 );
+            }
+            sorted.getLine().add( line );
+            revisions.add( num % 4 == 0 ? 1 : 10 );
+        }
+        for (String name : new String[] { "Bar", "Bar.Inner" }) {
+            ClassMetrics classMetrics = new ClassMetrics();
+            classMetrics.setMethods( 3 );
+            generated.Class _class = new generated.Class();
+            _class.setName( name );
+            _class.setMetrics( classMetrics );
+            sorted.getClazz().add( _class );
+        }
+
+        generated.File shuffled = new generated.File();
+        shuffled.setName( sorted.getName() );
+        shuffled.setPath( sorted.getPath() );
+        shuffled.getClazz().addAll( sorted.getClazz() );
+        List<Line> lines = new ArrayList<Line>( sorted.getLine() );
+        Collections.shuffle( lines, new Random( 42 ) );
+        shuffled.getLine().addAll( lines );
+
+        generated.File sortedReduced = FileReducer.reduce( sorted, revisions, 5 );
+        generated.File shuffledReduced = FileReducer.reduce( shuffled, revisions, 5 );
+
+        assertEquals( 45, sortedReduced.getLine().size() );
+        assertEquals( 2, sortedReduced.getClazz().size() );
+        assertEquals( describe( sortedReduced ), describe( shuffledReduced ) );
+    }
+
+    /**
+     * @return The line numbers and every metric of the file and its classes.
+     */
+    private static String describe( generated.File file ) {
+
+        StringBuilder stringBuilder = new StringBuilder();
+        for (Line line : file.getLine()) {
+            stringBuilder.append( line.getNum() ).append( ' ' );
+        }
+        FileMetrics fileMetrics = file.getMetrics();
+        stringBuilder.append( "\nfile " ).append( fileMetrics.getLoc() ).append( ' ' ).append( fileMetrics.getNcloc() ).append( ' ' ).append( fileMetrics.getClasses() );
+        stringBuilder.append( ' ' ).append( describe( fileMetrics ) );
+        for (generated.Class _class : file.getClazz()) {
+            stringBuilder.append( "\n" ).append( _class.getName() ).append( ' ' ).append( describe( _class.getMetrics() ) );
+        }
+        return stringBuilder.toString();
+    }
+
+    private static String describe( ClassMetrics metrics ) {
+
+        return metrics.getComplexity() + " " + metrics.getElements() + " " + metrics.getCoveredelements() + " " + metrics.getConditionals() + " " + metrics.getCoveredconditionals() + " " + metrics.getStatements() + " " + metrics.getCoveredstatements() + " " + metrics.getMethods() + " " + metrics.getCoveredmethods();
+    }
+
+    private static Line line( int num, Construct type, int count ) {
+
+        Line line = new Line();
+        line.setNum( num );
+        line.setType( type );
+        line.setCount( count );
+        if ( type == Construct.METHOD ) {
+            line.setComplexity( 1 );
+        }
+        return line;
+    }
+
+    private static void assertLines( List<Line> lines, int... expected ) {
+
+        int[] actual = new int[lines.size()];
+        for (int i = 0; i < actual.length; i++) {
+            actual[i] = lines.get( i ).getNum();
+        }
+        assertEquals( Arrays.toString( expected ), Arrays.toString( actual ) );
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs the backend against a repository with two commits at known committer
+ * times.
+ */
+public class GitBackendTest {
+
+    private static final long FIRST = 1000000000L;
+    private static final long SECOND = 1100000000L;
+    private static final long THIRD = 1200000000L;
+
+    private File directory;
+    private File changed;
+    private File unchanged;
+    private GitBackend vcsBackend;
+
+    @Before
+    public void setUp() throws Exception {
+
+        directory = File.createTempFile( "git-backend", "" );
+        directory.delete();
+        directory.mkdirs();
+
+        changed = new File( directory, "Changed.java" );
+        unchanged = new File( directory, "Un changed.java" );
+
+        git( FIRST, "init", "-q" );
+        FileUtils.fileWrite( changed.getPath(), "UTF-8", "one\ntwo\n" );
+        FileUtils.fileWrite( unchanged.getPath(), "UTF-8", "one\n" );
+        git( FIRST, "add", "-A" );
+        git( FIRST, "commit", "-q", "-m", "first" );
+
+        FileUtils.fileWrite( changed.getPath(), "UTF-8", "one\nTWO\n" );
+        git( SECOND, "commit", "-q", "-a", "-m", "second" );
+
+        vcsBackend = new GitBackend( directory, 0 );
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        if ( vcsBackend != null ) {
+            vcsBackend.close();
+        }
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void infoFromOneLog() throws Exception {
+
+        long started = ProcessExecutor.getStartedCount();
+
+        assertEquals( SECOND, vcsBackend.info( changed.getPath() ).getLastChangedRevision() );
+        assertEquals( FIRST, vcsBackend.info( unchanged.getPath() ).getLastChangedRevision() );
+        assertEquals( "/Changed.java", vcsBackend.info( changed.getPath() ).getPath() );
+
+        assertEquals( 1, ProcessExecutor.getStartedCount() - started );
+    }
+
+    @Test
+    public void changedPathsSinceCutoff() throws Exception {
+
+        Set<String> changedPaths = vcsBackend.findChangedPaths( directory.getPath(), ( FIRST + SECOND ) / 2 );
+
+        assertEquals( Collections.singleton( changed.getCanonicalPath() ), changedPaths );
+        assertEquals( SECOND, vcsBackend.info( changed.getPath() ).getRevision() );
+        assertEquals( 0, vcsBackend.info( unchanged.getPath() ).getRevision() );
+    }
+
+    @Test
+    public void changedPathsFromMerge() throws Exception {
+
+        // committed on a branch before the cutoff, merged after it
+        File merged = new File( directory, "Merged.java" );
+        git( SECOND, "checkout", "-q", "-b", "topic" );
+        FileUtils.fileWrite( merged.getPath(), "UTF-8", "one\n" );
+        git( SECOND, "add", "-A" );
+        git( SECOND, "commit", "-q", "-m", "topic" );
+        git( SECOND, "checkout", "-q", "-" );
+        git( THIRD, "merge", "-q", "--no-ff", "-m", "merge", "topic" );
+
+        Set<String> changedPaths = vcsBackend.findChangedPaths( directory.getPath(), ( SECOND + THIRD ) / 2 );
+
+        assertEquals( Collections.singleton( merged.getCanonicalPath() ), changedPaths );
+        assertEquals( THIRD, vcsBackend.info( merged.getPath() ).getRevision() );
+    }
+
+    @Test
+    public void changedPathsFromRename() throws Exception {
+
+        File renamed = new File( directory, "Renamed.java" );
+        git( THIRD, "mv", changed.getName(), renamed.getName() );
+        git( THIRD, "commit", "-q", "-m", "rename" );
+
+        Set<String> changedPaths = vcsBackend.findChangedPaths( directory.getPath(), ( SECOND + THIRD ) / 2 );
+
+        assertEquals( new HashSet<String>( Arrays.asList( changed.getCanonicalPath(), renamed.getCanonicalPath() ) ), changedPaths );
+    }
+
+    @Test
+    public void blamesCommitTimes() throws Exception {
+
+        RevisionColumn revisions = new RevisionColumn();
+        vcsBackend.blame( changed.getPath(), revisions );
+
+        assertArrayEquals( new long[] { FIRST, SECOND }, revisions.toArray() );
+    }
+
+    @Test
+    public void blamesLocalModifications() throws Exception {
+
+        FileUtils.fileWrite( changed.getPath(), "UTF-8", "one\nTWO\nthree\n" );
+
+        assertEquals( Collections.singleton( changed.getCanonicalPath() ), vcsBackend.findModifiedPaths( directory.getPath() ) );
+
+        RevisionColumn revisions = new RevisionColumn();
+        vcsBackend.blame( changed.getPath(), revisions );
+
+        assertArrayEquals( new long[] { FIRST, SECOND, RevisionColumn.LOCAL_MODIFICATION }, revisions.toArray() );
+    }
+
+    @Test
+    public void noModifiedPaths() throws Exception {
+
+        assertEquals( new HashSet<String>(), vcsBackend.findModifiedPaths( directory.getPath() ) );
+    }
+
+    private void git( long date, String... args ) throws Exception {
+
+        String[] cmd = new String[args.length + 1];
+        cmd[0] = "git";
+        System.arraycopy( args, 0, cmd, 1, args.length );
+
+        ProcessBuilder processBuilder = new ProcessBuilder( Arrays.asList( cmd ) );
+        processBuilder.directory( directory );
+        processBuilder.redirectErrorStream( true );
+        processBuilder.environment().put( "GIT_AUTHOR_NAME", "test" );
+        processBuilder.environment().put( "GIT_AUTHOR_EMAIL", "test@example.com" );
+        processBuilder.environment().put( "GIT_COMMITTER_NAME", "test" );
+        processBuilder.environment().put( "GIT_COMMITTER_EMAIL", "test@example.com" );
+        processBuilder.environment().put( "GIT_AUTHOR_DATE", "@" + date + " +0000" );
+        processBuilder.environment().put( "GIT_COMMITTER_DATE", "@" + date + " +0000" );
+
+        Process process = processBuilder.start();
+        String output = IOUtil.toString( process.getInputStream() );
+        if ( process.waitFor() != 0 ) {
+            throw new IllegalStateException( Arrays.asList( cmd ) + " failed: " + output );
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.File;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GitBlameStreamConsumerTest {
+
+    private static final String FIRST = "1111111111111111111111111111111111111111";
+    private static final String SECOND = "2222222222222222222222222222222222222222";
+    private static final String NOT_COMMITTED = "0000000000000000000000000000000000000000";
+
+    private File directory;
+    private CommitDateResolver commitDateResolver;
+
+    @Before
+    public void setUp() throws Exception {
+
+        directory = File.createTempFile( "git-blame", "" );
+        directory.delete();
+        directory.mkdirs();
+        commitDateResolver = new CommitDateResolver( directory );
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        commitDateResolver.close();
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void parsesHunks() {
+
+        RevisionColumn revisions = new RevisionColumn();
+        GitBlameStreamConsumer streamConsumer = new GitBlameStreamConsumer( revisions, commitDateResolver );
+
+        String[] lines = new String[] { //
+        SECOND + " 2 2 1", "author a", "committer-time 200", "summary second", "filename Foo.java", //
+                FIRST + " 1 1 1", "committer-time 100", "filename Foo.java", //
+                NOT_COMMITTED + " 3 3 2", "committer-time 300", "filename Foo.java", //
+                FIRST + " 3 5 1", "filename Foo.java" };
+
+        for (String line : lines) {
+            streamConsumer.consumeLine( line );
+        }
+
+        long local = RevisionColumn.LOCAL_MODIFICATION;
+        assertArrayEquals( new long[] { 100, 200, local, local, 100 }, revisions.toArray() );
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsMalformedHunk() {
+
+        new GitBlameStreamConsumer( new RevisionColumn(), commitDateResolver ).consumeLine( FIRST + " 1 1" );
+    }
+}
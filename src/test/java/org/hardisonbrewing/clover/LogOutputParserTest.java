@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class LogOutputParserTest {
+
+    private static final String LOG = "" + //
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + //
+            "<log>\n" + //
+            "<logentry\n   revision=\"12\">\n" + //
+            "<paths>\n" + //
+            "<path\n   action=\"M\"\n   prop-mods=\"false\"\n   text-mods=\"true\"\n   kind=\"file\">/trunk/src/Foo.java</path>\n" + //
+            "<path action=\"A\" kind=\"file\"\n   copyfrom-path=\"/trunk/src/a&gt;b.java\"\n   copyfrom-rev=\"3\">/trunk/src/R&amp;D &lt;1&gt;.java</path>\n" + //
+            "</paths>\n" + //
+            "</logentry>\n" + //
+            "<logentry revision=\"13\"><paths><path action=\"D\" kind=\"file\">/trunk/src/Bar.java</path></paths></logentry>\n" + //
+            "</log>\n";
+
+    @Test
+    public void collectsPaths() throws Exception {
+
+        Set<String> paths = new HashSet<String>();
+        new LogOutputParser( paths ).parse( new ByteArrayInputStream( LOG.getBytes( "UTF-8" ) ) );
+
+        Set<String> expected = new HashSet<String>();
+        expected.add( "/trunk/src/Foo.java" );
+        expected.add( "/trunk/src/R&D <1>.java" );
+        expected.add( "/trunk/src/Bar.java" );
+        assertEquals( expected, paths );
+    }
+
+    @Test
+    public void collectsCopiedDirectoryAsTree() throws Exception {
+
+        String log = "" + //
+                "<log><logentry revision=\"14\"><paths>\n" + //
+                "<path action=\"A\" kind=\"dir\" copyfrom-path=\"/trunk/src/a\" copyfrom-rev=\"13\">/trunk/src/b</path>\n" + //
+                "<path action=\"A\" kind=\"dir\">/trunk/src/c</path>\n" + //
+                "<path action=\"M\" kind=\"dir\" prop-mods=\"true\">/trunk</path>\n" + //
+                "<path action=\"A\" copyfrom-path=\"/branches/x/d\" copyfrom-rev=\"13\">/trunk/src/d</path>\n" + //
+                "</paths></logentry></log>\n";
+
+        Set<String> paths = new HashSet<String>();
+        new LogOutputParser( paths ).parse( new ByteArrayInputStream( log.getBytes( "UTF-8" ) ) );
+
+        // a property change on a directory, e.g. merge info, lists its files
+        Set<String> expected = new HashSet<String>();
+        expected.add( "/trunk/src/b/" );
+        expected.add( "/trunk/src/c/" );
+        expected.add( "/trunk" );
+        expected.add( "/trunk/src/d/" );
+        assertEquals( expected, paths );
+    }
+}
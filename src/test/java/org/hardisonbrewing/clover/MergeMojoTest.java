@@ -0,0 +1,314 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import generated.Construct;
+import generated.Coverage;
+import generated.Line;
+import generated.Project;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.hardisonbrewing.jaxb.JAXB;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MergeMojoTest {
+
+    private static final String[] PACKAGES = new String[] { "org.sample", "org.sample.a", "org.sample.b" };
+    private static final String[] FILES = new String[] { "Bar.java", "Baz.java", "Foo.java", "Qux.java" };
+
+    private static final long FIRST = 1000000000L;
+    private static final long SECOND = 1100000000L;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+
+        directory = File.createTempFile( "merge", "" );
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void mergesShardsIntoUnshardedReport() throws Exception {
+
+        File unsharded = new File( directory, "clover-reduced.xml" );
+        write( unsharded, null );
+
+        Shard shard1 = new Shard( 1, 2 );
+        Shard shard2 = new Shard( 2, 2 );
+        int files1 = write( new File( directory, "clover-reduced-" + shard1.getLabel() + ".xml" ), shard1 );
+        int files2 = write( new File( directory, "clover-reduced-" + shard2.getLabel() + ".xml" ), shard2 );
+        assertTrue( files1 > 0 && files2 > 0 );
+        assertEquals( PACKAGES.length * FILES.length, files1 + files2 );
+
+        File merged = new File( directory, "clover-merged.xml" );
+
+        MergeMojo mergeMojo = new MergeMojo();
+        mergeMojo.setPartials( new File( directory, "clover-reduced-shard*.xml" ).getPath() );
+        mergeMojo.setOutput( merged.getPath() );
+        mergeMojo.execute();
+
+        assertEquals( FileUtils.fileRead( unsharded, "UTF-8" ), FileUtils.fileRead( merged, "UTF-8" ) );
+    }
+
+    /**
+     * The small files of <code>org.a</code> are blamed last, so
+     * <code>org.b</code> finishes first in every run.
+     */
+    @Test
+    public void mergesShardsReducedOutOfOrder() throws Exception {
+
+        File workingCopy = new File( directory, "work" );
+        workingCopy.mkdirs();
+        File reportDirectory = new File( directory, "report" );
+        reportDirectory.mkdirs();
+
+        Project project = coverage().getProject();
+        MetricsAccumulator projectAccumulator = new MetricsAccumulator();
+        String[][] packages = new String[][] { { "org.a", "A.java", "B.java", "C.java", "D.java", "E.java", "F.java", "Zed.java" }, { "org.b", "G.java", "H.java", "J.java", "K.java" } };
+
+        for (String[] files : packages) {
+
+            MetricsAccumulator packageAccumulator = new MetricsAccumulator();
+
+            generated.Package _package = new generated.Package();
+            _package.setName( files[0] );
+
+            for (int i = 1; i < files.length; i++) {
+                int lineCount = files[0].equals( "org.a" ) && i < files.length - 1 ? 3 : 1000;
+                File source = new File( workingCopy, "src/" + files[0].replace( '.', '/' ) + "/" + files[i] );
+                source.getParentFile().mkdirs();
+                FileUtils.fileWrite( source.getPath(), "UTF-8", lines( "first", lineCount ) );
+                generated.File file = file( files[i], source.getCanonicalPath(), lineCount );
+                packageAccumulator.addFile( file.getMetrics() );
+                _package.getFile().add( file );
+            }
+
+            _package.setMetrics( packageAccumulator.toPackageMetrics() );
+            projectAccumulator.addPackage( packageAccumulator );
+            project.getPackage().add( _package );
+        }
+
+        project.setMetrics( projectAccumulator.toProjectMetrics() );
+        Coverage coverage = coverage();
+        coverage.setProject( project );
+        File cloverReport = new File( reportDirectory, "clover.xml" );
+        JAXB.marshal( cloverReport, coverage );
+
+        git( workingCopy, FIRST, "init", "-q" );
+        git( workingCopy, FIRST, "add", "-A" );
+        git( workingCopy, FIRST, "commit", "-q", "-m", "first" );
+        for (String[] files : packages) {
+            for (int i = 1; i < files.length; i++) {
+                File source = new File( workingCopy, "src/" + files[0].replace( '.', '/' ) + "/" + files[i] );
+                String content = FileUtils.fileRead( source, "UTF-8" );
+                FileUtils.fileWrite( source.getPath(), "UTF-8", "second" + content.substring( content.indexOf( '\n' ) ) );
+            }
+        }
+        git( workingCopy, SECOND, "commit", "-q", "-a", "-m", "second" );
+
+        reduct( cloverReport, workingCopy, null );
+        reduct( cloverReport, workingCopy, "1/2" );
+        reduct( cloverReport, workingCopy, "2/2" );
+
+        File unsharded = new File( reportDirectory, "clover-reduced.xml" );
+        List<String> unshardedPackages = CoverageCursor.readPackageNames( unsharded );
+        assertEquals( Arrays.asList( "org.a", "org.b" ), unshardedPackages );
+        for (String packageName : unshardedPackages) {
+            assertEquals( 2, shardsListing( reportDirectory, packageName ) );
+        }
+
+        File merged = new File( reportDirectory, "clover-merged.xml" );
+
+        MergeMojo mergeMojo = new MergeMojo();
+        mergeMojo.setPartials( new File( reportDirectory, "clover-reduced-shard*.xml" ).getPath() );
+        mergeMojo.setOutput( merged.getPath() );
+        mergeMojo.execute();
+
+        assertEquals( FileUtils.fileRead( unsharded, "UTF-8" ), FileUtils.fileRead( merged, "UTF-8" ) );
+    }
+
+    private static void reduct( File cloverReport, File workingCopy, String shard ) throws Exception {
+
+        ReductMojo reductMojo = new ReductMojo();
+        reductMojo.setClover( cloverReport.getPath() );
+        reductMojo.setWorkingCopy( workingCopy.getPath() );
+        reductMojo.setVcs( "git" );
+        reductMojo.setCutoffDate( "2003-01-01" );
+        reductMojo.setThreads( 1 );
+        reductMojo.setLookahead( 256 );
+        reductMojo.setOriginalCopy( "none" );
+        reductMojo.setShard( shard );
+        reductMojo.execute();
+    }
+
+    /**
+     * @return The number of partial reports listing the package.
+     */
+    private static int shardsListing( File reportDirectory, String packageName ) throws Exception {
+
+        int count = 0;
+        for (int i = 1; i <= 2; i++) {
+            File partial = new File( reportDirectory, "clover-reduced-" + new Shard( i, 2 ).getLabel() + ".xml" );
+            if ( CoverageCursor.readPackageNames( partial ).contains( packageName ) ) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String lines( String first, int lineCount ) {
+
+        StringBuilder stringBuilder = new StringBuilder( first );
+        stringBuilder.append( '\n' );
+        for (int i = 2; i <= lineCount; i++) {
+            stringBuilder.append( "line " ).append( i ).append( '\n' );
+        }
+        return stringBuilder.toString();
+    }
+
+    private static void git( File directory, long date, String... args ) throws Exception {
+
+        String[] cmd = new String[args.length + 1];
+        cmd[0] = "git";
+        System.arraycopy( args, 0, cmd, 1, args.length );
+
+        ProcessBuilder processBuilder = new ProcessBuilder( Arrays.asList( cmd ) );
+        processBuilder.directory( directory );
+        processBuilder.redirectErrorStream( true );
+        processBuilder.environment().put( "GIT_AUTHOR_NAME", "test" );
+        processBuilder.environment().put( "GIT_AUTHOR_EMAIL", "test@example.com" );
+        processBuilder.environment().put( "GIT_COMMITTER_NAME", "test" );
+        processBuilder.environment().put( "GIT_COMMITTER_EMAIL", "test@example.com" );
+        processBuilder.environment().put( "GIT_AUTHOR_DATE", "@" + date + " +0000" );
+        processBuilder.environment().put( "GIT_COMMITTER_DATE", "@" + date + " +0000" );
+
+        Process process = processBuilder.start();
+        String output = IOUtil.toString( process.getInputStream() );
+        if ( process.waitFor() != 0 ) {
+            throw new IllegalStateException( Arrays.asList( cmd ) + " failed: " + output );
+        }
+    }
+
+    /**
+     * Writes the report as <code>reduct</code> would, leaving out the files
+     * outside the shard and any package left empty.
+     * 
+     * @return The number of files written.
+     */
+    private int write( File output, Shard shard ) throws Exception {
+
+        ReducedReportWriter reportWriter = new ReducedReportWriter( output, false );
+        reportWriter.open( coverage() );
+
+        MetricsAccumulator projectAccumulator = new MetricsAccumulator();
+        int count = 0;
+
+        for (String packageName : PACKAGES) {
+
+            MetricsAccumulator packageAccumulator = new MetricsAccumulator();
+
+            generated.Package _package = new generated.Package();
+            _package.setName( packageName );
+
+            for (int i = 0; i < FILES.length; i++) {
+                String relativePath = "src/main/java/" + packageName.replace( '.', '/' ) + "/" + FILES[i];
+                if ( shard != null && !shard.contains( relativePath ) ) {
+                    continue;
+                }
+                generated.File file = file( FILES[i], "/work/" + relativePath, i + 1 );
+                packageAccumulator.addFile( file.getMetrics() );
+                _package.getFile().add( file );
+                count++;
+            }
+
+            if ( _package.getFile().isEmpty() ) {
+                continue;
+            }
+
+            _package.setMetrics( packageAccumulator.toPackageMetrics() );
+            projectAccumulator.addPackage( packageAccumulator );
+            reportWriter.writePackage( _package );
+        }
+
+        reportWriter.close( projectAccumulator.toProjectMetrics() );
+        return count;
+    }
+
+    private static Coverage coverage() {
+
+        Project project = new Project();
+        project.setName( "sample" );
+        project.setTimestamp( 2 );
+
+        Coverage coverage = new Coverage();
+        coverage.setClover( "3.1.12" );
+        coverage.setGenerated( 1 );
+        coverage.setProject( project );
+        return coverage;
+    }
+
+    private static generated.File file( String name, String path, int lineCount ) {
+
+        MetricsAccumulator classAccumulator = new MetricsAccumulator();
+        List<Line> lines = new ArrayList<Line>();
+
+        for (int i = 0; i < lineCount; i++) {
+            Line line = new Line();
+            line.setNum( i + 1 );
+            line.setType( i == 0 ? Construct.METHOD : Construct.STMT );
+            line.setCount( i % 2 );
+            if ( i == 0 ) {
+                line.setComplexity( 1 );
+            }
+            classAccumulator.addLine( line );
+            lines.add( line );
+        }
+
+        generated.Class _class = new generated.Class();
+        _class.setName( name.substring( 0, name.indexOf( '.' ) ) );
+        _class.setMetrics( classAccumulator.toClassMetrics() );
+
+        MetricsAccumulator fileAccumulator = new MetricsAccumulator();
+        fileAccumulator.addClass( classAccumulator );
+
+        generated.File file = new generated.File();
+        file.setName( name );
+        file.setPath( path );
+        file.setMetrics( fileAccumulator.toFileMetrics() );
+        file.getClazz().add( _class );
+        file.getLine().addAll( lines );
+        return file;
+    }
+}
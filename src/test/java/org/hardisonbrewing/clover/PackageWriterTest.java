@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertEquals;
+import generated.Coverage;
+import generated.FileMetrics;
+import generated.Project;
+import generated.ProjectMetrics;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.hardisonbrewing.jaxb.JAXB;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PackageWriterTest {
+
+    private File directory;
+    private File file;
+    private ReducedReportWriter reportWriter;
+    private PackageWriter packageWriter;
+
+    @Before
+    public void setUp() throws Exception {
+
+        directory = File.createTempFile( "package-writer", "" );
+        directory.delete();
+        directory.mkdirs();
+
+        file = new File( directory, "clover-reduced.xml" );
+        reportWriter = new ReducedReportWriter( file, false );
+        reportWriter.open( coverage() );
+        packageWriter = new PackageWriter( reportWriter, new ExecutionMetrics() );
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void writesPackagesInReportOrder() throws Exception {
+
+        PackageWriter.PackageReduction a1 = packageWriter.fileQueued( "org.a" );
+        PackageWriter.PackageReduction a2 = packageWriter.fileQueued( "org.a" );
+        packageWriter.packageParsed( "org.a" );
+        PackageWriter.PackageReduction b3 = packageWriter.fileQueued( "org.b" );
+        packageWriter.packageParsed( "org.b" );
+        PackageWriter.PackageReduction c4 = packageWriter.fileQueued( "org.c" );
+        PackageWriter.PackageReduction c5 = packageWriter.fileQueued( "org.c" );
+        packageWriter.packageParsed( "org.c" );
+
+        // the last package finishes first, and its files in reverse
+        packageWriter.fileReduced( c5, 5, file( "C5.java", 5 ) );
+        packageWriter.fileReduced( c4, 4, file( "C4.java", 4 ) );
+        packageWriter.fileReduced( b3, 3, file( "B3.java", 3 ) );
+        packageWriter.fileReduced( a2, 2, file( "A2.java", 2 ) );
+        packageWriter.fileReduced( a1, 1, file( "A1.java", 1 ) );
+
+        assertEquals( "org.a A1.java A2.java org.b B3.java org.c C4.java C5.java", close() );
+    }
+
+    @Test
+    public void dropsEmptyPackage() throws Exception {
+
+        PackageWriter.PackageReduction a1 = packageWriter.fileQueued( "org.a" );
+        packageWriter.packageParsed( "org.a" );
+        PackageWriter.PackageReduction b2 = packageWriter.fileQueued( "org.b" );
+        PackageWriter.PackageReduction b3 = packageWriter.fileQueued( "org.b" );
+        packageWriter.packageParsed( "org.b" );
+        PackageWriter.PackageReduction c4 = packageWriter.fileQueued( "org.c" );
+        packageWriter.packageParsed( "org.c" );
+
+        // the packages around the empty one still follow it
+        packageWriter.fileReduced( c4, 4, file( "C4.java", 4 ) );
+        packageWriter.fileReduced( b3, 3, null );
+        packageWriter.fileReduced( a1, 1, file( "A1.java", 1 ) );
+        packageWriter.fileReduced( b2, 2, null );
+
+        assertEquals( "org.a A1.java org.c C4.java", close() );
+        assertEquals( Integer.valueOf( 2 ), packageWriter.getProjectMetrics().getPackages() );
+    }
+
+    @Test
+    public void holdsPackageUntilParsedAndReduced() throws Exception {
+
+        PackageWriter.PackageReduction a1 = packageWriter.fileQueued( "org.a" );
+        PackageWriter.PackageReduction a2 = packageWriter.fileQueued( "org.a" );
+
+        // reduced before the end tag, so the package is still pending
+        packageWriter.fileReduced( a1, 1, file( "A1.java", 1 ) );
+        packageWriter.fileReduced( a2, 2, file( "A2.java", 2 ) );
+        assertEquals( Integer.valueOf( 0 ), packageWriter.getProjectMetrics().getPackages() );
+
+        PackageWriter.PackageReduction a3 = packageWriter.fileQueued( "org.a" );
+        packageWriter.packageParsed( "org.a" );
+        assertEquals( Integer.valueOf( 0 ), packageWriter.getProjectMetrics().getPackages() );
+
+        packageWriter.fileReduced( a3, 3, file( "A3.java", 3 ) );
+        assertEquals( Integer.valueOf( 1 ), packageWriter.getProjectMetrics().getPackages() );
+
+        assertEquals( "org.a A1.java A2.java A3.java", close() );
+    }
+
+    @Test
+    public void sumsProjectMetricsAcrossThreads() throws Exception {
+
+        final int threadCount = 4;
+        final int packageCount = 50;
+        final int fileCount = 20;
+
+        final PackageWriter.PackageReduction[] packageReductions = new PackageWriter.PackageReduction[packageCount * fileCount];
+        for (int i = 0; i < packageCount; i++) {
+            for (int j = 0; j < fileCount; j++) {
+                packageReductions[i * fileCount + j] = packageWriter.fileQueued( "org.p" + i );
+            }
+            packageWriter.packageParsed( "org.p" + i );
+        }
+
+        // each thread takes every fourth file, so packages finish on any thread
+        final CountDownLatch start = new CountDownLatch( 1 );
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < threadCount; t++) {
+            final int offset = t;
+            Thread thread = new Thread() {
+
+                @Override
+                public void run() {
+
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = offset; i < packageReductions.length; i += threadCount) {
+                        packageWriter.fileReduced( packageReductions[i], i, file( "F" + i + ".java", i + 1 ) );
+                    }
+                }
+            };
+            thread.start();
+            threads.add( thread );
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int files = packageCount * fileCount;
+        ProjectMetrics projectMetrics = packageWriter.getProjectMetrics();
+        assertEquals( Integer.valueOf( packageCount ), projectMetrics.getPackages() );
+        assertEquals( Integer.valueOf( files ), projectMetrics.getFiles() );
+        assertEquals( Integer.valueOf( files * ( files + 1 ) / 2 ), projectMetrics.getLoc() );
+
+        packageWriter.finish();
+        reportWriter.close( projectMetrics );
+
+        Coverage coverage = JAXB.unmarshal( file, Coverage.class );
+        List<generated.Package> packages = coverage.getProject().getPackage();
+        assertEquals( packageCount, packages.size() );
+        for (int i = 0; i < packageCount; i++) {
+            generated.Package _package = packages.get( i );
+            assertEquals( "org.p" + i, _package.getName() );
+            assertEquals( fileCount, _package.getFile().size() );
+            for (int j = 0; j < fileCount; j++) {
+                assertEquals( "F" + ( i * fileCount + j ) + ".java", _package.getFile().get( j ).getName() );
+            }
+        }
+    }
+
+    /**
+     * @return The packages and files of the written report, in order.
+     */
+    private String close() throws Exception {
+
+        packageWriter.finish();
+        reportWriter.close( packageWriter.getProjectMetrics() );
+
+        StringBuilder stringBuilder = new StringBuilder();
+        Coverage coverage = JAXB.unmarshal( file, Coverage.class );
+        for (generated.Package _package : coverage.getProject().getPackage()) {
+            stringBuilder.append( stringBuilder.length() == 0 ? "" : " " ).append( _package.getName() );
+            for (generated.File _file : _package.getFile()) {
+                stringBuilder.append( " " ).append( _file.getName() );
+            }
+        }
+        return stringBuilder.toString();
+    }
+
+    private static Coverage coverage() {
+
+        Project project = new Project();
+        project.setName( "sample" );
+
+        Coverage coverage = new Coverage();
+        coverage.setClover( "3.1.12" );
+        coverage.setProject( project );
+        return coverage;
+    }
+
+    private static generated.File file( String name, int loc ) {
+
+        FileMetrics fileMetrics = new MetricsAccumulator().toFileMetrics();
+        fileMetrics.setLoc( loc );
+
+        generated.File file = new generated.File();
+        file.setName( name );
+        file.setPath( "/work/" + name );
+        file.setMetrics( fileMetrics );
+        return file;
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import generated.Coverage;
+import generated.Project;
+import generated.ProjectMetrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Inflater;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.hardisonbrewing.jaxb.JAXB;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReducedReportWriterTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+
+        directory = File.createTempFile( "reduced-report", "" );
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void closeReplacesReport() throws Exception {
+
+        File file = new File( directory, "clover-reduced.xml" );
+        FileUtils.fileWrite( file.getPath(), "UTF-8", "previous" );
+
+        write( file, "org.sample" );
+
+        String xml = read( file );
+        assertTrue( xml, xml.contains( "org.sample" ) );
+        assertTrue( xml, xml.contains( "<metrics" ) );
+        assertFalse( new File( file.getPath() + ".tmp" ).exists() );
+    }
+
+    @Test
+    public void closeReplacesCompressedReport() throws Exception {
+
+        File file = new File( directory, "clover-reduced.xml.gz" );
+
+        write( file, "org.sample" );
+
+        String xml = read( file );
+        assertTrue( xml, xml.contains( "org.sample" ) );
+        assertTrue( xml, xml.endsWith( "</coverage>\n" ) );
+        assertFalse( new File( file.getPath() + ".tmp" ).exists() );
+        assertFalse( new File( file.getPath() + ".body" ).exists() );
+    }
+
+    @Test
+    public void compressedReportIsHeaderThenBody() throws Exception {
+
+        File file = new File( directory, "clover-reduced.xml.gz" );
+
+        write( file, "org.sample" );
+
+        List<String> members = members( Files.readAllBytes( file.toPath() ) );
+        assertEquals( 2, members.size() );
+
+        String header = members.get( 0 );
+        assertTrue( header, header.startsWith( "<?xml" ) );
+        assertTrue( header, header.contains( "<metrics" ) );
+        assertFalse( header, header.contains( "org.sample" ) );
+
+        String body = members.get( 1 );
+        assertTrue( body, body.contains( "org.sample" ) );
+        assertTrue( body, body.endsWith( "</coverage>\n" ) );
+
+        // a single gzip stream reads both members as one report
+        assertEquals( header + body, read( file ) );
+    }
+
+    @Test
+    public void abortKeepsPreviousCompressedReport() throws Exception {
+
+        File file = new File( directory, "clover-reduced.xml.gz" );
+        FileUtils.fileWrite( file.getPath(), "UTF-8", "previous" );
+
+        ReducedReportWriter reportWriter = new ReducedReportWriter( file, true );
+        reportWriter.open( coverage() );
+        reportWriter.writePackage( _package( "org.sample" ) );
+        reportWriter.abort();
+
+        assertEquals( "previous", FileUtils.fileRead( file, "UTF-8" ) );
+        assertFalse( new File( file.getPath() + ".tmp" ).exists() );
+        assertFalse( new File( file.getPath() + ".body" ).exists() );
+    }
+
+    @Test
+    public void abortKeepsPreviousReport() throws Exception {
+
+        File file = new File( directory, "clover-reduced.xml" );
+        FileUtils.fileWrite( file.getPath(), "UTF-8", "previous" );
+
+        ReducedReportWriter reportWriter = new ReducedReportWriter( file, true );
+        reportWriter.open( coverage() );
+        reportWriter.writePackage( _package( "org.sample" ) );
+        reportWriter.abort();
+
+        assertEquals( "previous", read( file ) );
+        assertFalse( new File( file.getPath() + ".tmp" ).exists() );
+    }
+
+    private void write( File file, String packageName ) throws Exception {
+
+        ReducedReportWriter reportWriter = new ReducedReportWriter( file, true );
+        reportWriter.open( coverage() );
+        reportWriter.writePackage( _package( packageName ) );
+        reportWriter.close( new ProjectMetrics() );
+    }
+
+    /**
+     * @return The content of each gzip member of the file, in order.
+     */
+    private List<String> members( byte[] bytes ) throws Exception {
+
+        List<String> members = new ArrayList<String>();
+
+        int offset = 0;
+        while (offset < bytes.length) {
+
+            // written by GZIPOutputStream, so a plain 10 byte header
+            assertEquals( (byte) 0x1f, bytes[offset] );
+            assertEquals( (byte) 0x8b, bytes[offset + 1] );
+            assertEquals( 0, bytes[offset + 3] );
+
+            Inflater inflater = new Inflater( true );
+            inflater.setInput( bytes, offset + 10, bytes.length - offset - 10 );
+
+            ByteArrayOutputStream member = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                member.write( buffer, 0, inflater.inflate( buffer ) );
+            }
+
+            // followed by the CRC and size trailer
+            offset = bytes.length - inflater.getRemaining() + 8;
+            inflater.end();
+
+            members.add( member.toString( "UTF-8" ) );
+        }
+
+        return members;
+    }
+
+    private String read( File file ) throws Exception {
+
+        InputStream inputStream = JAXB.openInputStream( file );
+        try {
+            return IOUtil.toString( inputStream, "UTF-8" );
+        }
+        finally {
+            IOUtil.close( inputStream );
+        }
+    }
+
+    private Coverage coverage() {
+
+        Project project = new Project();
+        project.setName( "sample" );
+
+        Coverage coverage = new Coverage();
+        coverage.setClover( "3.1.12" );
+        coverage.setProject( project );
+        return coverage;
+    }
+
+    private generated.Package _package( String name ) {
+
+        generated.Package _package = new generated.Package();
+        _package.setName( name );
+        _package.setMetrics( new generated.PackageMetrics() );
+        return _package;
+    }
+}
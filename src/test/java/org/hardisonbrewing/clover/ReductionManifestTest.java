@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import generated.Line;
+
+import java.io.File;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReductionManifestTest {
+
+    private File directory;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+
+        directory = File.createTempFile( "reduction-manifest", "" );
+        directory.delete();
+        directory.mkdirs();
+        file = new File( directory, "reduction-manifest" );
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void reusesMatchingInputs() throws Exception {
+
+        ReductionManifest reductionManifest = load();
+        reductionManifest.put( "Empty.java", 10, 20, 30, null );
+        reductionManifest.put( "Gone.java", 10, 20, 30, null );
+        reductionManifest.save();
+
+        reductionManifest = load();
+        assertFalse( reductionManifest.contains( "Empty.java", 10, 20, 31 ) );
+        assertFalse( reductionManifest.contains( "Empty.java", 11, 20, 30 ) );
+        assertFalse( reductionManifest.contains( "Empty.java", 10, 21, 30 ) );
+        assertFalse( reductionManifest.contains( "Other.java", 10, 20, 30 ) );
+        assertTrue( reductionManifest.contains( "Empty.java", 10, 20, 30 ) );
+        assertNull( reductionManifest.get( "Empty.java" ) );
+        reductionManifest.save();
+
+        // only the files of the last run are kept
+        reductionManifest = load();
+        assertTrue( reductionManifest.contains( "Empty.java", 10, 20, 30 ) );
+        assertFalse( reductionManifest.contains( "Gone.java", 10, 20, 30 ) );
+        reductionManifest.abort();
+    }
+
+    @Test
+    public void abortKeepsPreviousManifest() throws Exception {
+
+        ReductionManifest reductionManifest = load();
+        reductionManifest.put( "Empty.java", 10, 20, 30, null );
+        reductionManifest.save();
+
+        load().abort();
+
+        assertFalse( new File( file.getPath() + ".tmp" ).exists() );
+        assertTrue( load().contains( "Empty.java", 10, 20, 30 ) );
+    }
+
+    @Test
+    public void ignoresUnreadableManifest() throws Exception {
+
+        FileUtils.fileWrite( file.getPath(), "UTF-8", "not a manifest" );
+
+        ReductionManifest reductionManifest = load();
+        assertFalse( reductionManifest.contains( "Empty.java", 10, 20, 30 ) );
+        reductionManifest.put( "Empty.java", 10, 20, 30, null );
+        reductionManifest.save();
+
+        assertTrue( load().contains( "Empty.java", 10, 20, 30 ) );
+    }
+
+    @Test
+    public void copiesReducedFiles() throws Exception {
+
+        ReductionManifest reductionManifest = load();
+        reductionManifest.put( "Foo.java", 10, 20, 30, file( "Foo.java", 5 ) );
+        reductionManifest.put( "Bar.java", 10, 20, 30, file( "Bar.java", 7 ) );
+        reductionManifest.save();
+
+        // the second run copies the fragments the third one reads
+        reductionManifest = load();
+        assertTrue( reductionManifest.contains( "Bar.java", 10, 20, 30 ) );
+        reductionManifest.save();
+
+        reductionManifest = load();
+        assertTrue( reductionManifest.contains( "Bar.java", 10, 20, 30 ) );
+        generated.File reduced = reductionManifest.get( "Bar.java" );
+        assertEquals( "Bar.java", reduced.getName() );
+        assertEquals( 7, reduced.getLine().get( 0 ).getNum() );
+        reductionManifest.abort();
+    }
+
+    @Test
+    public void hashCoversTheWholeEntry() throws Exception {
+
+        generated.File file = file( "Foo.java", 5 );
+        long hash = ReductionManifest.hash( file );
+        assertEquals( hash, ReductionManifest.hash( file( "Foo.java", 5 ) ) );
+
+        file.getLine().get( 0 ).setTestsuccess( Boolean.FALSE );
+        assertNotEquals( hash, ReductionManifest.hash( file ) );
+
+        file = file( "Foo.java", 5 );
+        generated.Class clazz = new generated.Class();
+        clazz.setName( "Foo" );
+        file.getClazz().add( clazz );
+        assertNotEquals( hash, ReductionManifest.hash( file ) );
+    }
+
+    private ReductionManifest load() throws Exception {
+
+        ReductionManifest reductionManifest = new ReductionManifest( file );
+        reductionManifest.load();
+        return reductionManifest;
+    }
+
+    private static generated.File file( String name, int num ) {
+
+        Line line = new Line();
+        line.setNum( num );
+        line.setCount( 1 );
+
+        generated.File file = new generated.File();
+        file.setName( name );
+        file.setPath( "/src/" + name );
+        file.getLine().add( line );
+        return file;
+    }
+}
@@ -0,0 +1,242 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Drives the command line backend with a fake <code>svn</code> script which
+ * fails a given number of times before printing its blame output.
+ */
+public class RetryingVcsBackendTest {
+
+    private static final String BLAME = "     5    alice one\\n    12      bob two\\n";
+
+    private File directory;
+    private File script;
+    private File attempts;
+
+    @Before
+    public void setUp() throws Exception {
+
+        directory = File.createTempFile( "retrying-backend", "" );
+        directory.delete();
+        directory.mkdirs();
+
+        script = new File( directory, "svn" );
+        attempts = new File( directory, "attempts" );
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void retriesNetworkErrors() throws Exception {
+
+        writeScript( 2, "svn: E175002: Connection refused" );
+        CircuitBreaker circuitBreaker = new CircuitBreaker( 10, 100, 0 );
+        RetryingVcsBackend vcsBackend = vcsBackend( 2, 0, circuitBreaker );
+
+        RevisionColumn revisions = new RevisionColumn();
+        vcsBackend.blame( "Foo.java", revisions );
+
+        assertArrayEquals( new long[] { 5, 12 }, revisions.toArray() );
+        assertEquals( 3, attempts() );
+        assertEquals( 2, vcsBackend.getRetryCount() );
+        assertTrue( vcsBackend.getRetriedPaths().contains( "Foo.java" ) );
+    }
+
+    @Test
+    public void failsDeterministicErrorsAtOnce() throws Exception {
+
+        writeScript( 1, "svn: warning: W155010: The node 'Foo.java' was not found.\\nsvn: E200009: Could not perform blame" );
+        // a single counted failure would open the breaker
+        CircuitBreaker circuitBreaker = new CircuitBreaker( 1, 100, 60 * 1000L );
+        RetryingVcsBackend vcsBackend = vcsBackend( 2, 0, circuitBreaker );
+
+        try {
+            vcsBackend.blame( "Foo.java", new RevisionColumn() );
+            fail();
+        }
+        catch (IllegalStateException e) {
+            assertTrue( e.getMessage(), e.getMessage().contains( "E200009" ) );
+        }
+
+        assertEquals( 1, attempts() );
+        assertEquals( 0, vcsBackend.getRetryCount() );
+        assertEquals( 0, circuitBreaker.getOpenCount() );
+    }
+
+    @Test
+    public void countsTransientFailuresAgainstTheServer() throws Exception {
+
+        writeScript( 1, "svn: E170013: Unable to connect to a repository" );
+        CircuitBreaker circuitBreaker = new CircuitBreaker( 1, 100, 0 );
+        RetryingVcsBackend vcsBackend = vcsBackend( 1, 0, circuitBreaker );
+
+        vcsBackend.blame( "Foo.java", new RevisionColumn() );
+
+        assertEquals( 2, attempts() );
+        assertEquals( 1, circuitBreaker.getOpenCount() );
+    }
+
+    @Test
+    public void retriesTimeouts() throws Exception {
+
+        FileUtils.fileWrite( script.getPath(), "UTF-8", "#!/bin/sh\necho x >> '" + attempts.getPath() + "'\nexec sleep 10\n" );
+        script.setExecutable( true );
+
+        SvnCommandLineBackend svnBackend = new SvnCommandLineBackend( script.getPath(), null, directory, 200 );
+        RetryingVcsBackend vcsBackend = new RetryingVcsBackend( svnBackend, new SystemStreamLog(), 1, 0, new CircuitBreaker( 10, 100, 0 ) );
+
+        try {
+            vcsBackend.blame( "Foo.java", new RevisionColumn() );
+            fail();
+        }
+        catch (ProcessTimeoutException e) {
+            // expected
+        }
+
+        assertEquals( 2, attempts() );
+        assertEquals( 2, vcsBackend.getTimeoutCount() );
+    }
+
+    @Test
+    public void countsOnlyFilesAsRetriedPaths() throws Exception {
+
+        VcsBackend failingOnce = new VcsBackend() {
+
+            private int calls;
+
+            @Override
+            public VcsInfo info( String path ) throws Exception {
+
+                fail();
+                return null;
+            }
+
+            @Override
+            public void blame( String path, RevisionColumn revisions ) throws Exception {
+
+                failOnce();
+            }
+
+            @Override
+            public long findCutoffRevision( String workingCopy, String cutoffDate ) throws Exception {
+
+                failOnce();
+                return 1;
+            }
+
+            @Override
+            public Set<String> findChangedPaths( String workingCopy, long cutoffRevision ) throws Exception {
+
+                failOnce();
+                return Collections.emptySet();
+            }
+
+            @Override
+            public Set<String> findModifiedPaths( String workingCopy ) throws Exception {
+
+                failOnce();
+                return Collections.emptySet();
+            }
+
+            @Override
+            public void close() {
+
+                // do nothing
+            }
+
+            private void failOnce() {
+
+                if ( calls++ % 2 == 0 ) {
+                    throw new IllegalStateException( "svn: E175002: Connection refused" );
+                }
+            }
+        };
+
+        RetryingVcsBackend vcsBackend = new RetryingVcsBackend( failingOnce, new SystemStreamLog(), 1, 0, new CircuitBreaker( 10, 100, 0 ) );
+        vcsBackend.findCutoffRevision( "/work", "2013-01-01" );
+        vcsBackend.findChangedPaths( "/work", 1 );
+        vcsBackend.findModifiedPaths( "/work" );
+        vcsBackend.blame( "/work/Foo.java", new RevisionColumn() );
+
+        assertEquals( 4, vcsBackend.getRetryCount() );
+        assertEquals( Collections.singleton( "/work/Foo.java" ), vcsBackend.getRetriedPaths() );
+    }
+
+    @Test
+    public void classifiesErrors() {
+
+        assertTrue( RetryingVcsBackend.isTransient( new ProcessTimeoutException( "timed out" ) ) );
+        assertTrue( RetryingVcsBackend.isTransient( new IllegalStateException( "svn: E120108: Error running context" ) ) );
+        assertTrue( RetryingVcsBackend.isTransient( new Exception( new IllegalStateException( "svn: E000104: Connection reset by peer" ) ) ) );
+        assertFalse( RetryingVcsBackend.isTransient( new FileNotFoundException( "Foo.java" ) ) );
+        assertFalse( RetryingVcsBackend.isTransient( new IllegalStateException( "svn: E195012: Unable to find repository location" ) ) );
+        assertFalse( RetryingVcsBackend.isTransient( new IllegalStateException( "svn: warning: W155010: The node was not found" ) ) );
+        assertFalse( RetryingVcsBackend.isTransient( new IllegalStateException( "Unable to parse blame output at line 3" ) ) );
+    }
+
+    private RetryingVcsBackend vcsBackend( int retries, long timeout, CircuitBreaker circuitBreaker ) {
+
+        SvnCommandLineBackend svnBackend = new SvnCommandLineBackend( script.getPath(), null, directory, timeout );
+        return new RetryingVcsBackend( svnBackend, new SystemStreamLog(), retries, 0, circuitBreaker );
+    }
+
+    /**
+     * @param failures The number of calls which fail with the error before
+     * one succeeds.
+     */
+    private void writeScript( int failures, String error ) throws Exception {
+
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append( "#!/bin/sh\n" );
+        stringBuilder.append( "echo x >> '" + attempts.getPath() + "'\n" );
+        stringBuilder.append( "if [ $(wc -l < '" + attempts.getPath() + "') -le " + failures + " ]; then\n" );
+        stringBuilder.append( "  printf '" + error + "\\n' >&2\n" );
+        stringBuilder.append( "  exit 1\n" );
+        stringBuilder.append( "fi\n" );
+        stringBuilder.append( "printf '" + BLAME + "'\n" );
+
+        FileUtils.fileWrite( script.getPath(), "UTF-8", stringBuilder.toString() );
+        script.setExecutable( true );
+    }
+
+    private int attempts() throws Exception {
+
+        return FileUtils.fileRead( attempts ).split( "\n" ).length;
+    }
+}
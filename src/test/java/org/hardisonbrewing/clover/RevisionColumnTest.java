@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RevisionColumnTest {
+
+    @Test
+    public void lineNumbersStartAtOne() {
+
+        RevisionColumn revisions = new RevisionColumn();
+        revisions.add( 7 );
+        revisions.add( 8 );
+
+        assertEquals( 7, revisions.get( 1 ) );
+        assertEquals( 8, revisions.get( 2 ) );
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void lineZeroIsOutOfBounds() {
+
+        RevisionColumn revisions = new RevisionColumn();
+        revisions.add( 7 );
+        revisions.get( 0 );
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void linePastTheEndIsOutOfBounds() {
+
+        RevisionColumn revisions = new RevisionColumn();
+        revisions.add( 7 );
+        revisions.get( 2 );
+    }
+
+    @Test
+    public void setGrowsAndFillsGaps() {
+
+        RevisionColumn revisions = new RevisionColumn();
+        revisions.set( 3, 9 );
+        revisions.set( 2000, 4 );
+
+        assertEquals( 2000, revisions.size() );
+        assertEquals( 0, revisions.get( 1 ) );
+        assertEquals( 9, revisions.get( 3 ) );
+        assertEquals( 4, revisions.get( 2000 ) );
+    }
+
+    @Test
+    public void clearReusesColumn() {
+
+        RevisionColumn revisions = new RevisionColumn();
+        revisions.addAll( new long[] { 1, RevisionColumn.LOCAL_MODIFICATION } );
+        assertTrue( revisions.hasLocalModifications() );
+
+        revisions.clear();
+        revisions.add( 3 );
+
+        assertFalse( revisions.hasLocalModifications() );
+        assertArrayEquals( new long[] { 3 }, revisions.toArray() );
+    }
+}
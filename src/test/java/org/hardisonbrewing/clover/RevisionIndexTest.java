@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RevisionIndexTest {
+
+    private static final String ROOT = "https://svn.example.com/repos";
+
+    private static final String LOG = "" + //
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + //
+            "<log>\n" + //
+            "<logentry\n   revision=\"10\">\n" + //
+            "<date>2013-01-02T03:04:05.123456Z</date>\n" + //
+            "</logentry>\n" + //
+            "<logentry revision=\"11\"><author>a</author><date>2013-01-03T00:00:00.000000Z</date></logentry>\n" + //
+            "</log>\n";
+
+    private File directory;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+
+        directory = File.createTempFile( "revision-index", "" );
+        directory.delete();
+        directory.mkdirs();
+        file = new File( directory, "revision-index" );
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void findsBracketedRevisions() {
+
+        RevisionIndex revisionIndex = new RevisionIndex( file, ROOT );
+        revisionIndex.add( 3000, 12 );
+        revisionIndex.add( 1000, 10 );
+        revisionIndex.add( 2000, 11 );
+        revisionIndex.add( 5000, 20 );
+
+        assertEquals( -1, revisionIndex.find( 999 ) );
+        assertEquals( 10, revisionIndex.find( 1000 ) );
+        assertEquals( 10, revisionIndex.find( 1999 ) );
+        assertEquals( 11, revisionIndex.find( 2000 ) );
+        // 13 to 19 are not indexed
+        assertEquals( -1, revisionIndex.find( 4000 ) );
+        assertEquals( -1, revisionIndex.find( 6000 ) );
+    }
+
+    @Test
+    public void savesPerRepository() throws Exception {
+
+        RevisionIndex revisionIndex = new RevisionIndex( file, ROOT );
+        revisionIndex.add( 1000, 10 );
+        revisionIndex.add( 2000, 11 );
+        revisionIndex.save();
+
+        revisionIndex = new RevisionIndex( file, ROOT );
+        revisionIndex.load();
+        assertEquals( 10, revisionIndex.find( 1500 ) );
+
+        revisionIndex = new RevisionIndex( file, ROOT + "/other" );
+        revisionIndex.load();
+        assertEquals( -1, revisionIndex.find( 1500 ) );
+    }
+
+    @Test
+    public void indexesLogDates() throws Exception {
+
+        RevisionIndex revisionIndex = new RevisionIndex( file, ROOT );
+        LogDateOutputParser outputParser = new LogDateOutputParser( revisionIndex );
+        outputParser.parse( new ByteArrayInputStream( LOG.getBytes( "UTF-8" ) ) );
+
+        assertEquals( 10, outputParser.getFirstRevision() );
+        assertEquals( 10, revisionIndex.find( CutoffDate.parse( "2013-01-02T12:00:00Z" ) ) );
+        // the revision after 11 is not indexed
+        assertEquals( -1, revisionIndex.find( CutoffDate.parse( "2013-01-03T00:00:00Z" ) ) );
+        assertEquals( -1, revisionIndex.find( CutoffDate.parse( "2013-01-02T03:04:04Z" ) ) );
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class StatusOutputParserTest {
+
+    private static final String STATUS = "" + //
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + //
+            "<status>\n" + //
+            "<target path=\"wc\">\n" + //
+            "<entry path=\"wc/src/Modified.java\">\n" + //
+            "<wc-status props=\"none\" item=\"modified\" revision=\"12\">\n" + //
+            "<commit revision=\"10\"><author>a</author><date>2013-01-01T00:00:00.000000Z</date></commit>\n" + //
+            "</wc-status>\n" + //
+            "</entry>\n" + //
+            "<entry\n   path=\"wc/src/Conflicted &amp; Merged.java\">\n" + //
+            "<wc-status item=\"conflicted\" props=\"none\" revision=\"12\"/>\n" + //
+            "</entry>\n" + //
+            "<entry path=\"wc/src/Props.java\">\n" + //
+            "<wc-status props=\"modified\" item=\"normal\" revision=\"12\"/>\n" + //
+            "</entry>\n" + //
+            "<entry path=\"wc/src/Added.java\">\n" + //
+            "<wc-status props=\"none\" item=\"added\" revision=\"-1\"/>\n" + //
+            "</entry>\n" + //
+            "</target>\n" + //
+            "</status>\n";
+
+    @Test
+    public void collectsModifiedContents() throws Exception {
+
+        Set<String> paths = new HashSet<String>();
+        new StatusOutputParser( paths ).parse( new ByteArrayInputStream( STATUS.getBytes( "UTF-8" ) ) );
+
+        Set<String> expected = new HashSet<String>();
+        expected.add( new File( "wc/src/Modified.java" ).getCanonicalPath() );
+        expected.add( new File( "wc/src/Conflicted & Merged.java" ).getCanonicalPath() );
+        assertEquals( expected, paths );
+    }
+}
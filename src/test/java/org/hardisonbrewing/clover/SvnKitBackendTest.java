@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Set;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNCopySource;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+
+/**
+ * Runs the backend against a <code>file://</code> repository with three
+ * revisions of a single file.
+ */
+public class SvnKitBackendTest {
+
+    private File directory;
+    private File workingCopy;
+    private File targetDirectory;
+    private File file;
+    private SVNClientManager clientManager;
+    private SvnKitBackend vcsBackend;
+
+    @Before
+    public void setUp() throws Exception {
+
+        directory = File.createTempFile( "svnkit-backend", "" );
+        directory.delete();
+        directory.mkdirs();
+
+        FSRepositoryFactory.setup();
+        SVNURL url = FSRepositoryFactory.createLocalRepository( new File( directory, "repository" ), true, false );
+
+        clientManager = SVNClientManager.newInstance();
+
+        // r1
+        File importDirectory = new File( directory, "import" );
+        importDirectory.mkdirs();
+        FileUtils.fileWrite( new File( importDirectory, "Foo.java" ).getPath(), "UTF-8", "one\ntwo\nthree\n" );
+        clientManager.getCommitClient().doImport( importDirectory, url, "r1", null, false, false, SVNDepth.INFINITY );
+
+        workingCopy = new File( directory, "wc" );
+        clientManager.getUpdateClient().doCheckout( url, workingCopy, SVNRevision.HEAD, SVNRevision.HEAD, SVNDepth.INFINITY, false );
+        file = new File( workingCopy, "Foo.java" );
+
+        // r2 changes the second line, r3 appends a fourth
+        FileUtils.fileWrite( file.getPath(), "UTF-8", "one\nTWO\nthree\n" );
+        commit( "r2" );
+        FileUtils.fileWrite( file.getPath(), "UTF-8", "one\nTWO\nthree\nfour\n" );
+        commit( "r3" );
+
+        targetDirectory = new File( directory, "target" );
+        targetDirectory.mkdirs();
+        vcsBackend = new SvnKitBackend( null, targetDirectory );
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        if ( vcsBackend != null ) {
+            vcsBackend.close();
+        }
+        if ( clientManager != null ) {
+            clientManager.dispose();
+        }
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void blamesEachLineOnce() throws Exception {
+
+        RevisionColumn revisions = new RevisionColumn();
+        revisions.add( 99 );
+
+        vcsBackend.blame( file.getPath(), revisions );
+
+        assertArrayEquals( new long[] { 1, 2, 1, 3 }, revisions.toArray() );
+    }
+
+    @Test
+    public void info() throws Exception {
+
+        VcsInfo info = vcsBackend.info( file.getPath() );
+
+        assertEquals( 3, info.getLastChangedRevision() );
+        assertEquals( "/Foo.java", info.getPath() );
+    }
+
+    @Test
+    public void findsModifiedPaths() throws Exception {
+
+        assertTrue( vcsBackend.findModifiedPaths( workingCopy.getPath() ).isEmpty() );
+
+        FileUtils.fileAppend( file.getPath(), "five\n" );
+
+        Set<String> expected = Collections.singleton( file.getCanonicalPath() );
+        assertEquals( expected, vcsBackend.findModifiedPaths( workingCopy.getPath() ) );
+    }
+
+    @Test
+    public void findsCutoffRevision() throws Exception {
+
+        assertEquals( 3, vcsBackend.findCutoffRevision( workingCopy.getPath(), "2999-01-01T00:00:00Z" ) );
+        assertTrue( new File( targetDirectory, "revision-index" ).exists() );
+    }
+
+    @Test
+    public void findsFilesUnderCopiedDirectory() throws Exception {
+
+        File source = new File( workingCopy, "lib" );
+        source.mkdirs();
+        FileUtils.fileWrite( new File( source, "Bar.java" ).getPath(), "UTF-8", "one\n" );
+        clientManager.getWCClient().doAdd( source, false, false, false, SVNDepth.INFINITY, false, false );
+        commit( "r4" );
+
+        // r5 only lists the copied directory, not the file under it
+        File copy = new File( workingCopy, "lib2" );
+        SVNCopySource[] copySources = new SVNCopySource[] { new SVNCopySource( SVNRevision.HEAD, SVNRevision.HEAD, source ) };
+        clientManager.getCopyClient().doCopy( copySources, copy, false, false, true );
+        commit( "r5" );
+
+        Set<String> changedPaths = vcsBackend.findChangedPaths( workingCopy.getPath(), 5 );
+        assertTrue( ChangedPaths.contains( changedPaths, new File( copy, "Bar.java" ).getCanonicalPath() ) );
+        assertFalse( ChangedPaths.contains( changedPaths, new File( source, "Bar.java" ).getCanonicalPath() ) );
+        assertFalse( ChangedPaths.contains( changedPaths, file.getCanonicalPath() ) );
+    }
+
+    private void commit( String message ) throws Exception {
+
+        clientManager.getCommitClient().doCommit( new File[] { workingCopy }, false, message, null, null, false, false, SVNDepth.INFINITY );
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.clover;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WorkingCopyDatabaseTest {
+
+    private static final String ROOT = "https://svn.example.com/repos";
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+
+        directory = File.createTempFile( "working-copy", "" ).getCanonicalFile();
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void ignoresUnversionedDirectory() throws Exception {
+
+        assertNull( WorkingCopyDatabase.load( directory ) );
+    }
+
+    @Test
+    public void readsBaseNodes() throws Exception {
+
+        createDatabase( 31 );
+
+        File module = new File( directory, "module" );
+        module.mkdirs();
+
+        // found from a subdirectory, as the backend is given the module
+        WorkingCopyDatabase workingCopyDatabase = WorkingCopyDatabase.load( module );
+        assertNotNull( workingCopyDatabase );
+        assertEquals( 2, workingCopyDatabase.size() );
+
+        VcsInfo vcsInfo = workingCopyDatabase.info( new File( module, "src/Foo.java" ).getPath() );
+        assertNotNull( vcsInfo );
+        assertEquals( 12, vcsInfo.getRevision() );
+        assertEquals( 10, vcsInfo.getLastChangedRevision() );
+        assertEquals( "/trunk/module/src/Foo.java", vcsInfo.getPath() );
+        assertEquals( ROOT, vcsInfo.getRepositoryRoot() );
+
+        // deleted in a working layer, but the BASE node is what svn info reports
+        assertNotNull( workingCopyDatabase.info( new File( module, "src/Bar.java" ).getPath() ) );
+
+        assertNull( workingCopyDatabase.info( new File( module, "src" ).getPath() ) );
+        assertNull( workingCopyDatabase.info( new File( module, "src/Gone.java" ).getPath() ) );
+        assertNull( workingCopyDatabase.info( new File( directory.getParentFile(), "Foo.java" ).getPath() ) );
+    }
+
+    @Test
+    public void ignoresUnknownFormat() throws Exception {
+
+        createDatabase( 20 );
+
+        assertNull( WorkingCopyDatabase.load( directory ) );
+    }
+
+    private void createDatabase( int format ) throws Exception {
+
+        File svn = new File( directory, ".svn" );
+        svn.mkdirs();
+
+        Class.forName( "org.sqlite.JDBC" );
+        Connection connection = DriverManager.getConnection( "jdbc:sqlite:" + new File( svn, "wc.db" ).getPath() );
+
+        try {
+
+            Statement statement = connection.createStatement();
+            statement.executeUpdate( "PRAGMA user_version = " + format );
+            statement.executeUpdate( "CREATE TABLE repository (id INTEGER PRIMARY KEY, root TEXT, uuid TEXT)" );
+            statement.executeUpdate( "CREATE TABLE nodes (local_relpath TEXT, op_depth INTEGER, repos_id INTEGER, repos_path TEXT, revision INTEGER, presence TEXT, kind TEXT, changed_revision INTEGER)" );
+            statement.executeUpdate( "INSERT INTO repository VALUES (1, '" + ROOT + "', 'uuid')" );
+            statement.executeUpdate( "INSERT INTO nodes VALUES ('module/src', 0, 1, 'trunk/module/src', 12, 'normal', 'dir', 10)" );
+            statement.executeUpdate( "INSERT INTO nodes VALUES ('module/src/Foo.java', 0, 1, 'trunk/module/src/Foo.java', 12, 'normal', 'file', 10)" );
+            statement.executeUpdate( "INSERT INTO nodes VALUES ('module/src/Bar.java', 0, 1, 'trunk/module/src/Bar.java', 12, 'normal', 'file', 7)" );
+            statement.executeUpdate( "INSERT INTO nodes VALUES ('module/src/Bar.java', 3, NULL, NULL, NULL, 'base-deleted', 'file', NULL)" );
+            statement.executeUpdate( "INSERT INTO nodes VALUES ('module/src/Gone.java', 0, 1, 'trunk/module/src/Gone.java', 12, 'not-present', 'file', NULL)" );
+            statement.close();
+        }
+        finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2013 Martin M Reed
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hardisonbrewing.jaxb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.junit.Test;
+
+public class NamespaceStrippingReaderTest {
+
+    @Test
+    public void stripsDefaultNamespace() throws Exception {
+
+        XMLStreamReader reader = read( "<coverage xmlns=\"http://www.cenqua.com/clover\" clover=\"3.1\"><project/></coverage>" );
+
+        assertEquals( XMLStreamConstants.START_ELEMENT, reader.nextTag() );
+        assertEquals( "coverage", reader.getLocalName() );
+        assertNull( reader.getNamespaceURI() );
+        assertEquals( 0, reader.getNamespaceCount() );
+        assertEquals( "", reader.getName().getNamespaceURI() );
+        assertEquals( 1, reader.getAttributeCount() );
+        assertEquals( "3.1", reader.getAttributeValue( null, "clover" ) );
+
+        assertEquals( XMLStreamConstants.START_ELEMENT, reader.nextTag() );
+        assertEquals( "project", reader.getLocalName() );
+        assertNull( reader.getNamespaceURI() );
+    }
+
+    @Test
+    public void stripsPrefixedNamespace() throws Exception {
+
+        XMLStreamReader reader = read( "<c:coverage xmlns:c=\"http://www.cenqua.com/clover\" c:clover=\"3.1\"/>" );
+
+        assertEquals( XMLStreamConstants.START_ELEMENT, reader.nextTag() );
+        assertEquals( "coverage", reader.getLocalName() );
+        assertNull( reader.getNamespaceURI() );
+        assertNull( reader.getPrefix() );
+        assertNull( reader.getAttributeNamespace( 0 ) );
+        assertEquals( "clover", reader.getAttributeName( 0 ).getLocalPart() );
+        assertEquals( "", reader.getAttributeName( 0 ).getNamespaceURI() );
+    }
+
+    private XMLStreamReader read( String xml ) throws Exception {
+
+        return JAXB.createXMLStreamReader( new ByteArrayInputStream( xml.getBytes( "UTF-8" ) ) );
+    }
+}